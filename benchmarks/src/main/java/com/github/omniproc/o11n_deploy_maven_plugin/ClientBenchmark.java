@@ -0,0 +1,94 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ServiceStatus;
+
+/**
+ * Compares a single status request sent by a freshly created client - including client bootstrap, connection setup
+ * and TLS handshake - with the same request sent by a long-lived client reusing its pooled keep-alive connection.
+ * Both are measured for each transport. The stub only speaks HTTP/1.1, so the <code>HTTP_CLIENT</code> numbers show
+ * the cost of the JDK client itself, not the gain of HTTP/2 multiplexing.
+ *
+ * @author Robert Ruf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientBenchmark
+{
+    @Param({ "URL_CONNECTION", "JERSEY", "HTTP_CLIENT" })
+    public DeployPlugin.Transport transport;
+
+    private OrchestratorStub stub;
+    private OrchestratorClient pooledClient;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        stub = new OrchestratorStub(0);
+        stub.start();
+        pooledClient = stub.newClient(4, transport);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pooledClient.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    public ServiceStatus coldClient() throws Exception
+    {
+        OrchestratorClient client = stub.newClient(4, transport);
+        try
+        {
+            return client.getServiceStatus();
+        } finally
+        {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public ServiceStatus pooledClient() throws Exception
+    {
+        return pooledClient.getServiceStatus();
+    }
+}
@@ -0,0 +1,167 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the complete <code>deployplugin</code> goal, exactly as configured in a POM, against the stub with simulated
+ * network conditions: package deletion, upload, restart and waiting for the pending configuration to be applied.
+ * The time above <code>restartMillis</code> plus the longer of <code>applyMillis</code> and <code>startupMillis</code> is
+ * the overhead of the goal itself.
+ *
+ * @author Robert Ruf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeployFlowBenchmark
+{
+    @Param({ "500" })
+    public long restartMillis;
+
+    @Param({ "1000" })
+    public long applyMillis;
+
+    @Param({ "1000" })
+    public long startupMillis;
+
+    @Param({ "0", "50" })
+    public long latencyMillis;
+
+    @Param({ "0", "10485760" })
+    public long bytesPerSecond;
+
+    @Param({ "4194304" })
+    public int size;
+
+    private File directory;
+    private OrchestratorStub stub;
+    private DeployPlugin mojo;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        directory = File.createTempFile("o11nplugin-benchmark", "");
+        directory.delete();
+        directory.mkdirs();
+        // A minimal DAR bundle, stored uncompressed so the upload size matches the configured size
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(directory, "o11nplugin-benchmark.dar")));
+        try
+        {
+            out.setLevel(Deflater.NO_COMPRESSION);
+            out.putNextEntry(new ZipEntry("VSO-INF/vso.xml"));
+            out.write("<module name=\"benchmark\" version=\"1.0.0\"/>".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("lib/o11nplugin-benchmark.jar"));
+            byte[] payload = new byte[size];
+            new Random(0).nextBytes(payload);
+            out.write(payload);
+            out.closeEntry();
+        } finally
+        {
+            out.close();
+        }
+
+        stub = new OrchestratorStub(restartMillis);
+        stub.setApplyMillis(applyMillis);
+        stub.setStartupMillis(startupMillis);
+        stub.setLatencyMillis(latencyMillis);
+        stub.setBytesPerSecond(bytesPerSecond);
+        stub.start();
+
+        Build build = new Build();
+        build.setDirectory(directory.getAbsolutePath());
+        build.setFinalName("o11nplugin-benchmark");
+        Model model = new Model();
+        model.setBuild(build);
+
+        mojo = new DeployPlugin();
+        mojo.setLog(new QuietLog());
+        set("project", new MavenProject(model));
+        set("o11nServer", "127.0.0.1");
+        set("o11nServicePort", stub.getPort());
+        set("o11nConfigPort", stub.getPort());
+        set("o11nPluginServiceUser", "vcoadmin");
+        set("o11nPluginServicePassword", "vcoadmin");
+        set("o11nConfigServiceUser", "root");
+        set("o11nConfigServicePassword", "vmware");
+        set("o11nPluginType", DeployPlugin.PluginType.DAR);
+        set("o11nOverwrite", true);
+        set("o11nRestartService", true);
+        set("o11nWaitForPendingChanges", true);
+        set("o11nDeletePackage", true);
+        set("o11nPackageName", "com.example.benchmark");
+        set("o11nValidatePlugin", true);
+        set("o11nReportFile", new File(directory, "o11n-deploy-report.json"));
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        stub.stop();
+        for (File file : directory.listFiles())
+        {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public int deploy() throws Exception
+    {
+        mojo.execute();
+        return stub.getRestartCount();
+    }
+
+    // Sets a Mojo parameter the way Maven does when injecting the POM configuration
+    private void set(String name, Object value) throws ReflectiveOperationException
+    {
+        Field field = DeployPlugin.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+}
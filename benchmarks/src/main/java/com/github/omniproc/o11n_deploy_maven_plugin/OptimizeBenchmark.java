@@ -0,0 +1,139 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures repacking a plug-in bundle of poorly compressed nested JARs with the optimizer of the <code>optimize</code> goal
+ * by compression level and number of threads.
+ *
+ * @author Robert Ruf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OptimizeBenchmark
+{
+    private static final String[] WORDS = { "public", "class", "void", "return", "orchestrator", "plugin", "workflow", "String", "final" };
+
+    @Param({ "1", "4" })
+    private int threads;
+
+    @Param({ "1", "9" })
+    private int level;
+
+    private File dir;
+    private File bundle;
+    private File target;
+    private BundleOptimizer optimizer;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory("o11n-optimize-bench").toFile();
+        bundle = new File(dir, "o11nplugin-bench.dar");
+        target = new File(dir, "optimized.dar");
+        Random random = new Random(42);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle));
+        try
+        {
+            zip.putNextEntry(new ZipEntry("VSO-INF/vso.xml"));
+            zip.write("<module name='bench'/>".getBytes(StandardCharsets.UTF_8));
+            // Stored JARs, as written by builds which don't compress nested archives
+            for (int i = 0; i < 16; i++)
+            {
+                zip.putNextEntry(new ZipEntry("lib/lib" + i + ".jar"));
+                zip.write(jar(random, 64));
+            }
+            // Already compressed content
+            byte[] image = new byte[2 << 20];
+            random.nextBytes(image);
+            zip.putNextEntry(new ZipEntry("resources/image.png"));
+            zip.write(image);
+        } finally
+        {
+            zip.close();
+        }
+        optimizer = new BundleOptimizer(Collections.<String> emptyList(), level, threads);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        bundle.delete();
+        target.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public File optimize() throws IOException
+    {
+        optimizer.optimize(bundle, target);
+        return target;
+    }
+
+    // Returns a JAR of the given number of classes of source-like text with stored entries
+    private static byte[] jar(Random random, int classes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream jar = new ZipOutputStream(out);
+        jar.setLevel(Deflater.NO_COMPRESSION);
+        for (int i = 0; i < classes; i++)
+        {
+            jar.putNextEntry(new ZipEntry("com/example/bench/Class" + i + ".class"));
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 16384)
+            {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+            }
+            jar.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        jar.close();
+        return out.toByteArray();
+    }
+}
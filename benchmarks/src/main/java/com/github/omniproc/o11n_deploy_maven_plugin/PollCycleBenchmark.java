@@ -0,0 +1,135 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.PluginType;
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ConfigSlot;
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ServiceStatus;
+
+/**
+ * Measures a complete deployment cycle as run by the <code>deployplugin</code> goal: delete the package, upload the
+ * plug-in, wait for the commit, restart the service and poll until it is running with the new configuration applied.
+ * The time above the simulated restart duration is the overhead caused by the client and the poll intervals.
+ *
+ * @author Robert Ruf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PollCycleBenchmark
+{
+    @Param({ "500" })
+    public long restartMillis;
+
+    @Param({ "50", "250" })
+    public long pollInterval;
+
+    @Param({ "5000" })
+    public long maxPollInterval;
+
+    private File file;
+    private OrchestratorStub stub;
+    private OrchestratorClient client;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        file = File.createTempFile("o11nplugin-benchmark", ".dar");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(new byte[64 * 1024]);
+        } finally
+        {
+            out.close();
+        }
+
+        stub = new OrchestratorStub(restartMillis);
+        stub.start();
+        client = stub.newClient(4);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        stub.stop();
+        file.delete();
+    }
+
+    @Benchmark
+    public ServiceStatus deploy() throws Exception
+    {
+        Poller poller = new Poller(pollInterval, maxPollInterval);
+        client.deletePackage("com.example.benchmark.");
+        client.uploadPlugin(PluginType.DAR, true, file);
+        poller.await(3000, new Poller.Condition()
+        {
+            @Override
+            public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+            {
+                Map<ConfigSlot, String> configs = client.getConfigFingerprint();
+                return configs != null && !configs.get(ConfigSlot.ACTIVE).equalsIgnoreCase(configs.get(ConfigSlot.PENDING));
+            }
+        });
+        client.restartService();
+        poller.await(60000, new Poller.Condition()
+        {
+            @Override
+            public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+            {
+                return client.getServiceStatus() != ServiceStatus.RESTARTING;
+            }
+        });
+        poller.await(240000, new Poller.Condition()
+        {
+            @Override
+            public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+            {
+                Map<ConfigSlot, String> configs = client.getConfigFingerprint();
+                return configs != null && configs.get(ConfigSlot.ACTIVE).equalsIgnoreCase(configs.get(ConfigSlot.PENDING));
+            }
+        });
+        return client.getServiceStatus();
+    }
+}
@@ -0,0 +1,121 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ConfigSlot;
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ServiceStatus;
+
+/**
+ * Measures parsing the Control Center status and configuration version responses with JSON-P on its own and as part
+ * of the complete request, where the entity is buffered and read through the Jersey message body reader.
+ *
+ * @author Robert Ruf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatusParsingBenchmark
+{
+    private static final byte[] STATUS = "{\"currentStatus\":null}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONFIG_VERSION = ("{\"activeConfigurationFingerprint\":\"1b4f0e98-51a8-4b1f-a3c4-2f7c0f1e2d3a\","
+            + "\"pendingConfigurationFingerprint\":\"8c2d1e0f-7a6b-4c5d-9e8f-0a1b2c3d4e5f\"}").getBytes(StandardCharsets.UTF_8);
+
+    private JsonReaderFactory readerFactory;
+    private OrchestratorStub stub;
+    private OrchestratorClient client;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        readerFactory = Json.createReaderFactory(null);
+        stub = new OrchestratorStub(0);
+        stub.start();
+        client = stub.newClient(4);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    public boolean parseStatus()
+    {
+        return read(STATUS).isNull("currentStatus");
+    }
+
+    @Benchmark
+    public String parseConfigVersion()
+    {
+        JsonObject config = read(CONFIG_VERSION);
+        return config.getString("activeConfigurationFingerprint") + config.getString("pendingConfigurationFingerprint");
+    }
+
+    @Benchmark
+    public ServiceStatus getServiceStatus() throws Exception
+    {
+        return client.getServiceStatus();
+    }
+
+    @Benchmark
+    public Map<ConfigSlot, String> getConfigFingerprint() throws Exception
+    {
+        return client.getConfigFingerprint();
+    }
+
+    private JsonObject read(byte[] json)
+    {
+        JsonReader reader = readerFactory.createReader(new ByteArrayInputStream(json));
+        try
+        {
+            return reader.readObject();
+        } finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.PluginType;
+
+/**
+ * Measures building and writing the multipart request body of a plug-in upload on its own and the complete upload
+ * to the loopback stub, for different plug-in sizes. Dividing the size by the average time gives the throughput.
+ *
+ * @author Robert Ruf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBenchmark
+{
+    @Param({ "1048576", "16777216", "134217728" })
+    public int size;
+
+    private File file;
+    private OrchestratorStub stub;
+    private OrchestratorClient client;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        file = File.createTempFile("o11nplugin-benchmark", ".dar");
+        byte[] buffer = new byte[64 * 1024];
+        Random random = new Random(size);
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            for (int written = 0; written < size; written += buffer.length)
+            {
+                random.nextBytes(buffer);
+                out.write(buffer, 0, Math.min(buffer.length, size - written));
+            }
+        } finally
+        {
+            out.close();
+        }
+
+        stub = new OrchestratorStub(0);
+        stub.start();
+        client = stub.newClient(4);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.close();
+        stub.stop();
+        file.delete();
+    }
+
+    @Benchmark
+    public long multipart() throws IOException
+    {
+        MultipartFileEntity multipart = new MultipartFileEntity("file", file, MultipartFileEntity.fields("format", "dar", "overwrite", "true"));
+        multipart.write(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+            {
+            }
+        });
+        return multipart.getContentLength();
+    }
+
+    @Benchmark
+    public boolean upload() throws Exception
+    {
+        return client.uploadPlugin(PluginType.DAR, true, file);
+    }
+}
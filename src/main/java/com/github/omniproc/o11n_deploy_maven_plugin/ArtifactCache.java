@@ -0,0 +1,381 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Local content-addressed cache of the plug-in bundles successfully deployed to each Orchestrator server, so a previous
+ * version can be deployed again without rebuilding it. Each bundle is stored once under its SHA-256 fingerprint, an index
+ * lists the bundles deployed under each server and plug-in from the oldest to the latest. The cache is bounded in size,
+ * the least recently used bundles are evicted first. It may be shared by several builds, concurrent updates are serialized
+ * through a lock file.
+ *
+ * @author Robert Ruf
+ */
+final class ArtifactCache
+{
+    private static final String INDEX_FILE = "index.properties";
+    // Separates the bundles of an index entry, each given as fingerprint/file name
+    private static final String SEPARATOR = ",";
+
+    /**
+     * A bundle of the cache.
+     */
+    static final class Entry
+    {
+        private final String fingerprint;
+        private final File file;
+
+        private Entry(String fingerprint, File file)
+        {
+            this.fingerprint = fingerprint;
+            this.file = file;
+        }
+
+        String getFingerprint()
+        {
+            return fingerprint;
+        }
+
+        /**
+         * Returns the cached bundle, named like the deployed plug-in file.
+         */
+        File getFile()
+        {
+            return file;
+        }
+
+        @Override
+        public String toString()
+        {
+            return file.getName() + " (" + fingerprint.substring(0, Math.min(12, fingerprint.length())) + ")";
+        }
+    }
+
+    // A change applied to the freshly loaded index while holding the lock of the cache
+    private interface Change
+    {
+        void apply(Properties index) throws IOException;
+    }
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory the directory holding the cache.
+     * @param maxBytes the maximum total size of the cached bundles.
+     */
+    ArtifactCache(File directory, long maxBytes)
+    {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the key the bundles of the given plug-in deployed to the given server are indexed by. The version is removed from
+     * the file name, so all versions of a plug-in share one key.
+     */
+    static String key(String server, int servicePort, String fileName)
+    {
+        return server + ":" + servicePort + "/" + DeployHistory.withoutVersion(fileName);
+    }
+
+    /**
+     * Stores the given bundle with the given fingerprint as the latest one deployed under the given key and evicts the least
+     * recently used bundles exceeding the size of the cache. A bundle stored before is not copied again.
+     */
+    void store(final String key, final File file, final String fingerprint) throws IOException
+    {
+        modify(new Change()
+        {
+            @Override
+            public void apply(Properties index) throws IOException
+            {
+                File blob = new File(new File(directory, fingerprint), file.getName());
+                if (!blob.isFile())
+                {
+                    // Copied to a temporary file first so readers never see a partially written bundle
+                    blob.getParentFile().mkdirs();
+                    File tmp = new File(blob.getPath() + ".tmp");
+                    Files.copy(file.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(tmp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                touch(blob.getParentFile());
+
+                List<String> bundles = bundlesOf(index, key);
+                String bundle = fingerprint + "/" + file.getName();
+                bundles.remove(bundle);
+                bundles.add(bundle);
+                index.setProperty(key, join(bundles));
+                evict(index, blob.getParentFile());
+            }
+        });
+    }
+
+    /**
+     * Removes the bundle with the given fingerprint from the bundles deployed under the given key, e.g. after it was rolled back.
+     */
+    void discard(final String key, final String fingerprint) throws IOException
+    {
+        modify(new Change()
+        {
+            @Override
+            public void apply(Properties index)
+            {
+                List<String> bundles = bundlesOf(index, key);
+                for (String bundle : new ArrayList<String>(bundles))
+                {
+                    if (bundle.startsWith(fingerprint + "/"))
+                    {
+                        bundles.remove(bundle);
+                    }
+                }
+                if (bundles.isEmpty())
+                {
+                    index.remove(key);
+                }
+                else
+                {
+                    index.setProperty(key, join(bundles));
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the cached bundles deployed under the given key, from the oldest to the latest. Evicted bundles are left out.
+     */
+    List<Entry> getEntries(String key) throws IOException
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (String bundle : bundlesOf(loadIndex(), key))
+        {
+            String fingerprint = bundle.substring(0, bundle.indexOf('/'));
+            File blob = new File(new File(directory, fingerprint), bundle.substring(bundle.indexOf('/') + 1));
+            if (blob.isFile())
+            {
+                entries.add(new Entry(fingerprint, blob));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Marks the given cached bundle as used, so it is evicted last.
+     */
+    void touch(Entry entry)
+    {
+        touch(entry.getFile().getParentFile());
+    }
+
+    // Deletes the least recently used bundles, unindexed ones first, until the cache fits its size. The given bundle is kept.
+    private void evict(Properties index, File keep)
+    {
+        File[] blobs = directory.listFiles();
+        if (blobs == null)
+        {
+            return;
+        }
+        final Set<String> indexed = new HashSet<String>();
+        long size = 0;
+        for (String key : index.stringPropertyNames())
+        {
+            for (String bundle : bundlesOf(index, key))
+            {
+                indexed.add(bundle.substring(0, bundle.indexOf('/')));
+            }
+        }
+        List<File> candidates = new ArrayList<File>();
+        for (File blob : blobs)
+        {
+            if (blob.isDirectory())
+            {
+                size += sizeOf(blob);
+                if (!blob.equals(keep))
+                {
+                    candidates.add(blob);
+                }
+            }
+        }
+        Collections.sort(candidates, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                boolean aIndexed = indexed.contains(a.getName());
+                boolean bIndexed = indexed.contains(b.getName());
+                if (aIndexed != bIndexed)
+                {
+                    return aIndexed ? 1 : -1;
+                }
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File blob : candidates)
+        {
+            if (size <= maxBytes)
+            {
+                break;
+            }
+            size -= sizeOf(blob);
+            delete(blob);
+        }
+    }
+
+    // Applies the given change and writes the index.
+    // The index is re-read while holding the lock so entries written by other builds in the meantime are kept.
+    private void modify(Change change) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create directory '" + directory + "'.");
+        }
+
+        synchronized (ArtifactCache.class)
+        {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(directory, INDEX_FILE + ".lock"), "rw");
+            try
+            {
+                FileLock lock = lockFile.getChannel().lock();
+                try
+                {
+                    Properties index = loadIndex();
+                    change.apply(index);
+                    storeIndex(index);
+                } finally
+                {
+                    lock.release();
+                }
+            } finally
+            {
+                lockFile.close();
+            }
+        }
+    }
+
+    private Properties loadIndex() throws IOException
+    {
+        Properties index = new Properties();
+        File file = new File(directory, INDEX_FILE);
+        if (file.isFile())
+        {
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                index.load(in);
+            } finally
+            {
+                in.close();
+            }
+        }
+        return index;
+    }
+
+    // Writes to a temporary file first so readers never see a partially written index
+    private void storeIndex(Properties index) throws IOException
+    {
+        File file = new File(directory, INDEX_FILE);
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            index.store(out, "o11n-deploy-maven-plugin artifact cache");
+        } finally
+        {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<String> bundlesOf(Properties index, String key)
+    {
+        String value = index.getProperty(key);
+        List<String> bundles = new ArrayList<String>();
+        if (value != null && !value.isEmpty())
+        {
+            bundles.addAll(Arrays.asList(value.split(SEPARATOR)));
+        }
+        return bundles;
+    }
+
+    private static String join(List<String> bundles)
+    {
+        StringBuilder value = new StringBuilder();
+        for (String bundle : bundles)
+        {
+            if (value.length() > 0)
+            {
+                value.append(SEPARATOR);
+            }
+            value.append(bundle);
+        }
+        return value.toString();
+    }
+
+    private static void touch(File blob)
+    {
+        blob.setLastModified(System.currentTimeMillis());
+    }
+
+    private static long sizeOf(File blob)
+    {
+        long size = 0;
+        File[] files = blob.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void delete(File blob)
+    {
+        File[] files = blob.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        blob.delete();
+    }
+}
@@ -0,0 +1,875 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Repacks a plug-in bundle to reduce the number of bytes uploaded. The entries are deflated in parallel, each one by its own
+ * thread, and stored instead if deflating doesn't make them smaller, e.g. because they are compressed already. Only a few
+ * entries per thread are repacked ahead of the one being written and large entries are buffered in temporary files, so the
+ * heap usage does not grow with the size of the bundle. Nested code
+ * archives such as the <tt>*.jar</tt> files of a <tt>*.dar</tt> bundle or the <tt>*.dar</tt> files of a <tt>*.vmoapp</tt> bundle
+ * are repacked the same way, their content is left unchanged so signed JARs stay valid. Other nested archives, like the signed
+ * <tt>*.package</tt> files, are kept as they are. Entries of the bundle matching one of the excludes are dropped.
+ * <p>
+ * The output only depends on the content of the bundle: the order of the entries is kept, every entry gets the same timestamp and
+ * no extra fields, so repacking an unchanged bundle yields the same bytes and repacking a repacked bundle changes nothing.
+ *
+ * @author Robert Ruf
+ */
+final class BundleOptimizer
+{
+    private static final String[] NESTED_EXTENSIONS = { ".jar", ".war", ".dar" };
+    // Guards against archives nested into themselves
+    private static final int MAX_NESTING = 4;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    // 1980-01-01 00:00:00, the earliest MS-DOS date, written for every entry regardless of the time zone
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+    private static final int UTF8_FLAG = 0x800;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+    // Entries larger than this are buffered in temporary files instead of the heap
+    private static final int SPILL_THRESHOLD = 4 << 20;
+    // Entries repacked ahead of the one being written, per thread
+    private static final int WINDOW_PER_THREAD = 2;
+
+    private final List<Pattern> excludes;
+    private final int level;
+    private final int threads;
+    private final int window;
+
+    /**
+     * The outcome of repacking a bundle.
+     */
+    static final class Result
+    {
+        private final long originalSize;
+        private final int threads;
+        private long optimizedSize;
+        private long durationMillis;
+        private int entries = 0;
+        private int storedEntries = 0;
+        private int nestedArchives = 0;
+        private final List<String> dropped = new ArrayList<String>();
+        private final List<String> duplicates = new ArrayList<String>();
+        // The first nested archive of each content, by CRC and size
+        private final Map<String, String> archives = new HashMap<String, String>();
+
+        private Result(long originalSize, int threads)
+        {
+            this.originalSize = originalSize;
+            this.threads = threads;
+        }
+
+        /**
+         * Logs the size savings and the time spent for the given bundle, as well as the dropped entries and duplicated
+         * nested archives.
+         */
+        void log(Log log, String name)
+        {
+            long saved = originalSize - optimizedSize;
+            log.info(String.format("Optimized '%s': %.2f MB -> %.2f MB, %s %.2f MB (%.1f%%) in %.1f s on %d thread(s).", name, originalSize / MEGABYTE, optimizedSize / MEGABYTE,
+                    saved >= 0 ? "saved" : "grew by", Math.abs(saved) / MEGABYTE, originalSize == 0 ? 0.0 : Math.abs(saved) * 100.0 / originalSize, durationMillis / 1000.0, threads));
+            log.debug(entries + " entries written, " + storedEntries + " of them stored, " + nestedArchives + " nested archive(s) repacked.");
+            for (String entry : dropped)
+            {
+                log.info("Dropped entry '" + entry + "'.");
+            }
+            for (String duplicate : duplicates)
+            {
+                log.warn("Nested archive " + duplicate + ", consider bundling it only once.");
+            }
+        }
+
+        private synchronized void entry(int method)
+        {
+            entries++;
+            if (method == STORED)
+            {
+                storedEntries++;
+            }
+        }
+
+        private synchronized void nestedArchive(String name, Content data)
+        {
+            nestedArchives++;
+            String key = data.crc + ":" + data.length;
+            String first = archives.get(key);
+            if (first == null)
+            {
+                archives.put(key, name);
+            }
+            else
+            {
+                duplicates.add(String.format("'%s' duplicates '%s' (%.2f MB)", name, first, data.length / MEGABYTE));
+            }
+        }
+
+        private synchronized void dropped(String name)
+        {
+            dropped.add(name);
+        }
+    }
+
+    // The content of an entry, held in memory up to SPILL_THRESHOLD bytes and in a temporary file above
+    private static final class Content
+    {
+        private final byte[] data;
+        private final File file;
+        private final long length;
+        private final long crc;
+
+        private Content(byte[] data, File file, long length, long crc)
+        {
+            this.data = data;
+            this.file = file;
+            this.length = length;
+            this.crc = crc;
+        }
+
+        private InputStream open() throws IOException
+        {
+            return data != null ? new ByteArrayInputStream(data) : new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        }
+
+        private void writeTo(OutputStream out) throws IOException
+        {
+            if (data != null)
+            {
+                out.write(data);
+            }
+            else
+            {
+                Files.copy(file.toPath(), out);
+            }
+        }
+
+        // Deletes the temporary file, if any
+        private void release()
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+    }
+
+    // Collects the written bytes and their CRC into a Content, moving them to a temporary file once they exceed SPILL_THRESHOLD
+    private static final class ContentOutputStream extends OutputStream
+    {
+        private final File directory;
+        private final CRC32 crc = new CRC32();
+        private ByteArrayOutputStream buffer;
+        private File file = null;
+        private OutputStream spill = null;
+        private long length = 0;
+
+        /**
+         * @param expectedLength the number of bytes expected to be written, or -1 if unknown.
+         */
+        private ContentOutputStream(File directory, long expectedLength)
+        {
+            this.directory = directory;
+            this.buffer = new ByteArrayOutputStream(expectedLength < 0 ? 1 << 12 : (int) Math.min(expectedLength, SPILL_THRESHOLD));
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (spill == null && length + 1 > SPILL_THRESHOLD)
+            {
+                write(new byte[] { (byte) b }, 0, 1);
+                return;
+            }
+            (spill != null ? spill : buffer).write(b);
+            crc.update(b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (spill == null && length + len > SPILL_THRESHOLD)
+            {
+                file = File.createTempFile("o11n-optimize", ".tmp", directory);
+                spill = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+                buffer.writeTo(spill);
+                buffer = null;
+            }
+            if (spill != null)
+            {
+                spill.write(b, off, len);
+            }
+            else
+            {
+                buffer.write(b, off, len);
+            }
+            crc.update(b, off, len);
+            length += len;
+        }
+
+        private long size()
+        {
+            return length;
+        }
+
+        private Content toContent() throws IOException
+        {
+            if (spill == null)
+            {
+                return new Content(buffer.toByteArray(), null, length, crc.getValue());
+            }
+            spill.close();
+            return new Content(null, file, length, crc.getValue());
+        }
+
+        // Drops the written bytes, deleting the temporary file if there is one
+        private void discard()
+        {
+            if (spill != null)
+            {
+                try
+                {
+                    spill.close();
+                } catch (IOException e)
+                {
+                    // Deleted anyway
+                }
+                file.delete();
+            }
+        }
+    }
+
+    // An entry of a repacked archive, ready to be written
+    private static final class Entry
+    {
+        private final String name;
+        private final int method;
+        private final Content data;
+        private final long crc;
+        private final long size;
+
+        private Entry(String name, int method, Content data, long crc, long size)
+        {
+            this.name = name;
+            this.method = method;
+            this.data = data;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    // Repacks one entry. It is run by the executor or, if it has not been started when its entry is due, by the waiting thread
+    // itself, so a nested archive waiting for its own entries never waits for a thread of the pool.
+    private static final class Task implements Runnable
+    {
+        private final Callable<Entry> work;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CompletableFuture<Entry> entry = new CompletableFuture<Entry>();
+        private boolean discarded = false;
+
+        private Task(Callable<Entry> work)
+        {
+            this.work = work;
+        }
+
+        @Override
+        public void run()
+        {
+            if (!started.compareAndSet(false, true))
+            {
+                return;
+            }
+            try
+            {
+                done(work.call());
+            } catch (Exception e)
+            {
+                entry.completeExceptionally(e);
+            }
+        }
+
+        private synchronized void done(Entry repacked)
+        {
+            if (discarded)
+            {
+                repacked.data.release();
+            }
+            entry.complete(repacked);
+        }
+
+        // Waits for the repacked entry, rethrowing its failure
+        private Entry join() throws IOException
+        {
+            run();
+            try
+            {
+                return entry.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while repacking the archive.");
+            } catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+
+        // Releases the content of the entry once it is repacked, it will not be written
+        private synchronized void discard()
+        {
+            discarded = true;
+            if (entry.isDone() && !entry.isCompletedExceptionally())
+            {
+                entry.join().data.release();
+            }
+        }
+    }
+
+    // Writes a ZIP archive entry by entry. ZIP64 is not supported, plug-in bundles are far from its limits.
+    private static final class ArchiveWriter
+    {
+        private final OutputStream out;
+        private final Result result;
+        private final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        private long offset = 0;
+        private int entries = 0;
+
+        private ArchiveWriter(OutputStream out, Result result)
+        {
+            this.out = out;
+            this.result = result;
+        }
+
+        // Writes the local header and the data of the given entry and releases its content
+        private void add(Entry entry) throws IOException
+        {
+            try
+            {
+                if (entries == MAX_ENTRIES)
+                {
+                    throw new IOException("Archive has more than " + MAX_ENTRIES + " entries, ZIP64 is not supported.");
+                }
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                int flags = isAscii(name) ? 0 : UTF8_FLAG;
+                if (offset > MAX_SIZE || entry.size > MAX_SIZE)
+                {
+                    throw new IOException("Archive is larger than 4 GB, ZIP64 is not supported.");
+                }
+                // Local file header
+                writeInt(out, 0x04034b50);
+                writeHeader(out, entry, name, flags);
+                out.write(name);
+                entry.data.writeTo(out);
+                // Central directory file header
+                writeInt(directory, 0x02014b50);
+                writeShort(directory, 20);
+                writeHeader(directory, entry, name, flags);
+                writeShort(directory, 0);
+                writeShort(directory, 0);
+                writeShort(directory, 0);
+                writeInt(directory, entry.name.endsWith("/") ? 0x10 : 0);
+                writeInt(directory, offset);
+                directory.write(name);
+                offset += 30 + name.length + entry.data.length;
+                entries++;
+                result.entry(entry.method);
+            } finally
+            {
+                entry.data.release();
+            }
+        }
+
+        // Writes the central directory
+        private void finish() throws IOException
+        {
+            if (offset > MAX_SIZE)
+            {
+                throw new IOException("Archive is larger than 4 GB, ZIP64 is not supported.");
+            }
+            directory.writeTo(out);
+            // End of central directory record
+            writeInt(out, 0x06054b50);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeShort(out, entries);
+            writeShort(out, entries);
+            writeInt(out, directory.size());
+            writeInt(out, offset);
+            writeShort(out, 0);
+        }
+    }
+
+    // The entries of an archive being repacked in parallel, at most a window of them at a time. They are written in their
+    // original order as soon as the oldest one is done, so only the entries in flight are held.
+    private final class Window
+    {
+        private final ArchiveWriter writer;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<Task>();
+
+        private Window(ArchiveWriter writer)
+        {
+            this.writer = writer;
+        }
+
+        // Starts repacking an entry, first writing the oldest one if the window is full
+        private void add(Task task, ExecutorService executor) throws IOException
+        {
+            if (tasks.size() >= window)
+            {
+                writer.add(tasks.poll().join());
+            }
+            tasks.add(task);
+            executor.execute(task);
+        }
+
+        // Writes the remaining entries
+        private void drain() throws IOException
+        {
+            while (!tasks.isEmpty())
+            {
+                writer.add(tasks.poll().join());
+            }
+        }
+
+        // Releases the entries not written yet
+        private void discard()
+        {
+            for (Task task : tasks)
+            {
+                task.discard();
+            }
+            tasks.clear();
+        }
+    }
+
+    /**
+     * @param excludes the patterns of the entries to drop from the bundle: <tt>**</tt> matches any path, <tt>*</tt> any part
+     *            of a file or directory name and <tt>?</tt> any single character of it. Patterns ending with <tt>/</tt> match
+     *            everything below the directory.
+     * @param level the deflate level, 0 to store all entries, 1 for the fastest and 9 for the best compression.
+     * @param threads the number of threads deflating in parallel.
+     */
+    BundleOptimizer(List<String> excludes, int level, int threads)
+    {
+        this.excludes = new ArrayList<Pattern>();
+        for (String exclude : excludes)
+        {
+            this.excludes.add(toPattern(exclude));
+        }
+        this.level = level;
+        this.threads = threads;
+        this.window = Math.max(1, threads) * WINDOW_PER_THREAD;
+    }
+
+    /**
+     * Repacks the given bundle into the given file, which may be the bundle itself. The target is only replaced once the
+     * repacked bundle was written completely. Entries larger than {@value #SPILL_THRESHOLD} bytes are buffered in temporary
+     * files next to the target.
+     */
+    Result optimize(File bundle, File target) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        final Result result = new Result(bundle.length(), threads);
+        final File directory = target.getAbsoluteFile().getParentFile();
+        File tmp = new File(target.getPath() + ".tmp");
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "o11n-deploy-optimize");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ZipFile zip = new ZipFile(bundle);
+        OutputStream out = null;
+        Window entries = null;
+        try
+        {
+            out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+            ArchiveWriter writer = new ArchiveWriter(out, result);
+            entries = new Window(writer);
+            Set<String> names = new HashSet<String>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+            {
+                final ZipEntry entry = e.nextElement();
+                if (isExcluded(entry.getName()) || !names.add(entry.getName()))
+                {
+                    result.dropped(entry.getName());
+                    continue;
+                }
+                // Inflating runs in parallel as well, the entries of a ZipFile can be read concurrently
+                entries.add(new Task(new Callable<Entry>()
+                {
+                    @Override
+                    public Entry call() throws IOException
+                    {
+                        InputStream in = zip.getInputStream(entry);
+                        try
+                        {
+                            return repack(entry.getName(), read(in, entry.getSize(), directory), 0, executor, directory, result);
+                        } finally
+                        {
+                            in.close();
+                        }
+                    }
+                }), executor);
+            }
+            entries.drain();
+            writer.finish();
+            out.close();
+        } catch (IOException e)
+        {
+            if (entries != null)
+            {
+                entries.discard();
+            }
+            if (out != null)
+            {
+                out.close();
+            }
+            tmp.delete();
+            throw e;
+        } finally
+        {
+            zip.close();
+            executor.shutdownNow();
+        }
+        verify(tmp);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        result.optimizedSize = target.length();
+        result.durationMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    // Repacks the given content of the entry with the given name, including the entries of a nested archive
+    private Entry repack(String name, Content content, int depth, ExecutorService executor, File directory, Result result) throws IOException
+    {
+        if (depth < MAX_NESTING && isNested(name))
+        {
+            Content nested = repackNested(name, content, depth, executor, directory, result);
+            if (nested != null)
+            {
+                content.release();
+                content = nested;
+            }
+        }
+        return compress(name, content, directory);
+    }
+
+    // Deflates the entries of the given nested archive in parallel and writes them in order into the repacked archive.
+    // Returns null if the entry is no readable archive, it is compressed as it is then.
+    private Content repackNested(String name, Content data, final int depth, final ExecutorService executor, final File directory, final Result result) throws IOException
+    {
+        ContentOutputStream out = new ContentOutputStream(directory, data.length);
+        ArchiveWriter writer = new ArchiveWriter(out, result);
+        Window entries = new Window(writer);
+        boolean repacked = false;
+        try
+        {
+            Set<String> names = new HashSet<String>();
+            ZipInputStream in = new ZipInputStream(data.open());
+            try
+            {
+                for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+                {
+                    final String entryName = entry.getName();
+                    final Content content = read(in, entry.getSize(), directory);
+                    if (!names.add(entryName))
+                    {
+                        content.release();
+                        continue;
+                    }
+                    entries.add(new Task(new Callable<Entry>()
+                    {
+                        @Override
+                        public Entry call() throws IOException
+                        {
+                            return repack(entryName, content, depth + 1, executor, directory, result);
+                        }
+                    }), executor);
+                    repacked = true;
+                }
+            } catch (IOException e)
+            {
+                // e.g. stored entries with a data descriptor, which ZipInputStream can't read
+                repacked = false;
+                return null;
+            } finally
+            {
+                in.close();
+            }
+            if (!repacked)
+            {
+                return null;
+            }
+            entries.drain();
+            writer.finish();
+            result.nestedArchive(name, data);
+            return out.toContent();
+        } finally
+        {
+            if (!repacked)
+            {
+                entries.discard();
+                out.discard();
+            }
+        }
+    }
+
+    // Deflates the given content of the entry with the given name, or stores it if that is smaller
+    private Entry compress(String name, Content data, File directory) throws IOException
+    {
+        if (level == 0 || data.length == 0)
+        {
+            return new Entry(name, STORED, data, data.crc, data.length);
+        }
+        ContentOutputStream out = new ContentOutputStream(directory, data.length / 2 + 64);
+        boolean smaller = false;
+        Deflater deflater = new Deflater(level, true);
+        try
+        {
+            InputStream in = data.open();
+            try
+            {
+                byte[] input = new byte[1 << 16];
+                byte[] buffer = new byte[1 << 16];
+                // Stops as soon as deflating turns out not to pay off
+                for (int n = in.read(input); n >= 0 && out.size() < data.length; n = in.read(input))
+                {
+                    deflater.setInput(input, 0, n);
+                    while (!deflater.needsInput())
+                    {
+                        out.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished() && out.size() < data.length)
+                {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                smaller = deflater.finished() && out.size() < data.length;
+            } finally
+            {
+                in.close();
+            }
+            if (smaller)
+            {
+                Content deflated = out.toContent();
+                data.release();
+                return new Entry(name, DEFLATED, deflated, data.crc, data.length);
+            }
+            return new Entry(name, STORED, data, data.crc, data.length);
+        } finally
+        {
+            deflater.end();
+            if (!smaller)
+            {
+                out.discard();
+            }
+        }
+    }
+
+    // Writes the fields shared by the local and the central directory header, from the version needed to the extra field length
+    private static void writeHeader(OutputStream out, Entry entry, byte[] name, int flags) throws IOException
+    {
+        writeShort(out, 20);
+        writeShort(out, flags);
+        writeShort(out, entry.method);
+        writeShort(out, DOS_TIME);
+        writeShort(out, DOS_DATE);
+        writeInt(out, entry.crc);
+        writeInt(out, entry.data.length);
+        writeInt(out, entry.size);
+        writeShort(out, name.length);
+        writeShort(out, 0);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException
+    {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException
+    {
+        writeShort(out, (int) (value & 0xFFFF));
+        writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private static boolean isAscii(byte[] name)
+    {
+        for (byte b : name)
+        {
+            if (b < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Fails if the given archive can't be read back
+    private static void verify(File archive) throws IOException
+    {
+        ZipFile zip = null;
+        try
+        {
+            zip = new ZipFile(archive);
+        } catch (ZipException e)
+        {
+            archive.delete();
+            throw new IOException("Repacked archive is invalid: " + e.getMessage(), e);
+        } finally
+        {
+            if (zip != null)
+            {
+                zip.close();
+            }
+        }
+    }
+
+    // Reads the given stream, without closing it, into memory or a temporary file in the given directory if it is large.
+    // The size of the entry is -1 if it is unknown.
+    private static Content read(InputStream in, long size, File directory) throws IOException
+    {
+        ContentOutputStream out = new ContentOutputStream(directory, size);
+        try
+        {
+            byte[] buffer = new byte[1 << 16];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toContent();
+        } catch (IOException e)
+        {
+            out.discard();
+            throw e;
+        }
+    }
+
+    private boolean isExcluded(String name)
+    {
+        for (Pattern exclude : excludes)
+        {
+            if (exclude.matcher(name).matches())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNested(String name)
+    {
+        String lowerCase = name.toLowerCase();
+        for (String extension : NESTED_EXTENSIONS)
+        {
+            if (lowerCase.endsWith(extension))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Converts an exclude pattern to a regular expression
+    static Pattern toPattern(String exclude)
+    {
+        String glob = exclude.endsWith("/") ? exclude + "**" : exclude;
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++)
+        {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i))
+            {
+                // Any number of directories, including none
+                regex.append("(?:.*/)?");
+                i += 2;
+            }
+            else if (glob.startsWith("**", i))
+            {
+                regex.append(".*");
+                i++;
+            }
+            else if (c == '*')
+            {
+                regex.append("[^/]*");
+            }
+            else if (c == '?')
+            {
+                regex.append("[^/]");
+            }
+            else
+            {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
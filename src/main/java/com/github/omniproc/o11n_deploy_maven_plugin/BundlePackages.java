@@ -0,0 +1,252 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The Orchestrator packages embedded in a plug-in bundle, i.e. its workflows, actions and resources, and a fingerprint
+ * of everything else in the bundle, i.e. the plug-in code. As long as the latter stays the same a changed bundle can be
+ * deployed by importing its changed packages instead of reinstalling the plug-in.
+ * Nested plug-in archives, such as the <tt>*.dar</tt> files inside a <tt>*.vmoapp</tt> bundle, are searched as well.
+ *
+ * @author Robert Ruf
+ */
+final class BundlePackages
+{
+    private static final String PACKAGE_EXTENSION = ".package";
+    private static final String NESTED_EXTENSION = ".dar";
+
+    private final File bundle;
+    private final String contentFingerprint;
+    private final Map<String, String> packageFingerprints;
+
+    private BundlePackages(File bundle, String contentFingerprint, Map<String, String> packageFingerprints)
+    {
+        this.bundle = bundle;
+        this.contentFingerprint = contentFingerprint;
+        this.packageFingerprints = packageFingerprints;
+    }
+
+    /**
+     * Reads the packages of the given plug-in bundle.
+     */
+    static BundlePackages read(File bundle) throws IOException
+    {
+        MessageDigest content = Digests.newSha256();
+        Map<String, String> packages = new TreeMap<String, String>();
+        ZipFile zip = new ZipFile(bundle);
+        try
+        {
+            // Sorted so the fingerprint doesn't depend on the order the entries were written in
+            Map<String, ZipEntry> entries = new TreeMap<String, ZipEntry>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+            {
+                ZipEntry entry = e.nextElement();
+                entries.put(entry.getName(), entry);
+            }
+            for (ZipEntry entry : entries.values())
+            {
+                if (entry.isDirectory())
+                {
+                    continue;
+                }
+                if (isPackage(entry.getName()))
+                {
+                    packages.put(packageName(entry.getName()), digest(zip.getInputStream(entry)));
+                }
+                else if (isNested(entry.getName()))
+                {
+                    update(content, entry.getName());
+                    readNested(zip.getInputStream(entry), content, packages);
+                }
+                else
+                {
+                    // The CRC of the central directory identifies the content without inflating it
+                    update(content, entry.getName() + ":" + entry.getCrc() + ":" + entry.getSize());
+                }
+            }
+        } finally
+        {
+            zip.close();
+        }
+        return new BundlePackages(bundle, Digests.toHex(content.digest()), Collections.unmodifiableMap(packages));
+    }
+
+    /**
+     * Returns the fingerprint of everything in the bundle but its packages.
+     */
+    String getContentFingerprint()
+    {
+        return contentFingerprint;
+    }
+
+    /**
+     * Returns the SHA-256 fingerprints of the embedded packages by package name.
+     */
+    Map<String, String> getPackageFingerprints()
+    {
+        return packageFingerprints;
+    }
+
+    /**
+     * Writes the package of the given name to the given file.
+     */
+    void extract(String name, File target) throws IOException
+    {
+        ZipFile zip = new ZipFile(bundle);
+        try
+        {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+            {
+                ZipEntry entry = e.nextElement();
+                if (isPackage(entry.getName()) && packageName(entry.getName()).equals(name))
+                {
+                    copy(zip.getInputStream(entry), target);
+                    return;
+                }
+                if (isNested(entry.getName()) && extractNested(zip.getInputStream(entry), name, target))
+                {
+                    return;
+                }
+            }
+        } finally
+        {
+            zip.close();
+        }
+        throw new IOException("Package '" + name + "' not found in '" + bundle + "'.");
+    }
+
+    // Nested archives can only be read sequentially, their entries are hashed completely
+    private static void readNested(InputStream in, MessageDigest content, Map<String, String> packages) throws IOException
+    {
+        ZipInputStream nested = new ZipInputStream(in);
+        try
+        {
+            ZipEntry entry;
+            while ((entry = nested.getNextEntry()) != null)
+            {
+                if (entry.isDirectory())
+                {
+                    continue;
+                }
+                if (isPackage(entry.getName()))
+                {
+                    packages.put(packageName(entry.getName()), digest(nested));
+                }
+                else
+                {
+                    update(content, entry.getName() + ":" + digest(nested));
+                }
+            }
+        } finally
+        {
+            nested.close();
+        }
+    }
+
+    private static boolean extractNested(InputStream in, String name, File target) throws IOException
+    {
+        ZipInputStream nested = new ZipInputStream(in);
+        try
+        {
+            ZipEntry entry;
+            while ((entry = nested.getNextEntry()) != null)
+            {
+                if (isPackage(entry.getName()) && packageName(entry.getName()).equals(name))
+                {
+                    copy(nested, target);
+                    return true;
+                }
+            }
+            return false;
+        } finally
+        {
+            nested.close();
+        }
+    }
+
+    private static boolean isPackage(String entryName)
+    {
+        return entryName.toLowerCase().endsWith(PACKAGE_EXTENSION);
+    }
+
+    private static boolean isNested(String entryName)
+    {
+        return entryName.toLowerCase().endsWith(NESTED_EXTENSION);
+    }
+
+    // Example: resources/packages/com.example.mypackage.package => com.example.mypackage
+    private static String packageName(String entryName)
+    {
+        String name = entryName.substring(entryName.lastIndexOf('/') + 1);
+        return name.substring(0, name.length() - PACKAGE_EXTENSION.length());
+    }
+
+    private static void update(MessageDigest digest, String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    // Returns the SHA-256 digest of the remaining content of the given stream, which is left open.
+    private static String digest(InputStream in) throws IOException
+    {
+        MessageDigest digest = Digests.newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            digest.update(buffer, 0, read);
+        }
+        return Digests.toHex(digest.digest());
+    }
+
+    // Copies the remaining content of the given stream, which is left open, to the given file.
+    private static void copy(InputStream in, File target) throws IOException
+    {
+        OutputStream out = new FileOutputStream(target);
+        try
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+        } finally
+        {
+            out.close();
+        }
+    }
+}
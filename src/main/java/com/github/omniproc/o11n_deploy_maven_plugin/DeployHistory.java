@@ -0,0 +1,274 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+
+/**
+ * Local append-only history of the deployments done by this plug-in, one compact JSON object per line.
+ * Each run is indexed by the server and the plug-in it deployed and records the duration and the bytes sent of each phase,
+ * the bundle size and the result. The history may be shared by several builds, appends are serialized through a file lock.
+ *
+ * @author Robert Ruf
+ */
+final class DeployHistory
+{
+    // A version in a file name, i.e. a dash followed by a digit up to the file extension
+    private static final Pattern VERSION = Pattern.compile("-\\d[^,]*?(?=\\.[A-Za-z]+(,|$))");
+
+    /**
+     * A single deployment run read from the history.
+     */
+    static final class Run
+    {
+        private final String key;
+        private final String server;
+        private final String plugin;
+        private final String startTime;
+        private final DeployReport.Result result;
+        private final long pluginSize;
+        private final long durationMillis;
+        private final Map<String, Long> phaseMillis;
+        private final Map<String, Long> phaseBytes;
+
+        private Run(JsonObject entry)
+        {
+            this.key = entry.getString("k");
+            this.server = entry.getString("server");
+            this.plugin = entry.getString("plugin");
+            this.startTime = entry.getString("t");
+            this.result = DeployReport.Result.valueOf(entry.getString("result"));
+            this.pluginSize = entry.getJsonNumber("size").longValue();
+            this.durationMillis = entry.getJsonNumber("ms").longValue();
+            this.phaseMillis = new LinkedHashMap<String, Long>();
+            this.phaseBytes = new LinkedHashMap<String, Long>();
+            JsonObject phases = entry.getJsonObject("phases");
+            for (Map.Entry<String, JsonValue> phase : phases.entrySet())
+            {
+                JsonObject measures = (JsonObject) phase.getValue();
+                phaseMillis.put(phase.getKey(), measures.getJsonNumber("ms").longValue());
+                JsonNumber bytes = measures.getJsonNumber("bytes");
+                phaseBytes.put(phase.getKey(), bytes == null ? 0L : bytes.longValue());
+            }
+        }
+
+        /**
+         * Returns the index key of this run, the server and the plug-in it deployed.
+         */
+        String getKey()
+        {
+            return key;
+        }
+
+        String getServer()
+        {
+            return server;
+        }
+
+        String getPlugin()
+        {
+            return plugin;
+        }
+
+        String getStartTime()
+        {
+            return startTime;
+        }
+
+        DeployReport.Result getResult()
+        {
+            return result;
+        }
+
+        long getPluginSize()
+        {
+            return pluginSize;
+        }
+
+        long getDurationMillis()
+        {
+            return durationMillis;
+        }
+
+        /**
+         * Returns the duration of each phase of this run in milliseconds, in the order the phases ran.
+         */
+        Map<String, Long> getPhaseMillis()
+        {
+            return Collections.unmodifiableMap(phaseMillis);
+        }
+
+        /**
+         * Returns the bytes sent during each phase of this run, in the order the phases ran.
+         */
+        Map<String, Long> getPhaseBytes()
+        {
+            return Collections.unmodifiableMap(phaseBytes);
+        }
+    }
+
+    private DeployHistory()
+    {
+    }
+
+    /**
+     * Returns the key a deployment of the given plug-in(s) to the given server is indexed by. The version is removed from the
+     * plug-in file names, e.g. <code>o11nplugin-foo-1.2.0-SNAPSHOT.vmoapp</code> becomes <code>o11nplugin-foo.vmoapp</code>,
+     * so the runs of all versions of a plug-in share one key.
+     */
+    static String key(String server, String plugin)
+    {
+        return server + "/" + withoutVersion(plugin);
+    }
+
+    /**
+     * Returns the given plug-in file name(s) without their version, e.g. <code>o11nplugin-foo.vmoapp</code>.
+     */
+    static String withoutVersion(String plugin)
+    {
+        return VERSION.matcher(plugin).replaceAll("");
+    }
+
+    /**
+     * Appends the given finished report to the given history file, creating the file and missing parent directories.
+     */
+    static void append(File file, DeployReport report) throws IOException
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create directory '" + directory + "'.");
+        }
+
+        JsonObjectBuilder phases = Json.createObjectBuilder();
+        for (DeployReport.Phase phase : report.getPhases())
+        {
+            JsonObjectBuilder measures = Json.createObjectBuilder().add("ms", phase.getDurationMillis());
+            if (phase.getBytesSent() > 0)
+            {
+                measures.add("bytes", phase.getBytesSent());
+            }
+            phases.add(phase.getName(), measures);
+        }
+        JsonObject entry = Json.createObjectBuilder()
+                .add("k", key(report.getServer(), report.getPluginNames()))
+                .add("t", DeployReport.formatTimestamp(report.getStartMillis()))
+                .add("server", report.getServer())
+                .add("plugin", report.getPluginNames())
+                .add("result", String.valueOf(report.getResult()))
+                .add("size", report.getPluginSize())
+                .add("ms", report.getDurationMillis())
+                .add("phases", phases)
+                .build();
+        StringWriter line = new StringWriter();
+        JsonWriter writer = Json.createWriter(line);
+        writer.writeObject(entry);
+        writer.close();
+        line.write('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+        // A single write of the whole line while holding the lock, so lines of concurrent builds never interleave
+        synchronized (DeployHistory.class)
+        {
+            FileOutputStream out = new FileOutputStream(file, true);
+            try
+            {
+                FileLock lock = out.getChannel().lock();
+                try
+                {
+                    out.write(bytes);
+                } finally
+                {
+                    lock.release();
+                }
+            } finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads all runs of the given history file in the order they were appended. A missing file results in an empty history.
+     * Lines which cannot be parsed, e.g. a line cut off by a crashed build, are skipped.
+     */
+    static List<Run> read(File file) throws IOException
+    {
+        List<Run> runs = new ArrayList<Run>();
+        if (!file.isFile())
+        {
+            return runs;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                if (line.trim().isEmpty())
+                {
+                    continue;
+                }
+                try
+                {
+                    JsonReader reader = Json.createReader(new StringReader(line));
+                    try
+                    {
+                        runs.add(new Run(reader.readObject()));
+                    } finally
+                    {
+                        reader.close();
+                    }
+                } catch (RuntimeException e)
+                {
+                    // Not a JSON object or missing or mistyped fields
+                    continue;
+                }
+            }
+        } finally
+        {
+            in.close();
+        }
+        return runs;
+    }
+}
@@ -23,42 +23,38 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.URI;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.ZipFile;
 
-import javax.json.JsonObject;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-import javax.ws.rs.ProcessingException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.ResponseProcessingException;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-import javax.ws.rs.core.UriBuilder;
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ConfigSlot;
+import com.github.omniproc.o11n_deploy_maven_plugin.OrchestratorClient.ServiceStatus;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
-import org.glassfish.jersey.jsonp.JsonProcessingFeature;
-import org.glassfish.jersey.media.multipart.FormDataMultiPart;
-import org.glassfish.jersey.media.multipart.MultiPartFeature;
-import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
 
 /**
  * Mojo which deploys a created VMware Orchestrator plug-in to the configured VMware Orchestrator Server.
@@ -67,18 +63,31 @@ import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
  * 
  * @author Robert Ruf
  */
-@Mojo(name = "deployplugin", defaultPhase = LifecyclePhase.INSTALL)
+@Mojo(name = "deployplugin", defaultPhase = LifecyclePhase.INSTALL, threadSafe = true)
 public class DeployPlugin extends AbstractMojo
 {
+    // Time after a restart request within which the service is expected to be seen down, answers before only count after it
+    private static final long RESTART_GRACE_MILLIS = 5000;
+
     // Public ENUM for o11nPluginType
     public enum PluginType
     {
         VMOAPP, DAR;
     }
+
+    // Public ENUM for o11nTransport
+    public enum Transport
+    {
+        URL_CONNECTION, JERSEY, HTTP_CLIENT;
+    }
     
     // Taken from Maven API through PluginParameterExpressionEvaluator
     @Parameter(defaultValue = "${project}", readonly = true)
     private MavenProject project;
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    private MojoExecution mojoExecution;
 
     // Server Configuration
     @Parameter(defaultValue = "localhost", property = "deployplugin.server", required = true)
@@ -122,6 +131,35 @@ public class DeployPlugin extends AbstractMojo
      * Password of the provided <code>o11nConfigServiceUser</code>.
      */
     private String o11nConfigServicePassword;
+    @Parameter(required = false)
+    /**
+     * Optional list of Orchestrator servers to deploy to instead of the single server configured by <code>o11nServer</code>.
+     * Each <code>server</code> entry provides its <code>host</code> and optionally its own <code>servicePort</code>, <code>configPort</code>,
+     * <code>pluginServiceUser</code>, <code>pluginServicePassword</code>, <code>configServiceUser</code>, <code>configServicePassword</code>
+     * and <code>certFingerprint</code>. Settings not provided are taken from the corresponding <code>o11n*</code> parameters.
+     * All servers are deployed to concurrently and a result matrix is logged at the end.
+     */
+    private List<OrchestratorServer> o11nServers;
+    @Parameter(defaultValue = "4", property = "deployplugin.serverparallelism", required = false)
+    /**
+     * Maximum number of servers of <code>o11nServers</code> uploaded to in parallel. The service restarts of all servers are awaited
+     * at the same time, timed by a single shared thread while their probes are sent from separate I/O threads.
+     */
+    private Integer o11nServerParallelism;
+    @Parameter(defaultValue = "0", property = "deployplugin.rollingbatchsize", required = false)
+    /**
+     * If greater than 0 the servers of <code>o11nServers</code> are treated as the nodes of one Orchestrator cluster and upgraded
+     * in rolling batches of at most this many nodes, so the remaining nodes keep serving. A batch is only started once all nodes
+     * outside of it are running and the nodes of the previous batch passed their health gate: service running, plug-in service
+     * ready and pending configuration changes applied. The rollout is aborted on the first failed node.
+     * If 0 all servers are deployed to at the same time.
+     */
+    private Integer o11nRollingBatchSize;
+    @Parameter(defaultValue = "120000", property = "deployplugin.healthgatetimeout", required = false)
+    /**
+     * Maximum time in milliseconds to wait for the nodes of a rolling batch to pass their health gate.
+     */
+    private Integer o11nHealthGateTimeout;
 
     // Plug-in Configuration
     @Parameter(defaultValue = "${project.build.directory}", property = "deployplugin.pluginpath", required = false)
@@ -152,38 +190,365 @@ public class DeployPlugin extends AbstractMojo
      * If set to <code>true</code> this option will trigger a Orchestrator service restart after the plug-in was installed.
      */
     private boolean o11nRestartService;
+    @Parameter(defaultValue = "false", property = "deployplugin.coalescerestarts", required = false)
+    /**
+     * If set to <code>true</code> the Orchestrator service restart is deferred until the last <code>deployplugin</code> execution
+     * of a multi-module build has finished, so each server is restarted only once for all modules deploying to it.
+     * The restart is done with the configuration of the last module requesting it.
+     * <b>Note</b>: this option will only be processed if <code>o11nRestartService</code> is set to <code>true</code>.
+     */
+    private boolean o11nCoalesceRestarts;
     @Parameter(defaultValue = "false", property = "deployplugin.deletepackage", required = false)
     /**
      * If set to <code>true</code> this option will delete all of the plug-ins packages before installing the new plug-in.
      * <b>Note</b>: any changes done to the plug-in workflows and not synced with the packages in the plug-in bundle will be lost!
      */
     private boolean o11nDeletePackage;
+    @Parameter(required = false)
+    /**
+     * Optional list of plug-ins to deploy in one batch instead of the single plug-in configured by <code>o11nPluginFilePath</code>,
+     * <code>o11nPluginFileName</code> and <code>o11nPluginType</code>. Each <code>plugin</code> entry provides its <code>file</code>,
+     * optionally its <code>type</code> and the <code>packageName</code> to delete if <code>o11nDeletePackage</code> is set to <code>true</code>.
+     * All plug-ins are uploaded first, the Orchestrator service is restarted only once afterwards.
+     */
+    private List<PluginArtifact> o11nPlugins;
+    @Parameter(defaultValue = "1", property = "deployplugin.uploadparallelism", required = false)
+    /**
+     * Maximum number of plug-ins of <code>o11nPlugins</code> uploaded in parallel.
+     */
+    private Integer o11nUploadParallelism;
+    @Parameter(defaultValue = "0", property = "deployplugin.maxuploadrate", required = false)
+    /**
+     * Maximum rate in kilobytes per second all plug-in uploads of the build may send at together, e.g. to share a VPN link with
+     * other builds. Parallel uploads share the rate. If 0 the uploads are not throttled.
+     */
+    private Integer o11nMaxUploadRate;
+    @Parameter(defaultValue = "5000", property = "deployplugin.uploadprogressinterval", required = false)
+    /**
+     * Interval in milliseconds in which the progress and the throughput of a plug-in upload are logged. The average throughput
+     * is logged once the upload was sent in any case. If 0 no progress is logged.
+     */
+    private Integer o11nUploadProgressInterval;
     @Parameter(property = "deployplugin.packagename", required = false)
     /**
      * The package name of the plug-in package to be deleted if <code>o11nDeletePackage</code> is set to <code>true</code>.
      * <b>Note</b>: this is the package name as specified in the <code>pkg-name</code> attribute of the <tt>dunes-meta-inf.xml</tt> file.
+     * If omitted the package name is read from the plug-in file, see <code>o11nValidatePlugin</code>.
      * If the package is not found on the server the goal execution will continue but a warning will be logged.
      */
     private String o11nPackageName;
+    @Parameter(defaultValue = "true", property = "deployplugin.validateplugin", required = false)
+    /**
+     * If set to <code>true</code> the plug-in file is validated before any request is sent to the server: the ZIP central directory
+     * has to be intact and hold the entries expected for the <code>o11nPluginType</code>. The package name and version are read
+     * from the plug-in file as well.
+     */
+    private boolean o11nValidatePlugin;
+    @Parameter(defaultValue = "false", property = "deployplugin.pipelineupload", required = false)
+    /**
+     * If set to <code>true</code> the plug-in upload is prepared while the package deletion request is in flight:
+     * the plug-in archive is validated, the upload request is built and a connection to the plug-in service is opened.
+     * The upload itself only starts once the package deletion has succeeded.
+     * <b>Note</b>: this option will only be processed if <code>o11nDeletePackage</code> is set to <code>true</code>.
+     */
+    private boolean o11nPipelineUpload;
     @Parameter(defaultValue = "false", property = "deployplugin.waitforpendingchanges", required = false)
     /**
-     * If set to <code>true</code> this option will make this Mojo wait up to 240 seconds till the pending configuration changes have been applied.
+     * If set to <code>true</code> this option will make this Mojo wait up to <code>o11nPendingChangesTimeout</code> milliseconds till the pending configuration changes have been applied.
      * <b>Note</b>: this option will only be processed if <code>o11nRestartService</code> is set to <code>true</code>.
      */
     private boolean o11nWaitForPendingChanges;
+
+    // Wait Configuration
+    @Parameter(defaultValue = "250", property = "deployplugin.pollinterval", required = false)
+    /**
+     * Initial interval in milliseconds between two Orchestrator status checks.
+     * The interval grows exponentially with each check up to <code>o11nMaxPollInterval</code>.
+     */
+    private Long o11nPollInterval;
+    @Parameter(defaultValue = "5000", property = "deployplugin.maxpollinterval", required = false)
+    /**
+     * Maximum interval in milliseconds between two Orchestrator status checks.
+     */
+    private Long o11nMaxPollInterval;
+    @Parameter(defaultValue = "3000", property = "deployplugin.committimeout", required = false)
+    /**
+     * Maximum time in milliseconds to wait for the plug-in installation to be committed to the pending configuration
+     * before the Orchestrator service is restarted.
+     */
+    private Long o11nCommitTimeout;
+    @Parameter(defaultValue = "60000", property = "deployplugin.restarttimeout", required = false)
+    /**
+     * Maximum time in milliseconds to wait for the Orchestrator service to finish its restart.
+     */
+    private Long o11nRestartTimeout;
+    @Parameter(defaultValue = "240000", property = "deployplugin.pendingchangestimeout", required = false)
+    /**
+     * Maximum time in milliseconds to wait for the pending configuration changes to be applied.
+     * <b>Note</b>: this option will only be processed if <code>o11nWaitForPendingChanges</code> is set to <code>true</code>.
+     */
+    private Long o11nPendingChangesTimeout;
+    @Parameter(defaultValue = "true", property = "deployplugin.waitforreadiness", required = false)
+    /**
+     * If set to <code>true</code> this option will make this Mojo wait up to <code>o11nRestartTimeout</code> milliseconds after a service restart
+     * till the plug-in service answers requests again, in addition to the Orchestrator service status reported by the Control Center.
+     * <b>Note</b>: this option will only be processed if <code>o11nRestartService</code> is set to <code>true</code>.
+     */
+    private boolean o11nWaitForReadiness;
+    @Parameter(defaultValue = "/vco/api/about", property = "deployplugin.readinesspath", required = false)
+    /**
+     * Path of the plug-in service REST API requested to check if the plug-in service is ready.
+     * Only a success or a redirect counts as ready, a client error such as HTTP 401 or 404 still answered once the wait times out
+     * fails the deployment.
+     */
+    private String o11nReadinessPath;
+
+    // Connection Configuration
+    @Parameter(defaultValue = "4", property = "deployplugin.connectionpoolsize", required = false)
+    /**
+     * Maximum number of pooled keep-alive connections per Orchestrator server.
+     * All REST calls of a single goal execution share these connections. Applies to the <code>JERSEY</code> transport and limits the
+     * concurrent requests of the <code>HTTP_CLIENT</code> transport, which multiplexes them over a single HTTP/2 connection.
+     */
+    private Integer o11nConnectionPoolSize;
+    @Parameter(defaultValue = "3", property = "deployplugin.maxretries", required = false)
+    /**
+     * Number of times a failed Orchestrator call is retried, e.g. after a connection reset or a HTTP 502, 503 or 504 response.
+     * Status, fingerprint, package and plug-in list calls are always retried. A plug-in upload is only retried if the installed
+     * plug-ins did not change, i.e. the failed attempt did not land. If they were not read before, e.g. by
+     * <code>o11nVerifyServerState</code>, the first retry of an overwriting upload is done without checking. A service restart is never retried. Set to <code>0</code> to disable retries.
+     */
+    private Integer o11nMaxRetries;
+    @Parameter(defaultValue = "500", property = "deployplugin.retrybackoff", required = false)
+    /**
+     * Delay in milliseconds before the first retry of a failed Orchestrator call.
+     * The delay doubles with each further retry up to <code>o11nMaxRetryBackoff</code>.
+     */
+    private Long o11nRetryBackoff;
+    @Parameter(defaultValue = "8000", property = "deployplugin.maxretrybackoff", required = false)
+    /**
+     * Maximum delay in milliseconds between two attempts of a failed Orchestrator call.
+     */
+    private Long o11nMaxRetryBackoff;
+    @Parameter(defaultValue = "300000", property = "deployplugin.calltimeout", required = false)
+    /**
+     * Maximum time in milliseconds a single Orchestrator call, including all of its retries, may take. Set to <code>0</code> to disable the deadline.
+     */
+    private Long o11nCallTimeout;
+    @Parameter(defaultValue = "5", property = "deployplugin.circuitbreakerthreshold", required = false)
+    /**
+     * Number of consecutive failed requests to the plug-in service or the config service after which calls to that service fail fast
+     * for <code>o11nCircuitBreakerDelay</code> milliseconds. Set to <code>0</code> to disable the circuit breaker.
+     */
+    private Integer o11nCircuitBreakerThreshold;
+    @Parameter(defaultValue = "30000", property = "deployplugin.circuitbreakerdelay", required = false)
+    /**
+     * Time in milliseconds calls to a service fail fast once its circuit breaker opened. A single trial call is let through afterwards.
+     */
+    private Long o11nCircuitBreakerDelay;
+    @Parameter(defaultValue = "URL_CONNECTION", property = "deployplugin.transport", required = false)
+    /**
+     * HTTP transport used for the Orchestrator REST calls. Either <code>URL_CONNECTION</code> (the <code>HttpsURLConnection</code> of the JDK,
+     * cheapest to start), <code>JERSEY</code> (pooled Apache HttpClient connections) or <code>HTTP_CLIENT</code> (the Java 11+
+     * <code>java.net.http.HttpClient</code>, negotiating HTTP/2 where the server supports it).
+     * <code>HTTP_CLIENT</code> fails the configuration on older Java versions.
+     */
+    private Transport o11nTransport;
+    @Parameter(property = "deployplugin.truststore", required = false)
+    /**
+     * Optional trust store (JKS or PKCS12) holding the trusted Orchestrator server certificates.
+     * If neither <code>o11nTrustStore</code> nor <code>o11nCertFingerprint</code> are provided any server certificate will be accepted.
+     */
+    private File o11nTrustStore;
+    @Parameter(property = "deployplugin.truststorepassword", required = false)
+    /**
+     * Password of the provided <code>o11nTrustStore</code>.
+     */
+    private String o11nTrustStorePassword;
+    @Parameter(property = "deployplugin.certfingerprint", required = false)
+    /**
+     * Optional SHA-256 fingerprint of the pinned Orchestrator server certificate, e.g. <tt>AB:CD:...</tt>.
+     * Only a server presenting exactly this certificate will be trusted.
+     */
+    private String o11nCertFingerprint;
+
+    // Incremental Deployment Configuration
+    @Parameter(defaultValue = "false", property = "deployplugin.skipunchanged", required = false)
+    /**
+     * If set to <code>true</code> the plug-in will only be deployed if its SHA-256 fingerprint differs from the one recorded
+     * for the last successful deployment to the configured server. Package deletion, upload and service restart are skipped otherwise.
+     */
+    private boolean o11nSkipUnchanged;
+    @Parameter(defaultValue = "true", property = "deployplugin.verifyserverstate", required = false)
+    /**
+     * If set to <code>true</code> an unchanged plug-in will only be skipped if the list of plug-ins installed on the server
+     * did not change since the last deployment either, e.g. because the plug-in was removed or the server was reinstalled.
+     * <b>Note</b>: this option will only be processed if <code>o11nSkipUnchanged</code> is set to <code>true</code>.
+     */
+    private boolean o11nVerifyServerState;
+    @Parameter(defaultValue = "${user.home}/.o11n-deploy/state.properties", property = "deployplugin.statefile", required = false)
+    /**
+     * The local file used to record the fingerprints of the deployed plug-ins per server.
+     */
+    private File o11nStateFile;
+    @Parameter(defaultValue = "false", property = "deployplugin.importchangedpackages", required = false)
+    /**
+     * If set to <code>true</code> and only the packages embedded in the plug-in, i.e. its workflows, actions and resources, changed since
+     * its last deployment to the configured server, only the changed packages are imported through the package service.
+     * The plug-in is not reinstalled and the Orchestrator service is not restarted in this case.
+     * Packages missing on the server are imported as well. The package fingerprints are recorded in <code>o11nStateFile</code>.
+     * <b>Note</b>: this option is not processed for <code>o11nPlugins</code>.
+     */
+    private boolean o11nImportChangedPackages;
+    @Parameter(defaultValue = "true", property = "deployplugin.cacheartifacts", required = false)
+    /**
+     * If set to <code>true</code> each successfully deployed plug-in bundle is kept in <code>o11nCacheDirectory</code>,
+     * so the <code>rollback</code> goal can deploy the previous version again without rebuilding it.
+     */
+    private boolean o11nCacheArtifacts;
+    @Parameter(defaultValue = "${user.home}/.o11n-deploy/cache", property = "deployplugin.cachedirectory", required = false)
+    /**
+     * The local directory the deployed plug-in bundles are cached in, indexed by server and plug-in.
+     */
+    private File o11nCacheDirectory;
+    @Parameter(defaultValue = "512", property = "deployplugin.cachesize", required = false)
+    /**
+     * Maximum total size in megabytes of the bundles in <code>o11nCacheDirectory</code>. The least recently used bundles are evicted first.
+     */
+    private Integer o11nCacheSize;
+    @Parameter(defaultValue = "false", property = "deployplugin.optimize", required = false)
+    /**
+     * If set to <code>true</code> the plug-in bundle is repacked before it is uploaded, see the <code>optimize</code> goal.
+     * The repacked bundle is written to <tt>${project.build.directory}/o11n-optimized</tt>, the plug-in file itself is left as it is.
+     */
+    private boolean o11nOptimizePlugin;
+    @Parameter(required = false)
+    /**
+     * Patterns of the bundle entries dropped when the bundle is repacked, e.g. <tt>**&#47;*.md</tt>. <tt>**</tt> matches any path,
+     * <tt>*</tt> any part of a file or directory name. Defaults to <tt>**&#47;.DS_Store</tt>, <tt>**&#47;Thumbs.db</tt> and <tt>__MACOSX/</tt>.
+     */
+    private List<String> o11nOptimizeExcludes;
+    @Parameter(defaultValue = "9", property = "deployplugin.compressionlevel", required = false)
+    /**
+     * The deflate level the entries of a repacked bundle are compressed with, from 1 (fastest) to 9 (smallest). 0 stores all entries.
+     */
+    private Integer o11nCompressionLevel;
+    @Parameter(defaultValue = "0", property = "deployplugin.optimizethreads", required = false)
+    /**
+     * Number of threads compressing the entries of a repacked bundle in parallel. If 0 one thread per available processor is used.
+     */
+    private Integer o11nOptimizeThreads;
+
+    // Reporting Configuration
+    @Parameter(defaultValue = "${project.build.directory}/o11n-deploy-report.json", property = "deployplugin.reportfile", required = false)
+    /**
+     * The file the per-phase timing report of the deployment is written to in JSON format.
+     */
+    private File o11nReportFile;
+    @Parameter(defaultValue = "true", property = "deployplugin.recordhistory", required = false)
+    /**
+     * If set to <code>true</code> the per-phase durations, bytes sent and bundle size of each deployment are appended to
+     * <code>o11nHistoryFile</code>. Use the <code>stats</code> goal to evaluate the history.
+     */
+    private boolean o11nRecordHistory;
+    @Parameter(defaultValue = "${user.home}/.o11n-deploy/history.jsonl", property = "deployplugin.historyfile", required = false)
+    /**
+     * The local append-only file the deployment history of all servers and plug-ins is recorded in, one JSON object per line.
+     */
+    private File o11nHistoryFile;
     
 
-    private static File file = null;
-    private enum ServiceStatus
+    private RestartCoordinator coordinator = null;
+    private OrchestratorClient warmClient = null;
+    // Throttles the plug-in uploads to o11nMaxUploadRate, null if unlimited
+    private TokenBucket uploadLimiter = null;
+    // The repacked plug-in files by source file, shared by the deployments to all servers of o11nServers so each file is repacked once
+    private final Map<String, File> optimizedFiles = new HashMap<String, File>();
+
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        // Without a session, e.g. when run outside of a reactor build, there is nothing to coalesce with
+        coordinator = session != null && mojoExecution != null ? RestartCoordinator.get(session, mojoExecution) : null;
+        boolean deployed = false;
+        try
+        {
+            deploy();
+            deployed = true;
+        } finally
+        {
+            if (coordinator != null)
+            {
+                // The last execution of the build restarts the servers other executions deferred their restart for
+                MojoFailureException failure = null;
+                for (List<RestartCoordinator.Request> requests : coordinator.finish())
+                {
+                    try
+                    {
+                        restartDeferred(requests);
+                    } catch (MojoFailureException e)
+                    {
+                        getLog().error(e.getMessage());
+                        failure = e;
+                    } catch (MojoExecutionException e)
+                    {
+                        getLog().error(e.getMessage());
+                        failure = new MojoFailureException(e.getMessage());
+                    }
+                }
+                // Don't hide the failure of the deployment itself
+                if (failure != null && deployed)
+                {
+                    throw failure;
+                }
+                if (!deployed && !coordinator.isRestartedAtSessionEnd())
+                {
+                    // A failing build usually does not reach the last execution, which would restart these servers
+                    warnPendingRestarts();
+                }
+            }
+        }
+    }
+
+    // Deploys the configured plug-in(s) once.
+    void deploy() throws MojoExecutionException, MojoFailureException
     {
-        RUNNING, STOPPED, RESTARTING, UNDEFINED;
+        configure();
+        if (o11nServers != null && !o11nServers.isEmpty())
+        {
+            if (o11nRollingBatchSize > 0)
+            {
+                deployRolling();
+            } else
+            {
+                deployToServers();
+            }
+            return;
+        }
+        DeployTarget target = getTarget();
+        ServerLock lock = ServerLock.get(target.getRestartKey());
+        lock.acquire(target.getLog());
+        try
+        {
+            deployTo(target, null);
+        } finally
+        {
+            lock.release();
+        }
     }
-    private enum ConfigSlot
+
+    // Deploys the configured plug-in(s) to the given target. The restarts of a fan-out deployment are added to the given list
+    // instead, to be started once the upload has finished, the list is null otherwise. Returns the result of the deployment.
+    private DeployReport.Result deployTo(DeployTarget target, List<RestartCoordinator.Request> fanOutRestarts) throws MojoExecutionException, MojoFailureException
     {
-        ACTIVE, PENDING;
+        if (o11nPlugins != null && !o11nPlugins.isEmpty())
+        {
+            return executeBatch(target, fanOutRestarts);
+        }
+        return deploySingle(target, fanOutRestarts);
     }
-    
-    public void execute() throws MojoExecutionException, MojoFailureException
+
+    // Applies the defaults of all non-required parameters and validates the configuration.
+    void configure() throws MojoFailureException
     {
         // Force set all non-required parameters in case user accidently set them null
         Build build = project.getBuild();
@@ -209,6 +574,128 @@ public class DeployPlugin extends AbstractMojo
         {
             o11nConfigPort = 8283;
         }
+        if (o11nConnectionPoolSize == null || o11nConnectionPoolSize < 1)
+        {
+            o11nConnectionPoolSize = 4;
+        }
+        if (o11nUploadParallelism == null || o11nUploadParallelism < 1)
+        {
+            o11nUploadParallelism = 1;
+        }
+        if (o11nMaxUploadRate == null || o11nMaxUploadRate < 0)
+        {
+            o11nMaxUploadRate = 0;
+        }
+        if (o11nUploadProgressInterval == null || o11nUploadProgressInterval < 0)
+        {
+            o11nUploadProgressInterval = 5000;
+        }
+        if (uploadLimiter == null && o11nMaxUploadRate > 0)
+        {
+            // Shared by all executions of the build
+            uploadLimiter = session != null ? TokenBucket.get(session, o11nMaxUploadRate * 1024L) : new TokenBucket(o11nMaxUploadRate * 1024L);
+        }
+        if (o11nOptimizeExcludes == null)
+        {
+            o11nOptimizeExcludes = OptimizePlugin.DEFAULT_EXCLUDES;
+        }
+        if (o11nCompressionLevel == null || o11nCompressionLevel < 0 || o11nCompressionLevel > 9)
+        {
+            o11nCompressionLevel = 9;
+        }
+        if (o11nOptimizeThreads == null || o11nOptimizeThreads < 1)
+        {
+            o11nOptimizeThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (o11nServerParallelism == null || o11nServerParallelism < 1)
+        {
+            o11nServerParallelism = 4;
+        }
+        if (o11nRollingBatchSize == null || o11nRollingBatchSize < 0)
+        {
+            o11nRollingBatchSize = 0;
+        }
+        if (o11nHealthGateTimeout == null || o11nHealthGateTimeout < 0)
+        {
+            o11nHealthGateTimeout = 120000;
+        }
+        if (o11nMaxRetries == null || o11nMaxRetries < 0)
+        {
+            o11nMaxRetries = 3;
+        }
+        if (o11nRetryBackoff == null || o11nRetryBackoff < 1)
+        {
+            o11nRetryBackoff = 500L;
+        }
+        if (o11nMaxRetryBackoff == null || o11nMaxRetryBackoff < o11nRetryBackoff)
+        {
+            o11nMaxRetryBackoff = Math.max(8000L, o11nRetryBackoff);
+        }
+        if (o11nCallTimeout == null || o11nCallTimeout < 0)
+        {
+            o11nCallTimeout = 300000L;
+        }
+        if (o11nCircuitBreakerThreshold == null || o11nCircuitBreakerThreshold < 0)
+        {
+            o11nCircuitBreakerThreshold = 5;
+        }
+        if (o11nCircuitBreakerDelay == null || o11nCircuitBreakerDelay < 0)
+        {
+            o11nCircuitBreakerDelay = 30000L;
+        }
+        if (o11nTransport == null)
+        {
+            o11nTransport = Transport.URL_CONNECTION;
+        }
+        if (o11nTransport == Transport.HTTP_CLIENT && !OrchestratorClient.isHttpClientSupported())
+        {
+            throw new MojoFailureException("Error: 'o11nTransport' HTTP_CLIENT requires Java 11 or newer but Maven runs on Java " + System.getProperty("java.version")
+                + ". Use URL_CONNECTION or JERSEY instead.");
+        }
+        if (o11nPollInterval == null || o11nPollInterval < 1)
+        {
+            o11nPollInterval = 250L;
+        }
+        if (o11nMaxPollInterval == null || o11nMaxPollInterval < o11nPollInterval)
+        {
+            o11nMaxPollInterval = Math.max(5000L, o11nPollInterval);
+        }
+        if (o11nCommitTimeout == null || o11nCommitTimeout < 0)
+        {
+            o11nCommitTimeout = 3000L;
+        }
+        if (o11nRestartTimeout == null || o11nRestartTimeout < 0)
+        {
+            o11nRestartTimeout = 60000L;
+        }
+        if (o11nPendingChangesTimeout == null || o11nPendingChangesTimeout < 0)
+        {
+            o11nPendingChangesTimeout = 240000L;
+        }
+        if (o11nReadinessPath == null || o11nReadinessPath.isEmpty())
+        {
+            o11nReadinessPath = "/vco/api/about";
+        }
+        if (o11nReportFile == null)
+        {
+            o11nReportFile = new File(build.getDirectory(), "o11n-deploy-report.json");
+        }
+        if (o11nCacheDirectory == null)
+        {
+            o11nCacheDirectory = new File(System.getProperty("user.home"), ".o11n-deploy" + File.separator + "cache");
+        }
+        if (o11nCacheSize == null || o11nCacheSize < 1)
+        {
+            o11nCacheSize = 512;
+        }
+        if (o11nHistoryFile == null)
+        {
+            o11nHistoryFile = new File(System.getProperty("user.home"), ".o11n-deploy" + File.separator + "history.jsonl");
+        }
+        if (o11nStateFile == null)
+        {
+            o11nStateFile = new File(System.getProperty("user.home"), ".o11n-deploy" + File.separator + "state.properties");
+        }
         if(o11nWaitForPendingChanges && !o11nRestartService)
         {
             // Only if o11nRestartService was set to true it makes sense to wait for configuration changes
@@ -227,731 +714,1664 @@ public class DeployPlugin extends AbstractMojo
                 throw new MojoFailureException("Error: 'o11nRestartService' was set to 'true' but no 'o11nPluginServicePassword' was provided.");
             }
         }
-        if(o11nDeletePackage)
+        if (o11nCertFingerprint != null && !o11nCertFingerprint.isEmpty() && !SslContextCache.isValidFingerprint(o11nCertFingerprint))
+        {
+            throw new MojoFailureException("Error: 'o11nCertFingerprint' is not a valid SHA-256 fingerprint.");
+        }
+        if (o11nCertFingerprint != null && o11nCertFingerprint.isEmpty())
+        {
+            o11nCertFingerprint = null;
+        }
+        if (o11nTrustStore != null && !o11nTrustStore.isFile())
+        {
+            throw new MojoFailureException("Error: 'o11nTrustStore' file '" + o11nTrustStore + "' not found.");
+        }
+    }
+
+    // Returns the target configured by o11nServer and the related parameters. Must be called after configure.
+    DeployTarget getTarget()
+    {
+        return new DeployTarget(o11nServer, o11nServicePort, o11nConfigPort, o11nPluginServiceUser, o11nPluginServicePassword, o11nConfigServiceUser, o11nConfigServicePassword,
+            o11nCertFingerprint, o11nReportFile, getLog());
+    }
+
+    // Returns the plug-in files deployed by this execution, the configured o11nPlugins or the single plug-in file.
+    List<File> getPluginFiles()
+    {
+        List<File> files = new ArrayList<File>();
+        if (o11nPlugins != null && !o11nPlugins.isEmpty())
+        {
+            for (PluginArtifact artifact : o11nPlugins)
+            {
+                files.add(artifact.getFile());
+            }
+        }
+        else
+        {
+            files.add(getPluginFile());
+        }
+        return files;
+    }
+
+    // Returns true if the configured plug-in is deployed to several servers of o11nServers or several plug-ins of o11nPlugins are deployed
+    boolean isMultiDeployment()
+    {
+        return (o11nServers != null && !o11nServers.isEmpty()) || (o11nPlugins != null && !o11nPlugins.isEmpty());
+    }
+
+    // Deploys the given plug-in file instead of the configured one, e.g. a previous version taken from the artifact cache.
+    // The whole bundle is always installed.
+    void usePluginFile(File pluginFile) throws MojoFailureException
+    {
+        String name = pluginFile.getName();
+        int extension = name.lastIndexOf('.');
+        try
+        {
+            o11nPluginType = PluginType.valueOf(name.substring(extension + 1).toUpperCase());
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoFailureException("Error: plug-in file '" + pluginFile + "' is neither a DAR nor a VMOAPP.");
+        }
+        o11nPluginFilePath = pluginFile.getParent();
+        o11nPluginFileName = name.substring(0, extension);
+        o11nSkipUnchanged = false;
+        o11nImportChangedPackages = false;
+        o11nOptimizePlugin = false;
+    }
+
+    // Returns the key the given plug-in file is cached under for the configured server
+    String getCacheKey(File pluginFile)
+    {
+        return ArtifactCache.key(o11nServer, o11nServicePort, pluginFile.getName());
+    }
+
+    // WIN Example: D:\workspace\pluginname\o11nplugin-pluginname\target\o11nplugin-pluginname-0.1.vmoapp
+    // UNIX Example: /workspace/pluginname/o11nplugin-pluginname/target/o11nplugin-pluginname-0.1.vmoapp
+    private File getPluginFile()
+    {
+        return new File(o11nPluginFilePath + File.separator + o11nPluginFileName + "." + o11nPluginType.toString().toLowerCase());
+    }
+
+    // Deploys the single plug-in configured by o11nPluginFilePath, o11nPluginFileName and o11nPluginType.
+    private DeployReport.Result deploySingle(DeployTarget target, List<RestartCoordinator.Request> fanOutRestarts) throws MojoExecutionException, MojoFailureException
+    {
+        if(o11nDeletePackage && !o11nValidatePlugin)
         {
             if(o11nPackageName == null || o11nPackageName.isEmpty())
             {
-                throw new MojoFailureException("Error: 'o11nDeletePackage' was set to 'true' but no 'o11nPackageName' was provided.");
+                throw new MojoFailureException("Error: 'o11nDeletePackage' was set to 'true' but no 'o11nPackageName' was provided and 'o11nValidatePlugin' is disabled.");
             }
         }
 
-        // WIN Example: D:\workspace\pluginname\o11nplugin-pluginname\target\o11nplugin-pluginname-0.1.vmoapp
-        // UNIX Example: /workspace/pluginname/o11nplugin-pluginname/target/o11nplugin-pluginname-0.1.vmoapp
-        file = new File(o11nPluginFilePath + File.separator + o11nPluginFileName + "." + o11nPluginType.toString().toLowerCase());
+        File file = getPluginFile();
 
-        if (file.exists())
+        if (!file.exists())
         {
-            // 1. Delete old packages
-            if(o11nDeletePackage)
+            throw new MojoFailureException("Plug-in file not found.");
+        }
+
+        final OrchestratorClient client = newClient(target, o11nConnectionPoolSize);
+        DeployReport report = new DeployReport(client, target.getHost(), file);
+        DeployReport.Result result = DeployReport.Result.FAILED;
+        // Read from each plug-in file anew if not configured, the Mojo is reused by the watch goal
+        String packageName = o11nPackageName;
+        BundlePackages packages = null;
+        try
+        {
+            // 0. Validate the plug-in file before any network I/O
+            if (o11nValidatePlugin)
             {
-                getLog().info("Package deletion was requested.");
-                Boolean deleteSuccessed = deletePackage();
+                report.phase("preflight");
+                PluginArchive archive = preflight(target, file, o11nPluginType);
+                if (o11nDeletePackage && (packageName == null || packageName.isEmpty()))
+                {
+                    if (archive.getPackageName() == null)
+                    {
+                        throw new MojoFailureException("Error: 'o11nDeletePackage' was set to 'true' but no 'o11nPackageName' was provided and plug-in file '" + file.getName() + "' has no 'pkg-name'.");
+                    }
+                    packageName = archive.getPackageName();
+                    target.getLog().info("Using package name '" + packageName + "' of the plug-in file.");
+                }
+            }
 
-                if(deleteSuccessed)
+            // Skip unchanged plug-ins
+            String stateKey = DeployState.key(target.getHost(), target.getServicePort(), o11nPluginFileName);
+            String artifactFingerprint = null;
+            if (o11nSkipUnchanged)
+            {
+                report.phase("fingerprint");
+                artifactFingerprint = fingerprint(target, file);
+                if (isDeployed(target, client, stateKey, artifactFingerprint))
                 {
-                    getLog().info("Finished plug-in package deletion.");
+                    target.getLog().info("Plug-in '" + file.getName() + "' is unchanged since its last deployment to '" + target.getHost() + "'. Skipping deployment.");
+                    result = DeployReport.Result.SKIPPED;
+                    return result;
                 }
-                else
+            }
+            if (o11nImportChangedPackages)
+            {
+                report.phase("package-import");
+                packages = readPackages(target, file);
+                if (importChangedPackages(target, client, file, stateKey, packages))
                 {
-                    throw new MojoFailureException("Plug-in package deletion has failed.");
+                    recordDeployment(target, client, file, stateKey, artifactFingerprint, packages);
+                    result = DeployReport.Result.SUCCESS;
+                    return result;
                 }
             }
 
-            // 2. Upload plug-in
-            Boolean uploadSuccessed = uploadPlugin();
-            if (uploadSuccessed)
+            // Repack the plug-in file, the fingerprint and the packages are still the ones of the original
+            if (o11nOptimizePlugin)
             {
-                getLog().info("Finished plug-in upload.");
+                report.phase("optimize");
+                file = optimizedFile(target, file);
+            }
 
-                if (o11nRestartService)
-                {
-                    
-                    // Wait a few seconds for config changes to be committed
+            // 1. Delete old packages
+            MultipartFileEntity multipart = null;
+            if(o11nDeletePackage)
+            {
+                report.phase("delete");
+                target.getLog().info("Package deletion was requested.");
+                Boolean deleteSuccessed;
+                if (o11nPipelineUpload)
+                {
+                    Future<Boolean> deletion = deleteAsync(client, packageName + ".");
                     try
                     {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException e)
+                        multipart = prepareUpload(target, client, file);
+                    } finally
                     {
-                        StringWriter sw = new StringWriter();
-                        PrintWriter pw = new PrintWriter(sw, true);
-                        e.printStackTrace(pw);
-                        throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
+                        // Never start the upload before the deletion has finished, even if the preparation failed
+                        deleteSuccessed = await(deletion);
                     }
+                }
+                else
+                {
+                    deleteSuccessed = client.deletePackage(packageName + ".");
+                }
 
-                    // 3. Restart service
-                    getLog().info("Service restart was requested.");
-                    Boolean restartTriggered = restartService();
-
-                    if (restartTriggered)
-                    {
-                        // Wait for service restart
-                        for(int i=1; i<=12; i++)
-                        {
-                            if(getServiceStatus() == ServiceStatus.RESTARTING)
-                            {
-                                if(i<12)
-                                {
-                                    try
-                                    {
-                                        Thread.sleep(5000);
-                                    } catch (InterruptedException e)
-                                    {
-                                        StringWriter sw = new StringWriter();
-                                        PrintWriter pw = new PrintWriter(sw, true);
-                                        e.printStackTrace(pw);
-                                        throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
-                                    }
-                                }
-                                else
-                                {
-                                    getLog().warn("Timeout. Orchestrator service is not responding. Please verify your Orchestrator configuration.");
-                                    break;
-                                }
-                            }
-                        }
-
-                        // 4. Check if the configuration was applied
-                        if(o11nWaitForPendingChanges)
-                        {
+                if(deleteSuccessed)
+                {
+                    target.getLog().info("Finished plug-in package deletion.");
+                }
+                else
+                {
+                    throw new MojoFailureException("Plug-in package deletion has failed.");
+                }
+            }
 
-                            getLog().info("Wait for pending changes was requested.");
-                            // Wait for pending changes to be applied
-                            for(int i=1; i<=24; i++)
-                            {
-                                Map<ConfigSlot, String> configs = getConfigFingerprint();
-                                if(configs != null)
-                                {
-                                    if(configs.get(ConfigSlot.ACTIVE).equalsIgnoreCase(configs.get(ConfigSlot.PENDING)))
-                                    {
-                                        getLog().info("Pending configuration changes have been applied. All done.");
-                                        break;
-                                    }
-                                    else
-                                    {
-                                        if(i < 48)
-                                        {
-                                            getLog().info("Configuration changes are still pending. Waiting...");
-                                            try
-                                            {
-                                                Thread.sleep(5000);
-                                            } catch (InterruptedException e)
-                                            {
-                                                StringWriter sw = new StringWriter();
-                                                PrintWriter pw = new PrintWriter(sw, true);
-                                                e.printStackTrace(pw);
-                                                throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
-                                            }
-                                        }
-                                        else
-                                        {
-                                            getLog().warn("Timeout. Orchestrator configuration was not applied. Please verify your Orchestrator configuration.");
-                                            break;
-                                        }
-                                    }
-                                }
-                                else
-                                {
-                                    throw new MojoFailureException("An error occured while waiting for the configuration changes to be applied. Please verify your Orchestrator configuration.");
-                                }
-                            }
-                        }
+            // 2. Upload plug-in
+            report.phase("upload");
+            if (multipart == null)
+            {
+                multipart = OrchestratorClient.newUploadEntity(o11nPluginType, o11nOverwrite, file);
+            }
+            Boolean uploadSuccessed = client.uploadPlugin(multipart);
+            if (uploadSuccessed)
+            {
+                target.getLog().info("Finished plug-in upload.");
 
-                        // Return service status info
-                        ServiceStatus status = getServiceStatus();
-                        switch (status)
-                        {
-                        case RUNNING:
-                            getLog().info("Finished Orchestrator service restart.");
-                            getLog().info("Successfully updated plug-in in VMware Orchestrator.");
-                            break;
-                        case STOPPED:
-                            getLog().warn("Orchestrator service could not be started. Please verify your Orchestrator configuration.");
-                            break;
-                        default:
-                            getLog().warn("Orchestrator service returned a unknown status. Please verify your Orchestrator configuration.");
-                            break;
-                        }
-                    } else
+                if (o11nRestartService)
+                {
+                    if (deferRestart(target, Collections.singletonList(new RestartCoordinator.Request(this, target, file, stateKey, artifactFingerprint, packages)), fanOutRestarts))
                     {
-                        throw new MojoFailureException("Orchestrator service restart has failed. Please restart Orchestrator service manually for the changes to take effect.");
+                        result = DeployReport.Result.SUCCESS;
+                    }
+                    else if (restartNow(target, client, report))
+                    {
+                        target.getLog().info("Successfully updated plug-in in VMware Orchestrator.");
+                        recordDeployment(target, client, file, stateKey, artifactFingerprint, packages);
+                        result = DeployReport.Result.SUCCESS;
                     }
                 } else
                 {
-                    getLog().info("Orchestrator service restart was not requested. Please restart Orchestrator service manually for the changes to take effect.");
+                    target.getLog().info("Orchestrator service restart was not requested. Please restart Orchestrator service manually for the changes to take effect.");
+                    recordDeployment(target, client, file, stateKey, artifactFingerprint, packages);
+                    result = DeployReport.Result.SUCCESS;
                 }
             } else
             {
                 throw new MojoFailureException("Plug-in upload has failed.");
             }
-        } else
+        } finally
         {
-            throw new MojoFailureException("Plug-in file not found.");
+            report.finish(result);
+            writeReport(target, report);
+            // release resources
+            releaseClient(client);
         }
+        return result;
     }
 
-    // Deletes the plug-in packages / elements.
-    private boolean deletePackage() throws MojoFailureException, MojoExecutionException
-    {
-        // Package name with tailing dot (.) character
-        // Example: com.example.packagename.
-        String packageName = o11nPackageName + ".";
-        
-        // Example: https://localhost:8281
-        URI packageServiceBaseUri = UriBuilder.fromUri("https://" + o11nServer + ":" + o11nServicePort.toString()).build();
-        HttpAuthenticationFeature packageServiceAuth = HttpAuthenticationFeature.basic(o11nPluginServiceUser, o11nPluginServicePassword);
-
-        return deletePackage(packageServiceBaseUri, packageServiceAuth, packageName);
-    }
-    
-    private boolean deletePackage(URI apiEndpoint, HttpAuthenticationFeature auth, String packageName) throws MojoFailureException, MojoExecutionException
+    // Deploys all plug-ins configured in o11nPlugins and restarts the Orchestrator service once afterwards.
+    private DeployReport.Result executeBatch(DeployTarget target, List<RestartCoordinator.Request> fanOutRestarts) throws MojoExecutionException, MojoFailureException
     {
-        getLog().info("Deleting plug-in package '" + packageName + "'...");
-        getLog().debug("Configured package service URL: '" + apiEndpoint.toString() + "'.");
-        
-        Client packageServiceClient = null;
-        Response response = null;
+        List<File> files = new ArrayList<File>();
+        for (PluginArtifact artifact : o11nPlugins)
+        {
+            if (artifact.getFile() == null)
+            {
+                throw new MojoFailureException("Error: an 'o11nPlugins' entry has no 'file'.");
+            }
+            if (!artifact.getFile().isFile())
+            {
+                throw new MojoFailureException("Plug-in file '" + artifact.getFile().getAbsolutePath() + "' not found.");
+            }
+            if (artifact.getType() == null)
+            {
+                throw new MojoFailureException("Error: unable to determine the plug-in type of '" + artifact.getFile().getName() + "'. Please provide a 'type'.");
+            }
+            files.add(artifact.getFile());
+        }
+        // Validate all plug-in files before any network I/O
+        final Map<PluginArtifact, String> packageNames = new HashMap<PluginArtifact, String>();
+        for (PluginArtifact artifact : o11nPlugins)
+        {
+            String packageName = artifact.getPackageName();
+            if (o11nValidatePlugin)
+            {
+                PluginArchive archive = preflight(target, artifact.getFile(), artifact.getType());
+                if (packageName == null)
+                {
+                    packageName = archive.getPackageName();
+                }
+            }
+            packageNames.put(artifact, packageName);
+        }
 
+        final OrchestratorClient client = newClient(target, Math.max(o11nConnectionPoolSize, o11nUploadParallelism));
+        DeployReport report = new DeployReport(client, target.getHost(), files);
+        DeployReport.Result result = DeployReport.Result.FAILED;
         try
         {
-            packageServiceClient = getUnsecureClient();
-            packageServiceClient.register(auth);
-
+            // 1. Delete old packages and upload all plug-ins
+            report.phase("upload");
+            target.getLog().info("Deploying " + o11nPlugins.size() + " plug-in(s) with up to " + o11nUploadParallelism + " parallel upload(s).");
+            List<Future<ArtifactDeployment>> futures = new ArrayList<Future<ArtifactDeployment>>();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(o11nUploadParallelism, o11nPlugins.size()), daemonThreads("o11n-deploy-upload"));
             try
             {
-                // Possible delete options:
-                // deletePackage - deletes the package without the content.
-                // deletePackageWithContent - deletes the package along with the content. If other packages share elements with this package, they will be deleted.
-                // deletePackageKeepingShared - deletes the package along with the content. If other packages share elements with this package, the elements will not be removed.
-                // If no option parameter is provided, the default one is used: deletePackage
-                response = packageServiceClient.target(apiEndpoint).path("/vco/api/packages/" + packageName).queryParam("option", "deletePackageKeepingShared").request(MediaType.APPLICATION_JSON_TYPE).delete();
+                for (final PluginArtifact artifact : o11nPlugins)
+                {
+                    futures.add(executor.submit(new Callable<ArtifactDeployment>()
+                    {
+                        @Override
+                        public ArtifactDeployment call()
+                        {
+                            return deployArtifact(target, client, artifact, packageNames.get(artifact));
+                        }
+                    }));
+                }
+            } finally
+            {
+                executor.shutdown();
+            }
 
-                int statusCode = response.getStatus();
-                switch (statusCode)
+            List<ArtifactDeployment> uploaded = new ArrayList<ArtifactDeployment>();
+            int failed = 0;
+            for (Future<ArtifactDeployment> future : futures)
+            {
+                ArtifactDeployment deployment = await(future);
+                report.artifact(deployment.name, deployment.result, deployment.durationMillis, deployment.message);
+                if (deployment.result == DeployReport.Result.SUCCESS)
                 {
-                case 200:
-                    getLog().debug("HTTP 200. Plug-in package deleted.");
-                    return true;
-                case 204:
-                    getLog().debug("HTTP 204. No plug-in package found for deletion.");
-                    return true;
-                case 401:
-                    getLog().warn("HTTP 401. Authentication is required to delete a plug-in package.");
-                    return false;
-                case 403:
-                    getLog().warn("HTTP 403. The provided user is not authorized to delete a plug-in package.");
-                    return false;
-                case 404:
-                    getLog().warn("HTTP 404. The plug-in package was not found on the server. Skipping plug-in package deletion.");
-                    return true;
-                default:
-                    getLog().warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the plug-in package has been deleted. I really got no clue.");
-                    return false;
+                    uploaded.add(deployment);
+                }
+                else if (deployment.result == DeployReport.Result.FAILED)
+                {
+                    failed++;
                 }
-            } catch (ResponseProcessingException ex)
+            }
+
+            // 2. Restart service once for all uploaded plug-ins
+            boolean applied = true;
+            boolean deferred = false;
+            if (uploaded.isEmpty())
             {
-                // Thrown in case processing of a received HTTP response fails
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ResponseProcessingException occured while requesting plug-in package deletion:\n" + sw.getBuffer().toString());
-            } catch (ProcessingException ex)
+                target.getLog().info("No plug-in was uploaded.");
+            }
+            else if (o11nRestartService)
             {
-                // Thrown in case the request processing or subsequent I/O operation fail.
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ProcessingException occured while requesting plug-in package deletion:\n" + sw.getBuffer().toString());
-            } finally
+                List<RestartCoordinator.Request> requests = new ArrayList<RestartCoordinator.Request>();
+                for (ArtifactDeployment deployment : uploaded)
+                {
+                    requests.add(new RestartCoordinator.Request(this, target, deployment.file, deployment.stateKey, deployment.fingerprint, null));
+                }
+                deferred = deferRestart(target, requests, fanOutRestarts);
+                if (!deferred)
+                {
+                    applied = restartNow(target, client, report);
+                }
+            }
+            else
             {
-                // release resources
-                if (response != null)
+                target.getLog().info("Orchestrator service restart was not requested. Please restart Orchestrator service manually for the changes to take effect.");
+            }
+
+            if (applied && !deferred)
+            {
+                for (ArtifactDeployment deployment : uploaded)
                 {
-                    response.close();
+                    recordDeployment(target, client, deployment.file, deployment.stateKey, deployment.fingerprint, null);
                 }
             }
-        } catch (Exception e)
-        {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw, true);
-            e.printStackTrace(pw);
-            throw new MojoExecutionException("Unable to create HTTP client. Exception:\n" + sw.getBuffer().toString());
+            if (failed > 0)
+            {
+                throw new MojoFailureException(failed + " of " + o11nPlugins.size() + " plug-in(s) failed to deploy. See the deployment summary for details.");
+            }
+            if (applied)
+            {
+                target.getLog().info(uploaded.isEmpty() ? "All plug-ins are unchanged." : "Successfully updated " + uploaded.size() + " plug-in(s) in VMware Orchestrator.");
+                result = uploaded.isEmpty() ? DeployReport.Result.SKIPPED : DeployReport.Result.SUCCESS;
+            }
         } finally
         {
+            report.finish(result);
+            writeReport(target, report);
             // release resources
-            if (packageServiceClient != null)
-            {
-                packageServiceClient.close();
-            }
+            releaseClient(client);
         }
+        return result;
     }
-    
-    // Uploads the plug-in submitted to this Mojo. Returns true if the upload was successfull and false otherwise.
-    private boolean uploadPlugin() throws MojoFailureException, MojoExecutionException
+
+    // Deploys the configured plug-in(s) to all servers of o11nServers. Up to o11nServerParallelism servers are uploaded to in parallel.
+    // The service restart of a server is started as soon as its upload has finished and awaited from a single shared poll executor,
+    // so the total time is close to the one of the slowest server.
+    private void deployToServers() throws MojoExecutionException, MojoFailureException
     {
-        // Example: https://localhost:8281
-        URI pluginServiceBaseUri = UriBuilder.fromUri("https://" + o11nServer + ":" + o11nServicePort.toString()).build();
-        HttpAuthenticationFeature pluginServiceAuth = HttpAuthenticationFeature.basic(o11nPluginServiceUser, o11nPluginServicePassword);
+        List<ServerDeployment> deployments = newServerDeployments();
+        int threads = Math.min(o11nServerParallelism, deployments.size());
+        getLog().info("Deploying to " + deployments.size() + " server(s) with up to " + threads + " parallel upload(s).");
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads("o11n-deploy-server"));
+        final PollExecutor polls = new PollExecutor(daemonThreads("o11n-deploy-poll"));
+        try
+        {
+            List<Future<?>> uploads = new ArrayList<Future<?>>();
+            for (final ServerDeployment deployment : deployments)
+            {
+                uploads.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        deployToServer(deployment, polls);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> upload : uploads)
+            {
+                await(upload);
+            }
+            for (ServerDeployment deployment : deployments)
+            {
+                awaitServerRestart(deployment);
+            }
+        } finally
+        {
+            executor.shutdownNow();
+            polls.shutdownNow();
+        }
 
-        return uploadPlugin(pluginServiceBaseUri, pluginServiceAuth, o11nPluginType, String.valueOf(o11nOverwrite), file);
+        int failed = logServerMatrix("Fan-out", deployments, System.currentTimeMillis() - start);
+        if (failed > 0)
+        {
+            throw new MojoFailureException(failed + " of " + deployments.size() + " server(s) failed to deploy. See the fan-out summary for details.");
+        }
     }
 
-    private boolean uploadPlugin(URI apiEndpoint, HttpAuthenticationFeature auth, PluginType type, String overwrite, File file) throws MojoFailureException, MojoExecutionException
+    // Upgrades the nodes of o11nServers as one cluster in rolling batches of up to o11nRollingBatchSize nodes. The nodes of a batch
+    // are deployed to and restarted in parallel, the next batch is only started once they passed their health gate and all nodes
+    // outside of it are running, so the cluster keeps serving throughout. The rollout stops at the first failed batch.
+    private void deployRolling() throws MojoExecutionException, MojoFailureException
     {
-        getLog().info("Starting Plug-in '" + file.getAbsolutePath() + "' upload...");
-        getLog().debug("Configured plug-in service URL: '" + apiEndpoint.toString() + "'.");
-
-        Client pluginServiceClient = null;
-        FileDataBodyPart fileDataBodyPart = null;
-        FormDataMultiPart formDataMultiPart = null;
-        Response response = null;
+        List<ServerDeployment> deployments = newServerDeployments();
+        int batchSize = Math.min(o11nRollingBatchSize, deployments.size());
+        int batches = (deployments.size() + batchSize - 1) / batchSize;
+        if (batchSize == deployments.size() && deployments.size() > 1)
+        {
+            getLog().warn("The rolling batch size covers all " + deployments.size() + " nodes, the cluster will not serve requests while they restart.");
+        }
+        getLog().info("Rolling deployment to " + deployments.size() + " node(s) in " + batches + " batch(es) of up to " + batchSize + " node(s).");
+        for (ServerDeployment deployment : deployments)
+        {
+            deployment.result = DeployReport.Result.SKIPPED;
+            deployment.message = "Not deployed, the rollout was aborted.";
+        }
 
+        long start = System.currentTimeMillis();
+        String abort = null;
+        ExecutorService executor = Executors.newFixedThreadPool(batchSize, daemonThreads("o11n-deploy-server"));
+        final PollExecutor polls = new PollExecutor(daemonThreads("o11n-deploy-poll"));
         try
         {
-            pluginServiceClient = getUnsecureClient();
-            pluginServiceClient.register(auth);
-
-            try
+            for (int first = 0; first < deployments.size() && abort == null; first += batchSize)
             {
-                fileDataBodyPart = new FileDataBodyPart("file", file, MediaType.APPLICATION_OCTET_STREAM_TYPE);
-                formDataMultiPart = new FormDataMultiPart();
-                formDataMultiPart.bodyPart(fileDataBodyPart);
-                formDataMultiPart.field("format", type.toString().toLowerCase());
-                formDataMultiPart.field("overwrite", overwrite);
-
-                response = pluginServiceClient.target(apiEndpoint).path("/vco/api/plugins").request(MediaType.WILDCARD_TYPE).post(Entity.entity(formDataMultiPart, MediaType.MULTIPART_FORM_DATA_TYPE));
+                List<ServerDeployment> batch = deployments.subList(first, Math.min(first + batchSize, deployments.size()));
+                String label = "Rolling batch " + (first / batchSize + 1) + "/" + batches;
+                long batchStart = System.currentTimeMillis();
 
-                getLog().debug("Returned Response code: '" + response.getStatus() + "'.");
-                getLog().debug("Returned Response: '" + response.toString() + "'.");
+                // Only take nodes down while the rest of the cluster is serving
+                abort = checkOutsideBatch(deployments, batch);
+                if (abort != null)
+                {
+                    break;
+                }
+                getLog().info(label + ": " + batch + ".");
 
-                int statusCode = response.getStatus();
-                switch (statusCode)
+                List<Future<?>> uploads = new ArrayList<Future<?>>();
+                for (final ServerDeployment deployment : batch)
                 {
-                case 201:
-                    getLog().debug("HTTP 201. Successfully updated plug-in in VMware Orchestrator.");
-                    return true;
-                case 204:
-                    getLog().debug("HTTP 204. Successfully updated plug-in in VMware Orchestrator.");
-                    return true;
-                case 401:
-                    getLog().warn("HTTP 401. Authentication is required to upload a plug-in.");
-                    return false;
-                case 403:
-                    getLog().warn("HTTP 403. The provided user is not authorized to upload a plug-in.");
-                    return false;
-                case 404:
-                    getLog().warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
-                    return false;
-                case 409:
-                    getLog().warn("HTTP 409. The provided plug-in already exists and the overwrite flag was not set. The plug-in will not be changed in VMware Orchestrator.");
-                    return false;
-                default:
-                    getLog().warn("Unknown status code HTTP '" + statusCode + "' returned from VMware Orchestrator. Please verify if the plug-in has been updated successfully. I really got no clue.");
-                    return false;
+                    deployment.result = DeployReport.Result.FAILED;
+                    deployment.message = null;
+                    uploads.add(executor.submit(new Callable<Void>()
+                    {
+                        @Override
+                        public Void call()
+                        {
+                            deployToServer(deployment, polls);
+                            return null;
+                        }
+                    }));
                 }
-            } catch (ResponseProcessingException ex)
-            {
-                // Thrown in case processing of a received HTTP response fails
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ResponseProcessingException occured while uploading plug-in data:\n" + sw.getBuffer().toString());
-            } catch (ProcessingException ex)
-            {
-                // Thrown in case the request processing or subsequent I/O operation fail.
-                // THIS IS THROWN in case the server is currently not available e.g. because the service is currently
-                // beeing restarted
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ProcessingException occured while uploading plug-in data:\n" + sw.getBuffer().toString());
-            } finally
-            {
-                // release resources
-                if (fileDataBodyPart != null)
+                for (Future<?> upload : uploads)
                 {
-                    fileDataBodyPart.cleanup();
+                    await(upload);
                 }
-                if (formDataMultiPart != null)
+                for (ServerDeployment deployment : batch)
                 {
-                    try
-                    {
-                        formDataMultiPart.cleanup();
-                        formDataMultiPart.close();
-                    } catch (IOException ex)
+                    awaitServerRestart(deployment);
+                }
+                for (ServerDeployment deployment : batch)
+                {
+                    if (deployment.result == DeployReport.Result.FAILED)
                     {
-                        StringWriter sw = new StringWriter();
-                        PrintWriter pw = new PrintWriter(sw, true);
-                        ex.printStackTrace(pw);
-                        getLog().warn("Warning: unable to close FormDataMultiPart stream. Terminate your JVM to prevent memory leaks. Exception:\n" + sw.getBuffer().toString());
+                        abort = "node " + deployment.server + " failed: " + deployment.message;
+                        break;
                     }
                 }
-                if (response != null)
+                if (abort != null)
                 {
-                    response.close();
+                    break;
+                }
+
+                long gateStart = System.currentTimeMillis();
+                abort = awaitHealthGate(batch, polls);
+                if (abort == null)
+                {
+                    getLog().info(String.format("%s finished after %.1f s, health gate passed after %.1f s.", label, (System.currentTimeMillis() - batchStart) / 1000.0, (System.currentTimeMillis() - gateStart) / 1000.0));
                 }
             }
-        } catch (Exception e)
-        {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw, true);
-            e.printStackTrace(pw);
-            throw new MojoExecutionException("Unable to create HTTP client. Exception:\n" + sw.getBuffer().toString());
         } finally
         {
-            // release resources
-            if (pluginServiceClient != null)
+            executor.shutdownNow();
+            polls.shutdownNow();
+            for (ServerDeployment deployment : deployments)
             {
-                pluginServiceClient.close();
+                deployment.closeProbeClient();
             }
         }
+
+        int failed = logServerMatrix("Rolling deployment", deployments, System.currentTimeMillis() - start);
+        if (abort != null)
+        {
+            throw new MojoFailureException("Rolling deployment aborted, " + abort + " See the rolling deployment summary for details.");
+        }
+        if (failed > 0)
+        {
+            throw new MojoFailureException(failed + " of " + deployments.size() + " node(s) failed to deploy. See the rolling deployment summary for details.");
+        }
     }
 
-    // Triggers a Orchestrator service restart. Returns true if execution was successfull and false otherwise.
-    private Boolean restartService() throws MojoFailureException, MojoExecutionException
+    // Returns a deployment for each server of o11nServers.
+    private List<ServerDeployment> newServerDeployments() throws MojoFailureException
     {
-        // Example: https://localhost:8283
-        URI configServiceBaseUri = UriBuilder.fromUri("https://" + o11nServer + ":" + o11nConfigPort.toString()).build();
-        HttpAuthenticationFeature configServiceAuth = HttpAuthenticationFeature.basic(o11nConfigServiceUser, o11nConfigServicePassword);
-
-        return restartService(configServiceBaseUri, configServiceAuth);
+        List<ServerDeployment> deployments = new ArrayList<ServerDeployment>();
+        DeployTarget defaults = getTarget();
+        for (OrchestratorServer server : o11nServers)
+        {
+            if (server.getHost() == null)
+            {
+                throw new MojoFailureException("Error: an 'o11nServers' entry has no 'host'.");
+            }
+            deployments.add(new ServerDeployment(server, defaults.forServer(server)));
+        }
+        return deployments;
     }
 
-    private Boolean restartService(URI apiEndpoint, HttpAuthenticationFeature auth) throws MojoFailureException, MojoExecutionException
+    // Checks that all nodes of a rolling deployment outside of the given batch are running. Returns the reason to abort the rollout
+    // or null if the batch may be taken down.
+    private String checkOutsideBatch(List<ServerDeployment> deployments, List<ServerDeployment> batch)
     {
-        getLog().info("Restarting Orchestrator service...");
-        getLog().debug("Configured config service URL: '" + apiEndpoint.toString() + "'.");
-
-        Client configServiceClient = null;
-        Response response = null;
-
-        try
+        for (ServerDeployment deployment : deployments)
         {
-            configServiceClient = getUnsecureClient();
-            configServiceClient.register(auth);
-
+            if (batch.contains(deployment))
+            {
+                continue;
+            }
             try
             {
-                response = configServiceClient.target(apiEndpoint).path("/vco-controlcenter/api/server/status/restart").request(MediaType.APPLICATION_JSON_TYPE).post(Entity.json(null));
-                JsonObject statusResponse = response.readEntity(JsonObject.class);
-
-                int statusCode = response.getStatus();
-                switch (statusCode)
+                ServiceStatus status = deployment.getProbeClient().getServiceStatus();
+                if (status != ServiceStatus.RUNNING)
                 {
-                case 200:
-                case 201:
-                    // Don't use JsonObject.getString since the returned currentStatus might be null
-                    // Rather use JsonObject.get which will return the value or JsonValue.NULL if it's null
-                    // In addition JsonObject.isNull(String key) can be used for testing the retun value
-                    getLog().debug("Orchestrator service status: '" + statusResponse.get("currentStatus") + "'.");
-                    getLog().debug("Triggered Orchestrator service restart.");
-                    return true;
-                case 401:
-                    getLog().warn("HTTP 401. Authentication is required to restart the Orchestrator service.");
-                    return false;
-                case 403:
-                    getLog().warn("HTTP 403. The provided user is not authorized to restart the Orchestrator service.");
-                    return false;
-                case 404:
-                    getLog().warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
-                    return false;
-                default:
-                    getLog().warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the Orchestrator service has been restarted. I really got no clue.");
-                    return false;
+                    return "node " + deployment.server + " is not running (" + status + "), refusing to take down " + batch + ".";
                 }
-            } catch (ResponseProcessingException ex)
-            {
-                // Thrown in case processing of a received HTTP response fails
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ResponseProcessingException occured while restarting Orchestrator service:\n" + sw.getBuffer().toString());
-            } catch (ProcessingException ex)
-            {
-                // Thrown in case the request processing or subsequent I/O operation fail.
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ProcessingException occured while restarting Orchestrator service:\n" + sw.getBuffer().toString());
-            } finally
+            } catch (MojoFailureException e)
             {
-                // release resources
-                if (response != null)
-                {
-                    response.close();
-                }
-            }
-        } catch (Exception e)
-        {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw, true);
-            e.printStackTrace(pw);
-            throw new MojoExecutionException("Unable to create HTTP client. Exception:\n" + sw.getBuffer().toString());
-        } finally
-        {
-            // release resources
-            if (configServiceClient != null)
+                return "node " + deployment.server + " is not available, refusing to take down " + batch + ": " + firstLine(e.getMessage());
+            } catch (MojoExecutionException e)
             {
-                configServiceClient.close();
+                return "node " + deployment.server + " is not available, refusing to take down " + batch + ": " + firstLine(e.getMessage());
             }
         }
+        return null;
     }
 
-    // Returns the current Orchestrator service status.
-    private ServiceStatus getServiceStatus() throws MojoFailureException, MojoExecutionException
-    {
-        // Example: https://localhost:8283
-        URI configServiceBaseUri = UriBuilder.fromUri("https://" + o11nServer + ":" + o11nConfigPort.toString()).build();
-        HttpAuthenticationFeature configServiceAuth = HttpAuthenticationFeature.basic(o11nConfigServiceUser, o11nConfigServicePassword);
-
-        return getServiceStatus(configServiceBaseUri, configServiceAuth);
-    }
-
-    private ServiceStatus getServiceStatus(URI apiEndpoint, HttpAuthenticationFeature auth) throws MojoFailureException, MojoExecutionException
+    // Polls the nodes of a rolling batch from the given executor until each of them runs, answers on its plug-in service and has
+    // applied its pending configuration changes. Returns the reason to abort the rollout or null if the whole batch is healthy.
+    private String awaitHealthGate(List<ServerDeployment> batch, PollExecutor polls)
     {
-        getLog().debug("Getting Orchestrator service status...");
-        getLog().debug("Configured config service URL: '" + apiEndpoint.toString() + "'.");
-
-        Client configServiceClient = null;
-        Response response = null;
-
-        try
+        List<CompletableFuture<Poller.Result>> gates = new ArrayList<CompletableFuture<Poller.Result>>();
+        for (ServerDeployment deployment : batch)
         {
-            configServiceClient = getUnsecureClient();
-            configServiceClient.register(auth);
-
-            try
+            final OrchestratorClient client = deployment.getProbeClient();
+            final long deadline = System.currentTimeMillis() + o11nHealthGateTimeout;
+            gates.add(new Poller(o11nPollInterval, o11nMaxPollInterval).schedule(polls, o11nHealthGateTimeout, new Poller.Condition()
             {
-                response = configServiceClient.target(apiEndpoint).path("/vco-controlcenter/api/server/status").request(MediaType.APPLICATION_JSON_TYPE).get();
-                JsonObject statusResponse = response.readEntity(JsonObject.class);
-
-                int statusCode = response.getStatus();
-                switch (statusCode)
+                @Override
+                public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
                 {
-                case 200:
-                    // Don't use JsonObject.getString since the returned currentStatus might be null
-                    // Rather use JsonObject.get which will return the value or JsonValue.NULL if it's null
-                    // In addition JsonObject.isNull(String key) can be used for testing the retun value
-                    getLog().debug("Orchestrator service status: '" + statusResponse.get("currentStatus") + "'.");
-
-                    // Status should be "RUNNING", "STOPPED", "UNDEFINED" or NULL
-                    if (statusResponse.isNull("currentStatus"))
+                    if (client.pollServiceStatus() != ServiceStatus.RUNNING)
                     {
-                        return ServiceStatus.RESTARTING;
-                    } else if (statusResponse.getString("currentStatus").equalsIgnoreCase("RUNNING"))
-                    {
-                        return ServiceStatus.RUNNING;
-                    } else if (statusResponse.getString("currentStatus").equalsIgnoreCase("STOPPED"))
-                    {
-                        return ServiceStatus.STOPPED;
-                    } else
+                        return false;
+                    }
+                    if (o11nWaitForReadiness && !client.isPluginServiceReady(o11nReadinessPath, deadline))
                     {
-                        return ServiceStatus.UNDEFINED;
+                        return false;
                     }
-                case 401:
-                    getLog().warn("HTTP 401. Authentication is required to get service status.");
-                    return ServiceStatus.UNDEFINED;
-                case 403:
-                    getLog().warn("HTTP 403. The provided user is not authorized to get the service status.");
-                    return ServiceStatus.UNDEFINED;
-                case 404:
-                    getLog().warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
-                    return ServiceStatus.UNDEFINED;
-                default:
-                    getLog().warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the service has been restarted. I really got no clue.");
-                    return ServiceStatus.UNDEFINED;
+                    Map<ConfigSlot, String> configs = client.pollConfigFingerprint();
+                    return configs != null && !configs.isEmpty() && configs.get(ConfigSlot.ACTIVE).equalsIgnoreCase(configs.get(ConfigSlot.PENDING));
                 }
-            } catch (ResponseProcessingException ex)
-            {
-                // Thrown in case processing of a received HTTP response fails
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ResponseProcessingException occured while requesting Orchestrator service status:\n" + sw.getBuffer().toString());
-            } catch (ProcessingException ex)
-            {
-                // Thrown in case the request processing or subsequent I/O operation fail.
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ProcessingException occured while requesting Orchestrator service status:\n" + sw.getBuffer().toString());
-            } finally
+            }));
+        }
+
+        String abort = null;
+        for (int i = 0; i < batch.size(); i++)
+        {
+            ServerDeployment deployment = batch.get(i);
+            String reason;
+            try
             {
-                // release resources
-                if (response != null)
+                Poller.Result healthy = await(gates.get(i));
+                if (healthy.isSatisfied())
                 {
-                    response.close();
+                    deployment.target.getLog().debug("Health gate passed after " + healthy + ".");
+                    continue;
                 }
+                reason = "Health gate timed out after " + healthy + ".";
+            } catch (MojoFailureException e)
+            {
+                reason = "Health gate failed: " + firstLine(e.getMessage());
+            } catch (MojoExecutionException e)
+            {
+                reason = "Health gate failed: " + firstLine(e.getMessage());
             }
-        } catch (Exception e)
-        {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw, true);
-            e.printStackTrace(pw);
-            throw new MojoExecutionException("Unable to create HTTP client. Exception:\n" + sw.getBuffer().toString());
-        } finally
-        {
-            // release resources
-            if (configServiceClient != null)
+            deployment.fail(reason);
+            if (abort == null)
             {
-                configServiceClient.close();
+                abort = "node " + deployment.server + " failed: " + reason;
             }
         }
+        return abort;
     }
 
-    // Returns the current Orchestrator configuration fingerprint
-    private Map<ConfigSlot,String> getConfigFingerprint() throws MojoFailureException, MojoExecutionException
-    {
-        // Example: https://localhost:8283
-        URI configServiceBaseUri = UriBuilder.fromUri("https://" + o11nServer + ":" + o11nConfigPort.toString()).build();
-        HttpAuthenticationFeature configServiceAuth = HttpAuthenticationFeature.basic(o11nConfigServiceUser, o11nConfigServicePassword);
-
-        return getConfigFingerprint(configServiceBaseUri, configServiceAuth);
-    }
-
-    private Map<ConfigSlot,String> getConfigFingerprint(URI apiEndpoint, HttpAuthenticationFeature auth) throws MojoFailureException, MojoExecutionException
+    // Uploads the plug-in(s) to a single server of a fan-out deployment and starts its service restart on the given poll executor.
+    // Failures are recorded rather than thrown so the other servers are deployed to nevertheless.
+    private void deployToServer(final ServerDeployment deployment, PollExecutor polls)
     {
-        getLog().debug("Getting Orchestrator configuration fingerprint...");
-        getLog().debug("Configured config service URL: '" + apiEndpoint.toString() + "'.");
-
-        Client configServiceClient = null;
-        Response response = null;
-
+        long start = System.currentTimeMillis();
+        final ServerLock lock = ServerLock.get(deployment.target.getRestartKey());
+        boolean locked = false;
         try
         {
-            configServiceClient = getUnsecureClient();
-            configServiceClient.register(auth);
-
-            try
+            lock.acquire(deployment.target.getLog());
+            locked = true;
+            List<RestartCoordinator.Request> restarts = new ArrayList<RestartCoordinator.Request>();
+            deployment.result = deployTo(deployment.target, restarts);
+            if (!restarts.isEmpty())
             {
-                response = configServiceClient.target(apiEndpoint).path("/vco-controlcenter/api/server/config-version").request(MediaType.APPLICATION_JSON_TYPE).get();
-                JsonObject statusResponse = response.readEntity(JsonObject.class);
-
-                int statusCode = response.getStatus();
-                switch (statusCode)
+                final long restartStart = System.currentTimeMillis();
+                deployment.restart = restartFanOut(deployment.target, restarts, polls).whenComplete(new BiConsumer<Boolean, Throwable>()
                 {
-                case 200:
-                    // Don't use JsonObject.getString since the returned currentStatus might be null
-                    // Rather use JsonObject.get which will return the value or JsonValue.NULL if it's null
-                    // In addition JsonObject.isNull(String key) can be used for testing the retun value
-                    if (!statusResponse.isNull("activeConfigurationFingerprint") && !statusResponse.isNull("pendingConfigurationFingerprint"))
-                    {
-                        String activeFingerprint = statusResponse.getString("activeConfigurationFingerprint");
-                        String pendingFingerprint = statusResponse.getString("pendingConfigurationFingerprint");
-
-                        getLog().debug("Orchestrator active configuration fingerprint: '" + activeFingerprint + "'.");
-                        getLog().debug("Orchestrator pending configuration fingerprint: '" + pendingFingerprint + "'.");
-                        
-                        Map <ConfigSlot, String> map = new HashMap<ConfigSlot, String>();
-                        map.put(ConfigSlot.ACTIVE, activeFingerprint);
-                        map.put(ConfigSlot.PENDING, pendingFingerprint);
-                        return map;
-                    }
-                    else
+                    @Override
+                    public void accept(Boolean running, Throwable failure)
                     {
-                        getLog().warn("Error while reading configuration fingerprints. Unable to parse JSON data or fingerprints returned null.");
-                        return null;
+                        deployment.restartMillis = System.currentTimeMillis() - restartStart;
+                        // Only now other deployments to this server may upload or restart it again
+                        lock.release();
                     }
-                case 401:
-                    getLog().warn("HTTP 401. Authentication is required to get the configuration fingerprint.");
-                    return null;
-                case 403:
-                    getLog().warn("HTTP 403. The provided user is not authorized to get the configuration fingerprint.");
-                    return null;
-                case 404:
-                    getLog().warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
-                    return null;
-                default:
-                    getLog().warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the configuration changes have been applied. I really got no clue.");
-                    return null;
-                }
-            } catch (ResponseProcessingException ex)
+                });
+                locked = false;
+            }
+        } catch (MojoFailureException e)
+        {
+            deployment.fail(firstLine(e.getMessage()));
+        } catch (MojoExecutionException e)
+        {
+            deployment.fail(firstLine(e.getMessage()));
+        } finally
+        {
+            deployment.uploadMillis = System.currentTimeMillis() - start;
+            if (locked)
             {
-                // Thrown in case processing of a received HTTP response fails
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ResponseProcessingException occured while requesting Orchestrator configuration fingerprint:\n" + sw.getBuffer().toString());
-            } catch (ProcessingException ex)
+                lock.release();
+            }
+        }
+    }
+
+    // Waits for the service restart of the given server of a fan-out deployment, if one was started.
+    private void awaitServerRestart(ServerDeployment deployment)
+    {
+        if (deployment.restart == null)
+        {
+            return;
+        }
+        try
+        {
+            if (!await(deployment.restart))
             {
-                // Thrown in case the request processing or subsequent I/O operation fail.
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw, true);
-                ex.printStackTrace(pw);
-                throw new MojoFailureException("A ProcessingException occured while requesting Orchestrator configuration fingerprint:\n" + sw.getBuffer().toString());
-            } finally
+                deployment.fail("Orchestrator service is not running after the restart.");
+            }
+        } catch (MojoFailureException e)
+        {
+            deployment.fail(firstLine(e.getMessage()));
+        } catch (MojoExecutionException e)
+        {
+            deployment.fail(firstLine(e.getMessage()));
+        }
+    }
+
+    // Logs the result of each server of a fan-out or rolling deployment as a table at INFO level. Returns the number of failed servers.
+    private int logServerMatrix(String title, List<ServerDeployment> deployments, long durationMillis)
+    {
+        int failed = 0;
+        long sequentialMillis = 0;
+        getLog().info(title + " summary for " + deployments.size() + " server(s):");
+        getLog().info(String.format("  %-40s %-8s %10s %10s", "Server", "Result", "Upload", "Restart"));
+        for (ServerDeployment deployment : deployments)
+        {
+            String restart = deployment.restartMillis < 0 ? "-" : String.format("%.1f s", deployment.restartMillis / 1000.0);
+            getLog().info(String.format("  %-40s %-8s %8.1f s %10s%s", deployment.server, deployment.result, deployment.uploadMillis / 1000.0, restart, deployment.message == null ? "" : "  " + deployment.message));
+            sequentialMillis += deployment.uploadMillis + Math.max(0, deployment.restartMillis);
+            if (deployment.result == DeployReport.Result.FAILED)
+            {
+                failed++;
+            }
+        }
+        getLog().info(String.format("  %-40s %19.1f s (%.1f s one server after another)", "total", durationMillis / 1000.0, sequentialMillis / 1000.0));
+        return failed;
+    }
+
+    // Deletes the package of and uploads a single plug-in of a batch. Failures are returned rather than thrown
+    // so the other plug-ins of the batch are deployed nevertheless.
+    private ArtifactDeployment deployArtifact(DeployTarget target, OrchestratorClient client, PluginArtifact artifact, String packageName)
+    {
+        long start = System.currentTimeMillis();
+        File artifactFile = artifact.getFile();
+        String name = artifactFile.getName();
+        ArtifactDeployment deployment = new ArtifactDeployment(artifactFile, DeployState.key(target.getHost(), target.getServicePort(), name.substring(0, name.lastIndexOf('.') < 0 ? name.length() : name.lastIndexOf('.'))));
+        String message = null;
+        try
+        {
+            if (o11nSkipUnchanged)
+            {
+                deployment.fingerprint = fingerprint(target, artifactFile);
+                if (isDeployed(target, client, deployment.stateKey, deployment.fingerprint))
+                {
+                    target.getLog().info("Plug-in '" + name + "' is unchanged since its last deployment to '" + target.getHost() + "'. Skipping deployment.");
+                    deployment.result = DeployReport.Result.SKIPPED;
+                    return deployment;
+                }
+            }
+            if (o11nDeletePackage && packageName != null && !client.deletePackage(packageName + "."))
+            {
+                message = "Plug-in package deletion has failed.";
+                return deployment;
+            }
+            if (o11nOptimizePlugin)
+            {
+                deployment.file = optimizedFile(target, artifactFile);
+            }
+            if (client.uploadPlugin(artifact.getType(), o11nOverwrite, deployment.file))
+            {
+                target.getLog().info("Finished plug-in upload of '" + name + "'.");
+                deployment.result = DeployReport.Result.SUCCESS;
+            }
+            else
+            {
+                message = "Plug-in upload has failed.";
+            }
+            return deployment;
+        } catch (MojoFailureException e)
+        {
+            message = firstLine(e.getMessage());
+            return deployment;
+        } catch (MojoExecutionException e)
+        {
+            message = firstLine(e.getMessage());
+            return deployment;
+        } finally
+        {
+            if (message != null)
+            {
+                target.getLog().warn("Deployment of plug-in '" + name + "' failed: " + message);
+            }
+            deployment.message = message;
+            deployment.durationMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    private static String firstLine(String message)
+    {
+        if (message == null)
+        {
+            return null;
+        }
+        int end = message.indexOf('\n');
+        return end < 0 ? message : message.substring(0, end);
+    }
+
+    // Returns a client for the given target using a connection pool of the given size.
+    private OrchestratorClient newClient(DeployTarget target, int poolSize)
+    {
+        if (warmClient != null)
+        {
+            return warmClient;
+        }
+        return new OrchestratorClient(target.getLog(), target.getHost(), target.getServicePort(), target.getConfigPort(), target.getPluginServiceUser(), target.getPluginServicePassword(), target.getConfigServiceUser(), target.getConfigServicePassword(),
+                poolSize, o11nTrustStore, o11nTrustStorePassword, target.getCertFingerprint(), o11nTransport,
+                new RetryPolicy(target.getLog(), o11nMaxRetries, o11nRetryBackoff, o11nMaxRetryBackoff, o11nCallTimeout, o11nCircuitBreakerThreshold, o11nCircuitBreakerDelay),
+                new UploadMeter(target.getLog(), o11nUploadProgressInterval, uploadLimiter));
+    }
+
+    // Closes the given client unless it is the warm client which is kept open across deployments.
+    private void releaseClient(OrchestratorClient client)
+    {
+        if (client != warmClient)
+        {
+            client.close();
+        }
+    }
+
+    // Opens a single client used by all following deployments of this execution, so its pooled authenticated connections
+    // and TLS sessions are reused instead of being set up for each deployment. Must be closed by closeWarmClient.
+    void openWarmClient() throws MojoExecutionException
+    {
+        if (o11nServers != null && !o11nServers.isEmpty())
+        {
+            // A fan-out deployment uses a client per server and deployment
+            return;
+        }
+        if (warmClient == null)
+        {
+            warmClient = newClient(getTarget(), Math.max(o11nConnectionPoolSize, o11nUploadParallelism));
+        }
+        warmClient.warmUp();
+    }
+
+    // Keeps the pooled connections of the warm client from being closed by the server while idle.
+    void keepWarm() throws MojoExecutionException
+    {
+        if (warmClient != null)
+        {
+            warmClient.warmUp();
+        }
+    }
+
+    void closeWarmClient()
+    {
+        if (warmClient != null)
+        {
+            warmClient.close();
+            warmClient = null;
+        }
+    }
+
+    // Hands the restart for the given uploaded plug-ins over to the coordinator if restarts are coalesced and other
+    // deployplugin executions of the build are still to finish. Returns true if the restart was deferred.
+    private boolean deferRestart(DeployTarget target, List<RestartCoordinator.Request> requests, List<RestartCoordinator.Request> fanOutRestarts)
+    {
+        if (o11nCoalesceRestarts && coordinator != null && !coordinator.isLast())
+        {
+            for (RestartCoordinator.Request request : requests)
+            {
+                coordinator.register(target.getRestartKey(), request);
+            }
+            target.getLog().info("Orchestrator service restart deferred until the last deploying module of the build has finished.");
+            if (!coordinator.isRestartedAtSessionEnd())
+            {
+                target.getLog().warn("The restart of '" + target.getRestartKey() + "' is skipped if the last deploying module does not run, e.g. because the build fails before. "
+                    + "Declare the plug-in with <extensions>true</extensions> to restart pending servers at the end of the build.");
+            }
+            return true;
+        }
+        if (fanOutRestarts != null)
+        {
+            // Restarted by deployToServers once the upload has finished, without blocking an upload thread
+            fanOutRestarts.addAll(requests);
+            return true;
+        }
+        return false;
+    }
+
+    // Restarts the Orchestrator service now, including the restarts other executions of the build deferred for the same server.
+    // Returns true if the service is running afterwards.
+    private boolean restartNow(DeployTarget target, OrchestratorClient client, DeployReport report) throws MojoFailureException, MojoExecutionException
+    {
+        List<RestartCoordinator.Request> deferred = coordinator == null ? Collections.<RestartCoordinator.Request> emptyList() : coordinator.take(target.getRestartKey());
+        if (!deferred.isEmpty())
+        {
+            target.getLog().info("Restart includes " + deferred.size() + " plug-in(s) deployed by other modules of this build.");
+        }
+        boolean running = restartAndWait(target, client, report);
+        if (running)
+        {
+            for (RestartCoordinator.Request request : deferred)
+            {
+                request.getMojo().recordDeployment(request.getTarget(), client, request.getPlugin(), request.getStateKey(), request.getArtifactFingerprint(), request.getPackages());
+            }
+        }
+        return running;
+    }
+
+    // Logs the servers whose deferred restart is still pending.
+    private void warnPendingRestarts()
+    {
+        List<String> servers = coordinator.getPendingServers();
+        if (!servers.isEmpty())
+        {
+            getLog().warn("Orchestrator service restart still pending for " + servers + ". Restart these servers manually "
+                + "if no later deploying module of the build runs.");
+        }
+    }
+
+    // Restarts the server of the given deferred requests once, using the configuration of the last execution requesting it.
+    static void restartDeferred(List<RestartCoordinator.Request> requests) throws MojoFailureException, MojoExecutionException
+    {
+        RestartCoordinator.Request last = requests.get(requests.size() - 1);
+        ServerLock lock = ServerLock.get(last.getTarget().getRestartKey());
+        lock.acquire(last.getTarget().getLog());
+        try
+        {
+            last.getMojo().restartFor(last.getTarget(), requests);
+        } finally
+        {
+            lock.release();
+        }
+    }
+
+    private void restartFor(DeployTarget target, List<RestartCoordinator.Request> requests) throws MojoFailureException, MojoExecutionException
+    {
+        target.getLog().info("Restarting Orchestrator service on '" + target.getHost() + "' once for " + requests.size() + " plug-in(s) deployed by this build.");
+        PollExecutor polls = new PollExecutor(daemonThreads("o11n-deploy-poll"));
+        try
+        {
+            await(restartFor(target, requests, polls));
+        } finally
+        {
+            polls.shutdownNow();
+        }
+    }
+
+    // Restarts the service of the given target for the given uploads deferred by a fan-out deployment, including the restarts other executions of the build
+    // deferred for the same server. The returned future completes with true if the service is running afterwards.
+    private CompletableFuture<Boolean> restartFanOut(DeployTarget target, List<RestartCoordinator.Request> requests, PollExecutor polls)
+    {
+        if (coordinator != null)
+        {
+            List<RestartCoordinator.Request> deferred = coordinator.take(target.getRestartKey());
+            if (!deferred.isEmpty())
+            {
+                target.getLog().info("Restart includes " + deferred.size() + " plug-in(s) deployed by other modules of this build.");
+                requests.addAll(deferred);
+            }
+        }
+        return restartFor(target, requests, polls);
+    }
+
+    // Restarts the server of the given requests once, awaiting the restart from the given poll executor, and records their deployments
+    // if it succeeded. The returned future completes with true if the service is running afterwards.
+    private CompletableFuture<Boolean> restartFor(final DeployTarget target, final List<RestartCoordinator.Request> requests, PollExecutor polls)
+    {
+        List<File> files = new ArrayList<File>();
+        for (RestartCoordinator.Request request : requests)
+        {
+            files.add(request.getPlugin());
+        }
+        final OrchestratorClient client = newClient(target, o11nConnectionPoolSize);
+        final DeployReport report = new DeployReport(client, target.getHost(), files);
+        return restartAndWait(target, client, report, polls).thenApply(new Function<Boolean, Boolean>()
+        {
+            @Override
+            public Boolean apply(Boolean running)
+            {
+                if (running)
+                {
+                    try
+                    {
+                        for (RestartCoordinator.Request request : requests)
+                        {
+                            request.getMojo().recordDeployment(request.getTarget(), client, request.getPlugin(), request.getStateKey(), request.getArtifactFingerprint(), request.getPackages());
+                        }
+                    } catch (MojoFailureException e)
+                    {
+                        throw new CompletionException(e);
+                    } catch (MojoExecutionException e)
+                    {
+                        throw new CompletionException(e);
+                    }
+                    target.getLog().info("Successfully updated " + requests.size() + " plug-in(s) in VMware Orchestrator.");
+                }
+                return running;
+            }
+        }).whenComplete(new BiConsumer<Boolean, Throwable>()
+        {
+            @Override
+            public void accept(Boolean running, Throwable failure)
             {
+                report.finish(Boolean.TRUE.equals(running) ? DeployReport.Result.SUCCESS : DeployReport.Result.FAILED);
+                // Only logged, the report file belongs to the deployment of this execution
+                report.log(target.getLog());
+                recordHistory(target, report);
                 // release resources
-                if (response != null)
+                releaseClient(client);
+            }
+        });
+    }
+
+    // Waits for the uploaded plug-ins to be committed, restarts the Orchestrator service and waits for it to come back.
+    // Returns true if the service is running afterwards.
+    private boolean restartAndWait(DeployTarget target, OrchestratorClient client, DeployReport report) throws MojoFailureException, MojoExecutionException
+    {
+        // The service status and the plug-in service readiness are polled concurrently
+        PollExecutor polls = new PollExecutor(daemonThreads("o11n-deploy-poll"));
+        try
+        {
+            return await(restartAndWait(target, client, report, polls));
+        } finally
+        {
+            polls.shutdownNow();
+        }
+    }
+
+    // Asynchronous variant of restartAndWait: all waits are polled from the given executor, so no thread is blocked
+    // while the service restarts. The returned future completes with true if the service is running afterwards.
+    private CompletableFuture<Boolean> restartAndWait(final DeployTarget target, final OrchestratorClient client, final DeployReport report, final PollExecutor polls)
+    {
+        final Poller poller = new Poller(o11nPollInterval, o11nMaxPollInterval);
+
+        // Wait for config changes to be committed
+        report.phase("commit-wait");
+        return poller.schedule(polls, o11nCommitTimeout, new Poller.Condition()
+        {
+            @Override
+            public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+            {
+                Map<ConfigSlot, String> configs = client.getConfigFingerprint();
+                return configs != null && !configs.get(ConfigSlot.ACTIVE).equalsIgnoreCase(configs.get(ConfigSlot.PENDING));
+            }
+        }).thenCompose(new Function<Poller.Result, CompletionStage<Boolean>>()
+        {
+            @Override
+            public CompletionStage<Boolean> apply(Poller.Result committed)
+            {
+                target.getLog().debug((committed.isSatisfied() ? "Configuration changes committed after " : "No pending configuration changes detected after ") + committed + ".");
+
+                // 3. Restart service
+                report.phase("restart");
+                target.getLog().info("Service restart was requested.");
+                Boolean restartTriggered;
+                try
+                {
+                    restartTriggered = client.restartService();
+                } catch (MojoFailureException e)
+                {
+                    throw new CompletionException(e);
+                } catch (MojoExecutionException e)
                 {
-                    response.close();
+                    throw new CompletionException(e);
+                }
+
+                if (restartTriggered)
+                {
+                    return awaitRestart(target, client, report, poller, polls);
+                } else
+                {
+                    throw new CompletionException(new MojoFailureException("Orchestrator service restart has failed. Please restart Orchestrator service manually for the changes to take effect."));
                 }
             }
-        } catch (Exception e)
+        });
+    }
+
+    // Waits for the restarted Orchestrator service to come back and its pending configuration changes to be applied.
+    // The returned future completes with true if the service is running afterwards.
+    private CompletableFuture<Boolean> awaitRestart(final DeployTarget target, final OrchestratorClient client, final DeployReport report, final Poller poller, final PollExecutor polls)
+    {
+        // Wait for service restart
+        report.phase("restart-wait");
+        // Right after the restart request the service usually still runs. Its answers only count once it was seen down, by either
+        // poll, or once the grace period has passed without that, for restarts too fast to be observed.
+        final AtomicBoolean wentDown = new AtomicBoolean(false);
+        final long graceDeadline = System.currentTimeMillis() + Math.min(RESTART_GRACE_MILLIS, o11nRestartTimeout);
+        // The plug-in service is probed concurrently, it usually takes a while longer than the Control Center reports
+        final CompletableFuture<Poller.Result> readiness = o11nWaitForReadiness ? awaitReadiness(client, poller, wentDown, graceDeadline, polls) : CompletableFuture.completedFuture((Poller.Result) null);
+        return poller.schedule(polls, o11nRestartTimeout, new Poller.Condition()
         {
+            @Override
+            public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+            {
+                // An unreachable service counts as restarting, polled until the restart timeout instead of failing the wait
+                if (client.pollServiceStatus() == ServiceStatus.RESTARTING)
+                {
+                    wentDown.set(true);
+                    return false;
+                }
+                return wentDown.get() || System.currentTimeMillis() >= graceDeadline;
+            }
+        }).whenComplete(new BiConsumer<Poller.Result, Throwable>()
+        {
+            @Override
+            public void accept(Poller.Result restarted, Throwable failure)
+            {
+                if (failure != null)
+                {
+                    // Stop probing the plug-in service of a failed restart
+                    readiness.cancel(false);
+                }
+            }
+        }).thenCompose(new Function<Poller.Result, CompletionStage<Poller.Result>>()
+        {
+            @Override
+            public CompletionStage<Poller.Result> apply(Poller.Result restarted)
+            {
+                if (restarted.isSatisfied())
+                {
+                    target.getLog().info("Orchestrator service restart took " + restarted + ".");
+                }
+                else
+                {
+                    target.getLog().warn("Timeout. Orchestrator service is not responding. Please verify your Orchestrator configuration.");
+                }
+                return readiness;
+            }
+        }).thenCompose(new Function<Poller.Result, CompletionStage<Poller.Result>>()
+        {
+            @Override
+            public CompletionStage<Poller.Result> apply(Poller.Result ready)
+            {
+                if (ready != null)
+                {
+                    if (ready.isSatisfied())
+                    {
+                        target.getLog().info("Orchestrator plug-in service ready after " + ready + ".");
+                    }
+                    else
+                    {
+                        target.getLog().warn("Timeout. Orchestrator plug-in service is not responding. Please verify your Orchestrator configuration.");
+                    }
+                }
+
+                // 4. Check if the configuration was applied
+                if (!o11nWaitForPendingChanges)
+                {
+                    return CompletableFuture.completedFuture(null);
+                }
+                report.phase("pending-changes-wait");
+                target.getLog().info("Wait for pending changes was requested.");
+                // Wait for pending changes to be applied
+                return poller.schedule(polls, o11nPendingChangesTimeout, new Poller.Condition()
+                {
+                    @Override
+                    public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+                    {
+                        Map<ConfigSlot, String> configs = client.pollConfigFingerprint();
+                        if (configs == null)
+                        {
+                            throw new MojoFailureException("An error occured while waiting for the configuration changes to be applied. Please verify your Orchestrator configuration.");
+                        }
+                        if (configs.isEmpty())
+                        {
+                            // Not reachable right now, polled again until the pending changes timeout
+                            return false;
+                        }
+                        return configs.get(ConfigSlot.ACTIVE).equalsIgnoreCase(configs.get(ConfigSlot.PENDING));
+                    }
+                });
+            }
+        }).thenApply(new Function<Poller.Result, Boolean>()
+        {
+            @Override
+            public Boolean apply(Poller.Result applied)
+            {
+                if (applied != null)
+                {
+                    if (applied.isSatisfied())
+                    {
+                        target.getLog().info("Pending configuration changes have been applied after " + applied + ". All done.");
+                    }
+                    else
+                    {
+                        target.getLog().warn("Timeout. Orchestrator configuration was not applied. Please verify your Orchestrator configuration.");
+                    }
+                }
+
+                // Return service status info
+                report.phase("status");
+                ServiceStatus status;
+                try
+                {
+                    status = client.getServiceStatus();
+                } catch (MojoFailureException e)
+                {
+                    throw new CompletionException(e);
+                } catch (MojoExecutionException e)
+                {
+                    throw new CompletionException(e);
+                }
+                switch (status)
+                {
+                case RUNNING:
+                    target.getLog().info("Finished Orchestrator service restart.");
+                    return true;
+                case STOPPED:
+                    target.getLog().warn("Orchestrator service could not be started. Please verify your Orchestrator configuration.");
+                    return false;
+                default:
+                    target.getLog().warn("Orchestrator service returned a unknown status. Please verify your Orchestrator configuration.");
+                    return false;
+                }
+            }
+        });
+    }
+
+    // Sends the package deletion request on a separate thread so the upload can be prepared in the meantime.
+    private Future<Boolean> deleteAsync(final OrchestratorClient client, final String packageName)
+    {
+        return runAsync("o11n-deploy-delete", new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call() throws MojoFailureException, MojoExecutionException
+            {
+                return client.deletePackage(packageName);
+            }
+        });
+    }
+
+    // Polls the plug-in service from the given executor until it is ready after a restart. A response only counts once the
+    // service was seen down or the given grace deadline has passed, so a probe answered right before the service went down
+    // is not mistaken for the service being back.
+    private CompletableFuture<Poller.Result> awaitReadiness(final OrchestratorClient client, final Poller poller, final AtomicBoolean wentDown, final long graceDeadline, PollExecutor polls)
+    {
+        // A client error may be transient while the service starts, only one still answered by the last probe fails the wait
+        final long deadline = System.currentTimeMillis() + o11nRestartTimeout;
+        return poller.schedule(polls, o11nRestartTimeout, new Poller.Condition()
+        {
+            @Override
+            public boolean isSatisfied() throws MojoFailureException, MojoExecutionException
+            {
+                boolean ready = client.isPluginServiceReady(o11nReadinessPath, deadline);
+                if (!ready)
+                {
+                    wentDown.set(true);
+                    return false;
+                }
+                return wentDown.get() || System.currentTimeMillis() >= graceDeadline;
+            }
+        });
+    }
+
+    // Runs the given task on a new daemon thread of the given name.
+    private static <T> Future<T> runAsync(String name, Callable<T> task)
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor(daemonThreads(name));
+        try
+        {
+            return executor.submit(task);
+        } finally
+        {
+            // The submitted task still runs, the thread ends with it
+            executor.shutdown();
+        }
+    }
+
+    // Waits for the given task run on another thread and returns its result, rethrowing its failure.
+    private static <T> T await(Future<T> future) throws MojoFailureException, MojoExecutionException
+    {
+        try
+        {
+            return future.get();
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof MojoFailureException)
+            {
+                throw (MojoFailureException) e.getCause();
+            }
+            if (e.getCause() instanceof MojoExecutionException)
+            {
+                throw (MojoExecutionException) e.getCause();
+            }
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.getCause().printStackTrace(pw);
+            throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
             StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw, true);
             e.printStackTrace(pw);
-            throw new MojoExecutionException("Unable to create HTTP client. Exception:\n" + sw.getBuffer().toString());
-        } finally
+            throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Does all the upload work which requires no response from the server: validates the plug-in archive,
+    // builds the upload request and opens a connection to the plug-in service.
+    private MultipartFileEntity prepareUpload(DeployTarget target, OrchestratorClient client, File file) throws MojoFailureException, MojoExecutionException
+    {
+        long start = System.currentTimeMillis();
+        if (!o11nValidatePlugin)
         {
-            // release resources
-            if (configServiceClient != null)
+            validateArchive(file);
+        }
+        MultipartFileEntity multipart = OrchestratorClient.newUploadEntity(o11nPluginType, o11nOverwrite, file);
+        client.warmUp();
+        target.getLog().debug("Prepared plug-in upload of " + multipart.getContentLength() + " bytes (" + (System.currentTimeMillis() - start) + " ms).");
+        return multipart;
+    }
+
+    // Fails if the given file is not a valid plug-in bundle of the given type. Only the ZIP central directory and the metadata entries are read.
+    private PluginArchive preflight(DeployTarget target, File file, PluginType type) throws MojoFailureException
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            PluginArchive archive = PluginArchive.inspect(file, type);
+            target.getLog().info("Validated plug-in file '" + file.getName() + "': package '" + (archive.getPackageName() == null ? "unknown" : archive.getPackageName()) + "', version '"
+                    + (archive.getVersion() == null ? "unknown" : archive.getVersion()) + "', " + archive.getEntryCount() + " entries (" + (System.currentTimeMillis() - start) + " ms).");
+            return archive;
+        } catch (IOException e)
+        {
+            throw new MojoFailureException("Plug-in file '" + file.getAbsolutePath() + "' is not a valid " + type.toString() + " bundle: " + e.getMessage());
+        }
+    }
+
+    // Fails if the given file is not a readable ZIP archive. Only the central directory is read.
+    private static void validateArchive(File file) throws MojoFailureException
+    {
+        try
+        {
+            ZipFile zip = new ZipFile(file);
+            zip.close();
+        } catch (IOException e)
+        {
+            throw new MojoFailureException("Plug-in file '" + file.getAbsolutePath() + "' is not a valid " + file.getName().substring(file.getName().lastIndexOf('.') + 1) + " archive: " + e.getMessage());
+        }
+    }
+
+    // Returns a factory for daemon threads of the given name, so a failed build is never kept alive by a pending request.
+    private static ThreadFactory daemonThreads(final String name)
+    {
+        return new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
             {
-                configServiceClient.close();
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
             }
+        };
+    }
+
+    // Logs the deployment summary and writes the report file.
+    private void writeReport(DeployTarget target, DeployReport report)
+    {
+        report.log(target.getLog());
+        try
+        {
+            report.write(target.getReportFile());
+            target.getLog().debug("Deployment report written to '" + target.getReportFile() + "'.");
+        } catch (IOException e)
+        {
+            target.getLog().warn("Unable to write deployment report '" + target.getReportFile() + "': " + e.getMessage());
+        }
+        recordHistory(target, report);
+    }
+
+    // Appends the finished report to the deployment history, if requested.
+    private void recordHistory(DeployTarget target, DeployReport report)
+    {
+        if (!o11nRecordHistory)
+        {
+            return;
+        }
+        try
+        {
+            DeployHistory.append(o11nHistoryFile, report);
+        } catch (IOException e)
+        {
+            target.getLog().warn("Unable to append to deployment history '" + o11nHistoryFile + "': " + e.getMessage());
         }
     }
 
-    // Returns a Jersey HTTP client properly configured to be used with this Mojo
-    private Client getUnsecureClient() throws KeyManagementException, NoSuchAlgorithmException
+    // Returns the repacked copy of the given plug-in file, repacking it unless it was repacked already since it was last modified.
+    private File optimizedFile(DeployTarget target, File file) throws MojoExecutionException
     {
-        // BEGIN -- Allow Self-Signed Orchestrator Certificates
-        // TODO Build in option to provide the trusted certificate
-        SSLContext disabledSslContext = SSLContext.getInstance("TLS");
-        disabledSslContext.init(null, new TrustManager[]
-        { new X509TrustManager()
+        String key = file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+        synchronized (optimizedFiles)
         {
-            public void checkClientTrusted(X509Certificate[] arg0, String arg1) throws CertificateException
+            File optimized = optimizedFiles.get(key);
+            if (optimized == null)
             {
+                optimized = new File(getOptimizedDirectory(), file.getName());
+                optimized.getParentFile().mkdirs();
+                try
+                {
+                    newOptimizer().optimize(file, optimized).log(target.getLog(), file.getName());
+                } catch (IOException e)
+                {
+                    StringWriter sw = new StringWriter();
+                    PrintWriter pw = new PrintWriter(sw, true);
+                    e.printStackTrace(pw);
+                    throw new MojoExecutionException("Unable to repack plug-in file '" + file.getAbsolutePath() + "'. Exception:\n" + sw.getBuffer().toString());
+                }
+                optimizedFiles.put(key, optimized);
             }
+            return optimized;
+        }
+    }
+
+    // Returns an optimizer repacking plug-in files as configured by o11nOptimizeExcludes, o11nCompressionLevel and o11nOptimizeThreads
+    BundleOptimizer newOptimizer()
+    {
+        return new BundleOptimizer(o11nOptimizeExcludes, o11nCompressionLevel, o11nOptimizeThreads);
+    }
+
+    // Returns the directory the repacked plug-in files are written to
+    private File getOptimizedDirectory()
+    {
+        return new File(project.getBuild().getDirectory(), "o11n-optimized");
+    }
 
-            public void checkServerTrusted(X509Certificate[] arg0, String arg1) throws CertificateException
+    // Returns true if the given plug-in file is a repacked copy written by optimizedFile
+    private boolean isOptimized(File file)
+    {
+        return o11nOptimizePlugin && getOptimizedDirectory().equals(file.getParentFile());
+    }
+
+    // Returns the SHA-256 fingerprint of the given plug-in file.
+    private String fingerprint(DeployTarget target, File file) throws MojoExecutionException
+    {
+        try
+        {
+            long start = System.currentTimeMillis();
+            String fingerprint = Digests.sha256(file);
+            target.getLog().debug("Plug-in fingerprint: '" + fingerprint + "' (" + (System.currentTimeMillis() - start) + " ms).");
+            return fingerprint;
+        } catch (IOException e)
+        {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.printStackTrace(pw);
+            throw new MojoExecutionException("Unable to read plug-in file '" + file.getAbsolutePath() + "'. Exception:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Returns the packages embedded in the given plug-in file.
+    private BundlePackages readPackages(DeployTarget target, File file) throws MojoExecutionException
+    {
+        try
+        {
+            long start = System.currentTimeMillis();
+            BundlePackages packages = BundlePackages.read(file);
+            target.getLog().debug("Plug-in contains " + packages.getPackageFingerprints().size() + " package(s) (" + (System.currentTimeMillis() - start) + " ms).");
+            return packages;
+        } catch (IOException e)
+        {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.printStackTrace(pw);
+            throw new MojoExecutionException("Unable to read plug-in file '" + file.getAbsolutePath() + "'. Exception:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Imports the changed packages of the given plug-in file if nothing but its packages changed since the last deployment under the given state key.
+    // Returns true if the deployment is complete, false if the plug-in has to be reinstalled.
+    private boolean importChangedPackages(DeployTarget target, OrchestratorClient client, File file, String stateKey, BundlePackages packages) throws MojoFailureException, MojoExecutionException
+    {
+        DeployState state;
+        try
+        {
+            state = DeployState.load(o11nStateFile);
+        } catch (IOException e)
+        {
+            target.getLog().warn("Unable to read deploy state file '" + o11nStateFile + "': " + e.getMessage());
+            return false;
+        }
+        if (!packages.getContentFingerprint().equals(state.getContentFingerprint(stateKey)))
+        {
+            target.getLog().info("Plug-in code changed since its last deployment to '" + target.getHost() + "'. Reinstalling the plug-in.");
+            return false;
+        }
+
+        List<String> changed = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : packages.getPackageFingerprints().entrySet())
+        {
+            if (!entry.getValue().equals(state.getPackageFingerprint(stateKey, entry.getKey())))
+            {
+                changed.add(entry.getKey());
+            }
+            else
+            {
+                Boolean exists = client.packageExists(entry.getKey());
+                if (exists == null)
+                {
+                    target.getLog().info("Unable to verify the packages installed on '" + target.getHost() + "'. Reinstalling the plug-in.");
+                    return false;
+                }
+                if (!exists)
+                {
+                    changed.add(entry.getKey());
+                }
+            }
+        }
+        if (changed.isEmpty())
+        {
+            target.getLog().info("Plug-in '" + file.getName() + "' and its packages are unchanged since its last deployment to '" + target.getHost() + "'.");
+            return true;
+        }
+
+        target.getLog().info("Only packages changed since the last deployment to '" + target.getHost() + "'. Importing " + changed.size() + " package(s) without reinstalling the plug-in.");
+        for (String name : changed)
+        {
+            File packageFile = null;
+            try
+            {
+                packageFile = new File(Files.createTempDirectory("o11n-deploy").toFile(), name + ".package");
+                packages.extract(name, packageFile);
+                if (!client.importPackage(packageFile))
+                {
+                    throw new MojoFailureException("Import of package '" + name + "' has failed.");
+                }
+            } catch (IOException e)
+            {
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw, true);
+                e.printStackTrace(pw);
+                throw new MojoExecutionException("Unable to extract package '" + name + "' from plug-in file '" + file.getAbsolutePath() + "'. Exception:\n" + sw.getBuffer().toString());
+            } finally
+            {
+                if (packageFile != null)
+                {
+                    packageFile.delete();
+                    packageFile.getParentFile().delete();
+                }
+            }
+        }
+        target.getLog().info("Successfully imported " + changed.size() + " package(s) to VMware Orchestrator.");
+        return true;
+    }
+
+    // Returns true if the plug-in with the given fingerprint was the last one successfully deployed under the given state key.
+    private boolean isDeployed(DeployTarget target, OrchestratorClient client, String stateKey, String artifactFingerprint) throws MojoFailureException, MojoExecutionException
+    {
+        DeployState state;
+        try
+        {
+            state = DeployState.load(o11nStateFile);
+        } catch (IOException e)
+        {
+            target.getLog().warn("Unable to read deploy state file '" + o11nStateFile + "': " + e.getMessage());
+            return false;
+        }
+        if (!artifactFingerprint.equals(state.getArtifactFingerprint(stateKey)))
+        {
+            target.getLog().debug("Plug-in fingerprint differs from the last deployment.");
+            return false;
+        }
+        if (o11nVerifyServerState)
+        {
+            String serverFingerprint = client.getPluginListFingerprint();
+            if (serverFingerprint == null || !serverFingerprint.equals(state.getServerFingerprint(stateKey)))
             {
+                target.getLog().info("Plug-in is unchanged but the plug-ins installed on '" + target.getHost() + "' changed since its last deployment.");
+                return false;
             }
+        }
+        return true;
+    }
 
-            public X509Certificate[] getAcceptedIssuers()
+    // Records the successfully deployed plug-in fingerprint, if fingerprinting was requested, and the given packages of the plug-in,
+    // if package imports were requested, and caches the plug-in file.
+    private void recordDeployment(DeployTarget target, OrchestratorClient client, File file, String stateKey, String artifactFingerprint, BundlePackages packages) throws MojoFailureException, MojoExecutionException
+    {
+        if (o11nCacheArtifacts)
+        {
+            // The fingerprint is the one of the original of a repacked plug-in file
+            cacheArtifact(target, file, isOptimized(file) ? null : artifactFingerprint);
+        }
+        if (packages != null)
+        {
+            try
+            {
+                DeployState.load(o11nStateFile).updatePackages(stateKey, packages.getContentFingerprint(), packages.getPackageFingerprints());
+            } catch (IOException e)
             {
-                return new X509Certificate[0];
+                target.getLog().warn("Unable to update deploy state file '" + o11nStateFile + "': " + e.getMessage());
             }
+        }
+        if (artifactFingerprint == null)
+        {
+            return;
+        }
+        String serverFingerprint = o11nVerifyServerState ? client.getPluginListFingerprint() : null;
+        try
+        {
+            DeployState.load(o11nStateFile).update(stateKey, artifactFingerprint, serverFingerprint);
+        } catch (IOException e)
+        {
+            target.getLog().warn("Unable to update deploy state file '" + o11nStateFile + "': " + e.getMessage());
+        }
+    }
 
-        } }, new java.security.SecureRandom());
-        // END -- Allow Self-Signed Orchestrator Certificates
+    // Stores the successfully deployed plug-in file in the artifact cache. Failures are only logged, the deployment succeeded.
+    private void cacheArtifact(DeployTarget target, File file, String artifactFingerprint) throws MojoExecutionException
+    {
+        String fingerprint = artifactFingerprint != null ? artifactFingerprint : fingerprint(target, file);
+        try
+        {
+            getArtifactCache().store(ArtifactCache.key(target.getHost(), target.getServicePort(), file.getName()), file, fingerprint);
+            target.getLog().debug("Plug-in '" + file.getName() + "' cached in '" + o11nCacheDirectory + "'.");
+        } catch (IOException e)
+        {
+            target.getLog().warn("Unable to cache plug-in '" + file.getName() + "' in '" + o11nCacheDirectory + "': " + e.getMessage());
+        }
+    }
 
-        // BEGIN -- Allow Hostname CN missmatch
-        HostnameVerifier disabledHostnameVerification = new HostnameVerifier()
+    ArtifactCache getArtifactCache()
+    {
+        return new ArtifactCache(o11nCacheDirectory, o11nCacheSize * 1024L * 1024L);
+    }
+
+    // The state of a single plug-in deployment of a batch
+    private static final class ArtifactDeployment
+    {
+        private File file;
+        private final String name;
+        private final String stateKey;
+        private String fingerprint = null;
+        private DeployReport.Result result = DeployReport.Result.FAILED;
+        private String message = null;
+        private long durationMillis;
+
+        private ArtifactDeployment(File file, String stateKey)
         {
-            @Override
-            public boolean verify(String hostname, SSLSession session)
+            this.file = file;
+            this.name = file.getName();
+            this.stateKey = stateKey;
+        }
+    }
+
+    // The state of the deployment to a single server of a fan-out deployment
+    private final class ServerDeployment
+    {
+        private final OrchestratorServer server;
+        private final DeployTarget target;
+        private DeployReport.Result result = DeployReport.Result.FAILED;
+        private String message = null;
+        private long uploadMillis;
+        private volatile long restartMillis = -1;
+        private CompletableFuture<Boolean> restart = null;
+        private OrchestratorClient probeClient = null;
+
+        private ServerDeployment(OrchestratorServer server, DeployTarget target)
+        {
+            this.server = server;
+            this.target = target;
+        }
+
+        private void fail(String message)
+        {
+            this.result = DeployReport.Result.FAILED;
+            this.message = message;
+            target.getLog().warn("Deployment failed: " + message);
+        }
+
+        // Returns the client probing the health of this server during a rolling deployment, it is kept for the whole rollout.
+        private OrchestratorClient getProbeClient()
+        {
+            if (probeClient == null)
             {
-                return true;
+                probeClient = newClient(target, 1);
             }
-        };
-        // END -- Allow Hostname CN missmatch
-
-        // Fiddler Debugging Proxy Option
-        /**
-         * System.setProperty ("http.proxyHost", "127.0.0.1");
-         * System.setProperty ("http.proxyPort", "8888");
-         * System.setProperty ("https.proxyHost", "127.0.0.1");
-         * System.setProperty ("https.proxyPort", "8888");
-         **/
-
-        ClientConfig config = new ClientConfig();
-        config.register(MultiPartFeature.class); // Enable Jersey MultiPart feature
-        config.register(JsonProcessingFeature.class); // Enable JSON-P JSON processing
-        // config.property(LoggingFeature.LOGGING_FEATURE_VERBOSITY_CLIENT, LoggingFeature.Verbosity.PAYLOAD_ANY);  // Optional enable client logging for Debugging
-        // config.property(LoggingFeature.LOGGING_FEATURE_LOGGER_LEVEL_CLIENT, "INFO");                             // Optional enable client logging for Debugging
-
-        return ClientBuilder.newBuilder().withConfig(config).sslContext(disabledSslContext).hostnameVerifier(disabledHostnameVerification).build();
+            return probeClient;
+        }
+
+        private void closeProbeClient()
+        {
+            if (probeClient != null)
+            {
+                probeClient.close();
+                probeClient = null;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return server.toString();
+        }
     }
 }
@@ -0,0 +1,387 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Records wall time, bytes sent, HTTP requests and retries for each phase of a deployment.
+ * Phases are consecutive: starting a new phase ends the current one. The finished report can be logged as a
+ * summary table and written as JSON for further processing, e.g. by CI dashboards.
+ *
+ * @author Robert Ruf
+ */
+final class DeployReport
+{
+    enum Result
+    {
+        SUCCESS, SKIPPED, FAILED;
+    }
+
+    /**
+     * The measurements of a single deployment phase.
+     */
+    static final class Phase
+    {
+        private final String name;
+        private final long startMillis;
+        private long durationMillis;
+        private long bytesSent;
+        private int requests;
+        private int retries;
+
+        private Phase(String name, long startMillis)
+        {
+            this.name = name;
+            this.startMillis = startMillis;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        long getDurationMillis()
+        {
+            return durationMillis;
+        }
+
+        long getBytesSent()
+        {
+            return bytesSent;
+        }
+
+        int getRequests()
+        {
+            return requests;
+        }
+
+        int getRetries()
+        {
+            return retries;
+        }
+    }
+
+    /**
+     * The outcome of a single plug-in of a batch deployment.
+     */
+    static final class Artifact
+    {
+        private final String name;
+        private final Result result;
+        private final long durationMillis;
+        private final String message;
+
+        private Artifact(String name, Result result, long durationMillis, String message)
+        {
+            this.name = name;
+            this.result = result;
+            this.durationMillis = durationMillis;
+            this.message = message;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        Result getResult()
+        {
+            return result;
+        }
+
+        long getDurationMillis()
+        {
+            return durationMillis;
+        }
+
+        String getMessage()
+        {
+            return message;
+        }
+    }
+
+    private final OrchestratorClient client;
+    private final String server;
+    private final List<File> plugins;
+    private final long startMillis;
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private final List<Artifact> artifacts = new ArrayList<Artifact>();
+
+    private Phase current = null;
+    private long currentBytesSent;
+    private int currentRequests;
+    private int currentRetries;
+    private Result result = null;
+    private long durationMillis;
+
+    /**
+     * @param client the client whose traffic is attributed to the phases.
+     * @param server the Orchestrator server the plug-in is deployed to.
+     * @param plugin the deployed plug-in file.
+     */
+    DeployReport(OrchestratorClient client, String server, File plugin)
+    {
+        this(client, server, Collections.singletonList(plugin));
+    }
+
+    /**
+     * @param client the client whose traffic is attributed to the phases.
+     * @param server the Orchestrator server the plug-ins are deployed to.
+     * @param plugins the plug-in files deployed in one batch.
+     */
+    DeployReport(OrchestratorClient client, String server, List<File> plugins)
+    {
+        this.client = client;
+        this.server = server;
+        this.plugins = new ArrayList<File>(plugins);
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Ends the current phase, if any, and starts a new one with the given name.
+     */
+    void phase(String name)
+    {
+        endPhase();
+        current = new Phase(name, System.currentTimeMillis());
+        currentBytesSent = client.getBytesSent();
+        currentRequests = client.getRequestCount();
+        currentRetries = client.getRetryCount();
+    }
+
+    /**
+     * Records the outcome of a single plug-in of a batch deployment. May be called from multiple threads.
+     *
+     * @param message an optional explanation of the result, e.g. why the deployment failed.
+     */
+    synchronized void artifact(String name, Result result, long durationMillis, String message)
+    {
+        artifacts.add(new Artifact(name, result, durationMillis, message));
+    }
+
+    /**
+     * Ends the current phase and the whole report with the given result.
+     */
+    void finish(Result result)
+    {
+        endPhase();
+        this.result = result;
+        this.durationMillis = System.currentTimeMillis() - startMillis;
+    }
+
+    Result getResult()
+    {
+        return result;
+    }
+
+    String getServer()
+    {
+        return server;
+    }
+
+    long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    // Returns the total size of the deployed plug-in files in bytes
+    long getPluginSize()
+    {
+        long pluginSize = 0;
+        for (File plugin : plugins)
+        {
+            pluginSize += plugin.length();
+        }
+        return pluginSize;
+    }
+
+    long getDurationMillis()
+    {
+        return durationMillis;
+    }
+
+    List<Phase> getPhases()
+    {
+        return Collections.unmodifiableList(phases);
+    }
+
+    synchronized List<Artifact> getArtifacts()
+    {
+        return new ArrayList<Artifact>(artifacts);
+    }
+
+    private void endPhase()
+    {
+        if (current != null)
+        {
+            current.durationMillis = System.currentTimeMillis() - current.startMillis;
+            current.bytesSent = client.getBytesSent() - currentBytesSent;
+            current.requests = client.getRequestCount() - currentRequests;
+            current.retries = client.getRetryCount() - currentRetries;
+            phases.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Logs the finished report as a table at INFO level.
+     */
+    void log(Log log)
+    {
+        long bytesSent = 0;
+        int requests = 0;
+        int retries = 0;
+        log.info("Deployment summary for '" + getPluginNames() + "' on '" + server + "' (" + result + "):");
+        log.info(String.format("  %-20s %10s %9s %8s %14s", "Phase", "Time", "Requests", "Retries", "Bytes sent"));
+        for (Phase phase : phases)
+        {
+            log.info(String.format("  %-20s %8.1f s %9d %8d %14d", phase.name, phase.durationMillis / 1000.0, phase.requests, phase.retries, phase.bytesSent));
+            bytesSent += phase.bytesSent;
+            requests += phase.requests;
+            retries += phase.retries;
+        }
+        log.info(String.format("  %-20s %8.1f s %9d %8d %14d", "total", durationMillis / 1000.0, requests, retries, bytesSent));
+        List<Artifact> artifacts = getArtifacts();
+        if (!artifacts.isEmpty())
+        {
+            log.info(String.format("  %-40s %-8s %10s", "Plug-in", "Result", "Time"));
+            for (Artifact artifact : artifacts)
+            {
+                log.info(String.format("  %-40s %-8s %8.1f s%s", artifact.name, artifact.result, artifact.durationMillis / 1000.0, artifact.message == null ? "" : "  " + artifact.message));
+            }
+        }
+    }
+
+    /**
+     * Writes the finished report as JSON to the given file, creating missing parent directories.
+     */
+    void write(File file) throws IOException
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create directory '" + directory + "'.");
+        }
+
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            Map<String, Boolean> config = Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, Boolean.TRUE);
+            JsonWriter writer = Json.createWriterFactory(config).createWriter(out);
+            writer.writeObject(toJson());
+            writer.close();
+        } finally
+        {
+            out.close();
+        }
+    }
+
+    JsonObject toJson()
+    {
+        JsonArrayBuilder phaseArray = Json.createArrayBuilder();
+        for (Phase phase : phases)
+        {
+            phaseArray.add(Json.createObjectBuilder()
+                    .add("name", phase.name)
+                    .add("durationMillis", phase.durationMillis)
+                    .add("bytesSent", phase.bytesSent)
+                    .add("requests", phase.requests)
+                    .add("retries", phase.retries));
+        }
+
+        JsonObjectBuilder report = Json.createObjectBuilder();
+        report.add("server", server);
+        report.add("plugin", getPluginNames());
+        report.add("pluginSize", getPluginSize());
+        report.add("startTime", formatTimestamp(startMillis));
+        report.add("durationMillis", durationMillis);
+        report.add("result", String.valueOf(result));
+        report.add("phases", phaseArray);
+        if (client.getStartupMillis() >= 0)
+        {
+            report.add("transport", Json.createObjectBuilder()
+                    .add("type", String.valueOf(client.getTransportType()))
+                    .add("startupMillis", client.getStartupMillis())
+                    .add("startupClassCount", client.getStartupClassCount()));
+        }
+        List<Artifact> artifacts = getArtifacts();
+        if (!artifacts.isEmpty())
+        {
+            JsonArrayBuilder artifactArray = Json.createArrayBuilder();
+            for (Artifact artifact : artifacts)
+            {
+                JsonObjectBuilder entry = Json.createObjectBuilder()
+                        .add("name", artifact.name)
+                        .add("result", String.valueOf(artifact.result))
+                        .add("durationMillis", artifact.durationMillis);
+                if (artifact.message != null)
+                {
+                    entry.add("message", artifact.message);
+                }
+                artifactArray.add(entry);
+            }
+            report.add("artifacts", artifactArray);
+        }
+        return report.build();
+    }
+
+    // Returns the comma separated file names of the deployed plug-ins
+    String getPluginNames()
+    {
+        StringBuilder names = new StringBuilder();
+        for (File plugin : plugins)
+        {
+            if (names.length() > 0)
+            {
+                names.append(", ");
+            }
+            names.append(plugin.getName());
+        }
+        return names.toString();
+    }
+
+    // Returns the given timestamp in ISO 8601 format, e.g. 2017-01-31T12:00:00.000Z
+    static String formatTimestamp(long millis)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+}
@@ -0,0 +1,229 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Local record of the plug-in bundles deployed to each Orchestrator server.
+ * For every server and plug-in the SHA-256 fingerprint of the last successfully deployed bundle is stored together with
+ * a fingerprint of the server's installed plug-in list at that time. The state is kept in a simple properties file
+ * which may be shared by several builds, concurrent updates are serialized through a lock file.
+ *
+ * @author Robert Ruf
+ */
+final class DeployState
+{
+    private static final String ARTIFACT_SUFFIX = ".artifact";
+    private static final String SERVER_SUFFIX = ".server";
+    private static final String CONTENT_SUFFIX = ".content";
+    private static final String PACKAGE_INFIX = ".package.";
+
+    // A change applied to the freshly loaded state while holding the lock of the state file
+    private interface Change
+    {
+        void apply(DeployState state);
+    }
+
+    private final File stateFile;
+    private final Properties properties;
+
+    private DeployState(File stateFile, Properties properties)
+    {
+        this.stateFile = stateFile;
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the key used to store the state of the given plug-in on the given server.
+     */
+    static String key(String server, int servicePort, String pluginName)
+    {
+        return server + ":" + servicePort + "/" + pluginName;
+    }
+
+    /**
+     * Loads the deploy state from the given file. A missing file results in an empty state.
+     */
+    static DeployState load(File stateFile) throws IOException
+    {
+        Properties properties = new Properties();
+        if (stateFile.isFile())
+        {
+            InputStream in = new FileInputStream(stateFile);
+            try
+            {
+                properties.load(in);
+            } finally
+            {
+                in.close();
+            }
+        }
+        return new DeployState(stateFile, properties);
+    }
+
+    /**
+     * Returns the fingerprint of the bundle last deployed under the given key or <code>null</code> if unknown.
+     */
+    String getArtifactFingerprint(String key)
+    {
+        return properties.getProperty(key + ARTIFACT_SUFFIX);
+    }
+
+    /**
+     * Returns the fingerprint of the server's plug-in list recorded after the last deployment under the given key or <code>null</code> if unknown.
+     */
+    String getServerFingerprint(String key)
+    {
+        return properties.getProperty(key + SERVER_SUFFIX);
+    }
+
+    /**
+     * Returns the fingerprint of the plug-in code, i.e. everything but the packages, of the bundle last deployed under the given key
+     * or <code>null</code> if unknown.
+     */
+    String getContentFingerprint(String key)
+    {
+        return properties.getProperty(key + CONTENT_SUFFIX);
+    }
+
+    /**
+     * Returns the fingerprint of the given package of the bundle last deployed under the given key or <code>null</code> if unknown.
+     */
+    String getPackageFingerprint(String key, String packageName)
+    {
+        return properties.getProperty(key + PACKAGE_INFIX + packageName);
+    }
+
+    /**
+     * Records the given fingerprints for the given key and writes them to the state file.
+     */
+    void update(final String key, final String artifactFingerprint, final String serverFingerprint) throws IOException
+    {
+        modify(new Change()
+        {
+            @Override
+            public void apply(DeployState state)
+            {
+                state.put(key, artifactFingerprint, serverFingerprint);
+            }
+        });
+    }
+
+    /**
+     * Records the plug-in code and package fingerprints of the bundle deployed under the given key and writes them to the state file.
+     * Packages recorded before but no longer part of the bundle are removed.
+     */
+    void updatePackages(final String key, final String contentFingerprint, final Map<String, String> packageFingerprints) throws IOException
+    {
+        modify(new Change()
+        {
+            @Override
+            public void apply(DeployState state)
+            {
+                for (String name : state.properties.stringPropertyNames())
+                {
+                    if (name.startsWith(key + PACKAGE_INFIX))
+                    {
+                        state.properties.remove(name);
+                    }
+                }
+                state.properties.setProperty(key + CONTENT_SUFFIX, contentFingerprint);
+                for (Map.Entry<String, String> entry : packageFingerprints.entrySet())
+                {
+                    state.properties.setProperty(key + PACKAGE_INFIX + entry.getKey(), entry.getValue());
+                }
+            }
+        });
+    }
+
+    // Applies the given change and writes the state file.
+    // The file is re-read while holding the lock so entries written by other builds in the meantime are kept.
+    private void modify(Change change) throws IOException
+    {
+        File directory = stateFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create directory '" + directory + "'.");
+        }
+
+        synchronized (DeployState.class)
+        {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(stateFile.getPath() + ".lock"), "rw");
+            try
+            {
+                FileLock lock = lockFile.getChannel().lock();
+                try
+                {
+                    DeployState current = load(stateFile);
+                    change.apply(current);
+                    current.store();
+                    properties.clear();
+                    properties.putAll(current.properties);
+                } finally
+                {
+                    lock.release();
+                }
+            } finally
+            {
+                lockFile.close();
+            }
+        }
+    }
+
+    private void put(String key, String artifactFingerprint, String serverFingerprint)
+    {
+        properties.setProperty(key + ARTIFACT_SUFFIX, artifactFingerprint);
+        if (serverFingerprint != null)
+        {
+            properties.setProperty(key + SERVER_SUFFIX, serverFingerprint);
+        }
+        else
+        {
+            properties.remove(key + SERVER_SUFFIX);
+        }
+    }
+
+    // Writes to a temporary file first so readers never see a partially written state
+    private void store() throws IOException
+    {
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            properties.store(out, "o11n-deploy-maven-plugin deploy state");
+        } finally
+        {
+            out.close();
+        }
+        Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
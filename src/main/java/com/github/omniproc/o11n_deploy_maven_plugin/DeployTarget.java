@@ -0,0 +1,148 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The Orchestrator server a single deployment goes to: its address, credentials and report file as well as the log of the
+ * deployment. Immutable, so the deployments of a <code>deployplugin</code> execution to the servers of <code>o11nServers</code>
+ * run in parallel without sharing any per-server state.
+ *
+ * @author Robert Ruf
+ */
+final class DeployTarget
+{
+    private final String host;
+    private final int servicePort;
+    private final int configPort;
+    private final String pluginServiceUser;
+    private final String pluginServicePassword;
+    private final String configServiceUser;
+    private final String configServicePassword;
+    private final String certFingerprint;
+    private final File reportFile;
+    private final Log log;
+
+    DeployTarget(String host, int servicePort, int configPort, String pluginServiceUser, String pluginServicePassword, String configServiceUser,
+        String configServicePassword, String certFingerprint, File reportFile, Log log)
+    {
+        this.host = host;
+        this.servicePort = servicePort;
+        this.configPort = configPort;
+        this.pluginServiceUser = pluginServiceUser;
+        this.pluginServicePassword = pluginServicePassword;
+        this.configServiceUser = configServiceUser;
+        this.configServicePassword = configServicePassword;
+        this.certFingerprint = certFingerprint;
+        this.reportFile = reportFile;
+        this.log = log;
+    }
+
+    /**
+     * Returns the target of the given server of a fan-out deployment. Settings not provided by the entry are the ones of this
+     * target, the report file is a per-server one next to the one of this target and all messages are prefixed with the server.
+     *
+     * @param server the server entry, with a host.
+     */
+    DeployTarget forServer(OrchestratorServer server)
+    {
+        // e.g. o11n-deploy-report-vro1.example.com.json
+        String reportName = reportFile.getName();
+        int extension = reportName.lastIndexOf('.') < 0 ? reportName.length() : reportName.lastIndexOf('.');
+        File serverReportFile = new File(reportFile.getParentFile(), reportName.substring(0, extension) + "-" + server.toString().replaceAll("[^A-Za-z0-9._-]", "_") + reportName.substring(extension));
+        return new DeployTarget(server.getHost(),
+            server.getServicePort() != null ? server.getServicePort() : servicePort,
+            server.getConfigPort() != null ? server.getConfigPort() : configPort,
+            server.getPluginServiceUser() != null ? server.getPluginServiceUser() : pluginServiceUser,
+            server.getPluginServicePassword() != null ? server.getPluginServicePassword() : pluginServicePassword,
+            server.getConfigServiceUser() != null ? server.getConfigServiceUser() : configServiceUser,
+            server.getConfigServicePassword() != null ? server.getConfigServicePassword() : configServicePassword,
+            server.getCertFingerprint() != null ? server.getCertFingerprint() : certFingerprint,
+            serverReportFile, new PrefixedLog(log, "[" + server + "] "));
+    }
+
+    String getHost()
+    {
+        return host;
+    }
+
+    int getServicePort()
+    {
+        return servicePort;
+    }
+
+    int getConfigPort()
+    {
+        return configPort;
+    }
+
+    String getPluginServiceUser()
+    {
+        return pluginServiceUser;
+    }
+
+    String getPluginServicePassword()
+    {
+        return pluginServicePassword;
+    }
+
+    String getConfigServiceUser()
+    {
+        return configServiceUser;
+    }
+
+    String getConfigServicePassword()
+    {
+        return configServicePassword;
+    }
+
+    String getCertFingerprint()
+    {
+        return certFingerprint;
+    }
+
+    File getReportFile()
+    {
+        return reportFile;
+    }
+
+    Log getLog()
+    {
+        return log;
+    }
+
+    /**
+     * Returns the key of the Orchestrator service restarted for this target, the one its {@link ServerLock} and deferred
+     * restarts are kept under.
+     */
+    String getRestartKey()
+    {
+        return host + ":" + configPort;
+    }
+
+    @Override
+    public String toString()
+    {
+        return host + ":" + servicePort;
+    }
+}
@@ -0,0 +1,97 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers used to fingerprint plug-in bundles and server certificates.
+ *
+ * @author Robert Ruf
+ */
+final class Digests
+{
+    // Files are mapped in windows of this size so huge bundles don't exhaust the virtual address space on 32 bit JVMs
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private Digests()
+    {
+    }
+
+    /**
+     * Returns the SHA-256 digest of the given file in lower case hex format.
+     * The file is read through memory mapped windows, so no copy of its content is made on the Java heap.
+     */
+    static String sha256(File file) throws IOException
+    {
+        MessageDigest digest = newSha256();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW_SIZE)
+            {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, size - position));
+                digest.update(window);
+            }
+        } finally
+        {
+            raf.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the SHA-256 digest of the given data in lower case hex format.
+     */
+    static String sha256(byte[] data)
+    {
+        return toHex(newSha256().digest(data));
+    }
+
+    static String toHex(byte[] data)
+    {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    static MessageDigest newSha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform implementation is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
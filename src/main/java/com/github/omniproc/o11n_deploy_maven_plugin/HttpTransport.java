@@ -0,0 +1,194 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Sends the HTTP requests of an {@link OrchestratorClient} to a single Orchestrator server.
+ * An implementation keeps its connections open across requests until it is closed and has to be safe for use by
+ * concurrent threads. The status codes are interpreted by the client, a transport only fails on I/O errors.
+ *
+ * @author Robert Ruf
+ */
+interface HttpTransport
+{
+    /**
+     * Sends the given request and reads the response entity completely.
+     *
+     * @throws IOException if the request could not be sent or the response could not be read.
+     */
+    Response send(Request request) throws IOException;
+
+    /**
+     * Returns connection statistics for debug logging, e.g. how many connections were opened.
+     */
+    String getStatistics();
+
+    /**
+     * Releases all connections.
+     */
+    void close();
+
+    /**
+     * A HTTP request. Its body is either a byte array or a streamed multipart entity.
+     */
+    final class Request
+    {
+        private final String method;
+        private final URI uri;
+        private final String accept;
+        private final String authorization;
+        private final String contentType;
+        private final byte[] content;
+        private final MultipartFileEntity multipart;
+        private final int timeoutMillis;
+
+        private Request(String method, URI uri, String accept, String authorization, String contentType, byte[] content, MultipartFileEntity multipart, int timeoutMillis)
+        {
+            this.method = method;
+            this.uri = uri;
+            this.accept = accept;
+            this.authorization = authorization;
+            this.contentType = contentType;
+            this.content = content;
+            this.multipart = multipart;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * Returns a request without a body.
+         *
+         * @param timeoutMillis the connect and read timeout, <code>0</code> means no timeout.
+         */
+        static Request of(String method, URI uri, String accept, String authorization, int timeoutMillis)
+        {
+            return new Request(method, uri, accept, authorization, null, null, null, timeoutMillis);
+        }
+
+        /**
+         * Returns a request sending the given content.
+         */
+        static Request of(String method, URI uri, String accept, String authorization, String contentType, byte[] content, int timeoutMillis)
+        {
+            return new Request(method, uri, accept, authorization, contentType, content, null, timeoutMillis);
+        }
+
+        /**
+         * Returns a request streaming the given multipart entity.
+         */
+        static Request of(String method, URI uri, String accept, String authorization, MultipartFileEntity multipart, int timeoutMillis)
+        {
+            return new Request(method, uri, accept, authorization, multipart.getContentType(), null, multipart, timeoutMillis);
+        }
+
+        String getMethod()
+        {
+            return method;
+        }
+
+        URI getUri()
+        {
+            return uri;
+        }
+
+        String getAccept()
+        {
+            return accept;
+        }
+
+        String getAuthorization()
+        {
+            return authorization;
+        }
+
+        /**
+         * Returns the content type of the body, <code>null</code> if the request has no body.
+         */
+        String getContentType()
+        {
+            return contentType;
+        }
+
+        /**
+         * Returns the body if it is no multipart entity, <code>null</code> otherwise.
+         */
+        byte[] getContent()
+        {
+            return content;
+        }
+
+        /**
+         * Returns the streamed body, <code>null</code> if the body is no multipart entity.
+         */
+        MultipartFileEntity getMultipart()
+        {
+            return multipart;
+        }
+
+        /**
+         * Returns the number of bytes of the body.
+         */
+        long getContentLength()
+        {
+            return multipart != null ? multipart.getContentLength() : content != null ? content.length : 0;
+        }
+
+        int getTimeoutMillis()
+        {
+            return timeoutMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            return method + " " + uri;
+        }
+    }
+
+    /**
+     * A HTTP response with its entity read completely.
+     */
+    final class Response
+    {
+        private final int status;
+        private final byte[] entity;
+
+        Response(int status, byte[] entity)
+        {
+            this.status = status;
+            this.entity = entity == null ? new byte[0] : entity;
+        }
+
+        int getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Returns the response entity, empty if there is none.
+         */
+        byte[] getEntity()
+        {
+            return entity;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.maven.plugin.logging.Log;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
+/**
+ * {@link HttpTransport} on the Jersey client with the Apache HttpClient connector, which pools keep-alive connections.
+ *
+ * @author Robert Ruf
+ */
+final class JerseyTransport implements HttpTransport
+{
+    private final Client client;
+    private final TlsSockets tls;
+
+    /**
+     * @param sslContext the SSL context to connect with, shared JVM-wide per server so TLS sessions can be resumed.
+     * @param poolSize the maximum number of pooled connections.
+     */
+    JerseyTransport(Log log, SSLContext sslContext, int poolSize) throws GeneralSecurityException
+    {
+        this.tls = new TlsSockets(log);
+        this.client = createClient(sslContext, poolSize);
+    }
+
+    @Override
+    public Response send(Request request) throws IOException
+    {
+        Invocation.Builder builder = client.target(request.getUri()).request(request.getAccept()).header(HttpHeaders.AUTHORIZATION, request.getAuthorization())
+                .property(ClientProperties.CONNECT_TIMEOUT, request.getTimeoutMillis()).property(ClientProperties.READ_TIMEOUT, request.getTimeoutMillis());
+        Entity<?> entity = null;
+        if (request.getMultipart() != null)
+        {
+            final MultipartFileEntity multipart = request.getMultipart();
+            // The plug-in file is streamed from disk using chunked transfer encoding while the request is sent,
+            // so the heap usage does not depend on the bundle size.
+            builder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+            entity = Entity.entity(new StreamingOutput()
+            {
+                @Override
+                public void write(OutputStream out) throws IOException, WebApplicationException
+                {
+                    multipart.write(out);
+                }
+            }, request.getContentType());
+        }
+        else if (request.getContentType() != null)
+        {
+            entity = Entity.entity(request.getContent(), request.getContentType());
+        }
+
+        javax.ws.rs.core.Response response = null;
+        try
+        {
+            response = builder.method(request.getMethod(), entity);
+            // Read the entity to its end so the connection can go back to the pool
+            byte[] content = response.hasEntity() ? response.readEntity(byte[].class) : null;
+            return new Response(response.getStatus(), content);
+        } catch (ProcessingException ex)
+        {
+            // Thrown in case the request processing or subsequent I/O operation fail, e.g. because the service is restarting
+            throw new IOException(ex.getCause() != null ? ex.getCause().toString() : ex.getMessage(), ex);
+        } finally
+        {
+            // release resources
+            if (response != null)
+            {
+                response.close();
+            }
+        }
+    }
+
+    @Override
+    public String getStatistics()
+    {
+        return tls.toString();
+    }
+
+    @Override
+    public void close()
+    {
+        client.close();
+    }
+
+    // Returns a Jersey HTTP client properly configured to be used with this Mojo
+    private Client createClient(SSLContext sslContext, int poolSize) throws GeneralSecurityException
+    {
+        // Fiddler Debugging Proxy Option
+        /**
+         * System.setProperty ("http.proxyHost", "127.0.0.1");
+         * System.setProperty ("http.proxyPort", "8888");
+         * System.setProperty ("https.proxyHost", "127.0.0.1");
+         * System.setProperty ("https.proxyPort", "8888");
+         **/
+
+        // BEGIN -- Pooled keep-alive connections
+        // Every socket opened by the pool is counted so the debug output can tell opened from reused connections
+        SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext, TlsSockets.DISABLED_HOSTNAME_VERIFICATION)
+        {
+            @Override
+            public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException
+            {
+                tls.connected();
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            }
+
+            @Override
+            protected void prepareSocket(SSLSocket socket) throws IOException
+            {
+                tls.watchHandshake(socket);
+            }
+        };
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create().register("http", PlainConnectionSocketFactory.getSocketFactory()).register("https", sslSocketFactory).build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(poolSize);
+        // END -- Pooled keep-alive connections
+
+        ClientConfig config = new ClientConfig();
+        config.connectorProvider(new ApacheConnectorProvider()); // Use Apache HttpClient for connection pooling
+        config.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        // config.property(LoggingFeature.LOGGING_FEATURE_VERBOSITY_CLIENT, LoggingFeature.Verbosity.PAYLOAD_ANY);  // Optional enable client logging for Debugging
+        // config.property(LoggingFeature.LOGGING_FEATURE_LOGGER_LEVEL_CLIENT, "INFO");                             // Optional enable client logging for Debugging
+
+        return ClientBuilder.newBuilder().withConfig(config).build();
+    }
+}
@@ -0,0 +1,196 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A <tt>multipart/form-data</tt> request body consisting of a single file part followed by simple text fields.
+ * The multipart envelope is built up front so the exact content length is known, the file itself is never loaded
+ * into memory but transferred from its {@link FileChannel} straight to the request stream while it is written.
+ *
+ * @author Robert Ruf
+ */
+final class MultipartFileEntity
+{
+    private static final String CRLF = "\r\n";
+
+    private final File file;
+    private final Map<String, String> fields;
+    private final String boundary;
+    private final byte[] preamble;
+    private final byte[] epilogue;
+    private final UploadMeter meter;
+
+    /**
+     * @param name the form field name of the file part.
+     * @param file the file to send.
+     * @param fields the text fields to send after the file part, in iteration order.
+     */
+    MultipartFileEntity(String name, File file, Map<String, String> fields)
+    {
+        this.file = file;
+        this.fields = fields;
+        this.boundary = "Boundary_" + UUID.randomUUID().toString().replace("-", "");
+
+        StringBuilder head = new StringBuilder();
+        head.append("--").append(boundary).append(CRLF);
+        head.append("Content-Type: ").append("application/octet-stream").append(CRLF);
+        head.append("Content-Disposition: form-data; name=\"").append(quote(name)).append("\"; filename=\"").append(quote(file.getName())).append("\"").append(CRLF);
+        head.append(CRLF);
+        this.preamble = head.toString().getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder tail = new StringBuilder();
+        tail.append(CRLF);
+        for (Map.Entry<String, String> field : fields.entrySet())
+        {
+            tail.append("--").append(boundary).append(CRLF);
+            tail.append("Content-Type: ").append("text/plain").append(CRLF);
+            tail.append("Content-Disposition: form-data; name=\"").append(quote(field.getKey())).append("\"").append(CRLF);
+            tail.append(CRLF);
+            tail.append(field.getValue()).append(CRLF);
+        }
+        tail.append("--").append(boundary).append("--").append(CRLF);
+        this.epilogue = tail.toString().getBytes(StandardCharsets.UTF_8);
+        this.meter = null;
+    }
+
+    private MultipartFileEntity(MultipartFileEntity entity, UploadMeter meter)
+    {
+        this.file = entity.file;
+        this.fields = entity.fields;
+        this.boundary = entity.boundary;
+        this.preamble = entity.preamble;
+        this.epilogue = entity.epilogue;
+        this.meter = meter;
+    }
+
+    /**
+     * Returns the same request body metered, and possibly throttled, by the given meter each time it is written or streamed.
+     */
+    MultipartFileEntity withMeter(UploadMeter meter)
+    {
+        return new MultipartFileEntity(this, meter);
+    }
+
+    /**
+     * Returns an ordered map of text fields built from the given name and value pairs.
+     */
+    static Map<String, String> fields(String... namesAndValues)
+    {
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2)
+        {
+            fields.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the file sent as the file part.
+     */
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the value of the given text field or <code>null</code> if it is not sent.
+     */
+    String getField(String name)
+    {
+        return fields.get(name);
+    }
+
+    /**
+     * Returns the media type including the boundary parameter to be used as the request <tt>Content-Type</tt>.
+     */
+    String getContentType()
+    {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * Returns the exact number of bytes {@link #write(OutputStream)} will produce.
+     */
+    long getContentLength()
+    {
+        return preamble.length + file.length() + epilogue.length;
+    }
+
+    /**
+     * Writes the complete request body to the given stream.
+     */
+    void write(OutputStream out) throws IOException
+    {
+        if (meter != null)
+        {
+            out = meter.wrap(out, file.getName(), getContentLength());
+        }
+        out.write(preamble);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            long position = 0;
+            while (position < size)
+            {
+                position += channel.transferTo(position, size - position, target);
+            }
+        } finally
+        {
+            raf.close();
+        }
+        out.write(epilogue);
+        out.flush();
+    }
+
+    /**
+     * Returns a new stream of the complete request body, for consumers which pull the body instead of having it written.
+     */
+    InputStream openStream() throws IOException
+    {
+        InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.<InputStream> asList(new ByteArrayInputStream(preamble), new FileInputStream(file), new ByteArrayInputStream(epilogue))));
+        return meter != null ? meter.wrap(in, file.getName(), getContentLength()) : in;
+    }
+
+    private static String quote(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,73 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Mojo which repacks the configured VMware Orchestrator plug-in bundle(s) in place to reduce the number of bytes uploaded by
+ * the <code>deployplugin</code> goal. The entries are deflated in parallel and stored if that is smaller, nested code archives
+ * are repacked as well and the entries matching <code>o11nOptimizeExcludes</code> are dropped. The output is deterministic,
+ * so an unchanged bundle stays unchanged. Bind it to the <code>package</code> phase after the bundle was built.
+ * The plug-in file parameters of the <code>deployplugin</code> goal apply.
+ *
+ * @author Robert Ruf
+ */
+@Mojo(name = "optimize", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
+public class OptimizePlugin extends DeployPlugin
+{
+    // Files left by the tools of the developer machines, never read by Orchestrator
+    static final List<String> DEFAULT_EXCLUDES = Collections.unmodifiableList(Arrays.asList("**/.DS_Store", "**/Thumbs.db", "__MACOSX/"));
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        configure();
+        BundleOptimizer optimizer = newOptimizer();
+        for (File file : getPluginFiles())
+        {
+            if (file == null || !file.isFile())
+            {
+                throw new MojoFailureException("Plug-in file '" + file + "' not found.");
+            }
+            try
+            {
+                optimizer.optimize(file, file).log(getLog(), file.getName());
+            } catch (IOException e)
+            {
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw, true);
+                e.printStackTrace(pw);
+                throw new MojoExecutionException("Unable to repack plug-in file '" + file.getAbsolutePath() + "'. Exception:\n" + sw.getBuffer().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,1029 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.net.ssl.SSLContext;
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.PluginType;
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.Transport;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * REST client for a single VMware Orchestrator server.
+ * All calls made through one instance share a single {@link HttpTransport} keeping its connections alive, which is
+ * created on first use and released by {@link #close()}. Create one instance per server and Mojo execution.
+ *
+ * @author Robert Ruf
+ */
+class OrchestratorClient
+{
+    enum ServiceStatus
+    {
+        RUNNING, STOPPED, RESTARTING, UNDEFINED;
+    }
+    enum ConfigSlot
+    {
+        ACTIVE, PENDING;
+    }
+
+    private static final String JSON = "application/json";
+    private static final String ANY = "*/*";
+    // Only compiled to the Java 11 part of the multi-release JAR, so it is loaded reflectively
+    private static final String HTTP_CLIENT_TRANSPORT = OrchestratorClient.class.getPackage().getName() + ".HttpClientTransport";
+    // Timeout of the connection warm-up and readiness probes which are not sent through the retry policy
+    private static final int WARM_UP_TIMEOUT = 30000;
+
+    // Requests which must not be sent twice, e.g. a service restart, still pass the circuit breaker but are never retried
+    private static final RetryPolicy.Guard NEVER = new RetryPolicy.Guard()
+    {
+        @Override
+        public boolean isSafeToRetry()
+        {
+            return false;
+        }
+    };
+
+    private final Log log;
+    private final String server;
+    private final int poolSize;
+    private final File trustStore;
+    private final String trustStorePassword;
+    private final String certFingerprint;
+    private final Transport transportType;
+    private final RetryPolicy retryPolicy;
+    private final UploadMeter uploadMeter;
+
+    // Example: https://localhost:8281
+    private final URI pluginServiceBaseUri;
+    private final String pluginServiceAuth;
+    // Example: https://localhost:8283
+    private final URI configServiceBaseUri;
+    private final String configServiceAuth;
+
+    private HttpTransport transport = null;
+    private Transport activeTransportType = null;
+    // Startup cost of the transport: wall time and classes loaded from its creation until the first response was read
+    private long transportCreatedNanos;
+    private long classCountBeforeTransport;
+    private volatile long startupMillis = -1;
+    private volatile long startupClassCount = -1;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    // The plug-in list fingerprint read last, e.g. while checking for an unchanged deployment, so the next upload can reuse it
+    private final AtomicReference<String> lastPluginList = new AtomicReference<String>();
+
+    OrchestratorClient(Log log, String server, int servicePort, int configPort, String pluginServiceUser, String pluginServicePassword, String configServiceUser, String configServicePassword, int poolSize, File trustStore, String trustStorePassword, String certFingerprint, Transport transportType, RetryPolicy retryPolicy, UploadMeter uploadMeter)
+    {
+        this.log = log;
+        this.server = server;
+        this.poolSize = poolSize;
+        this.trustStore = trustStore;
+        this.trustStorePassword = trustStorePassword;
+        this.certFingerprint = certFingerprint;
+        this.transportType = transportType;
+        this.retryPolicy = retryPolicy;
+        this.uploadMeter = uploadMeter;
+
+        this.pluginServiceBaseUri = URI.create("https://" + server + ":" + servicePort);
+        this.pluginServiceAuth = basicAuth(pluginServiceUser, pluginServicePassword);
+        this.configServiceBaseUri = URI.create("https://" + server + ":" + configPort);
+        this.configServiceAuth = basicAuth(configServiceUser, configServicePassword);
+    }
+
+    // Deletes the plug-in packages / elements.
+    boolean deletePackage(String packageName) throws MojoFailureException, MojoExecutionException
+    {
+        return deletePackage(pluginServiceBaseUri, pluginServiceAuth, packageName);
+    }
+
+    private boolean deletePackage(final URI apiEndpoint, final String auth, final String packageName) throws MojoFailureException, MojoExecutionException
+    {
+        log.info("Deleting plug-in package '" + packageName + "'...");
+        log.debug("Configured package service URL: '" + apiEndpoint.toString() + "'.");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            // Possible delete options:
+            // deletePackage - deletes the package without the content.
+            // deletePackageWithContent - deletes the package along with the content. If other packages share elements with this package, they will be deleted.
+            // deletePackageKeepingShared - deletes the package along with the content. If other packages share elements with this package, the elements will not be removed.
+            // If no option parameter is provided, the default one is used: deletePackage
+            response = retryPolicy.send(apiEndpoint.toString(), "delete plug-in package", new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("DELETE", uri(apiEndpoint, "/vco/api/packages/" + packageName, "option=deletePackageKeepingShared"), JSON, auth, timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            switch (statusCode)
+            {
+            case 200:
+                log.debug("HTTP 200. Plug-in package deleted.");
+                return true;
+            case 204:
+                log.debug("HTTP 204. No plug-in package found for deletion.");
+                return true;
+            case 401:
+                log.warn("HTTP 401. Authentication is required to delete a plug-in package.");
+                return false;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to delete a plug-in package.");
+                return false;
+            case 404:
+                log.warn("HTTP 404. The plug-in package was not found on the server. Skipping plug-in package deletion.");
+                return true;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the plug-in package has been deleted. I really got no clue.");
+                return false;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while requesting plug-in package deletion:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while requesting plug-in package deletion:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Imports the given package file, replacing an existing package of the same name. Returns true if the import was successfull and false otherwise.
+    boolean importPackage(File packageFile) throws MojoFailureException, MojoExecutionException
+    {
+        return importPackage(pluginServiceBaseUri, pluginServiceAuth, packageFile);
+    }
+
+    private boolean importPackage(final URI apiEndpoint, final String auth, final File packageFile) throws MojoFailureException, MojoExecutionException
+    {
+        log.info("Importing package '" + packageFile.getName() + "'...");
+        log.debug("Configured package service URL: '" + apiEndpoint.toString() + "'.");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            final MultipartFileEntity multipart = new MultipartFileEntity("file", packageFile, MultipartFileEntity.fields());
+            response = retryPolicy.send(apiEndpoint.toString(), "import package", new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("POST", uri(apiEndpoint, "/vco/api/packages", "overwrite=true"), ANY, auth, multipart, timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            switch (statusCode)
+            {
+            case 200:
+            case 201:
+            case 202:
+            case 204:
+                log.debug("HTTP " + statusCode + ". Package imported.");
+                return true;
+            case 401:
+                log.warn("HTTP 401. Authentication is required to import a package.");
+                return false;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to import a package.");
+                return false;
+            case 404:
+                log.warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
+                return false;
+            case 409:
+                log.warn("HTTP 409. The package already exists and could not be overwritten.");
+                return false;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the package has been imported. I really got no clue.");
+                return false;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while importing a package:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while importing a package:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Returns true if a package of the given name exists on the server, false if not and null if that could not be determined.
+    Boolean packageExists(String packageName) throws MojoFailureException, MojoExecutionException
+    {
+        return packageExists(pluginServiceBaseUri, pluginServiceAuth, packageName);
+    }
+
+    private Boolean packageExists(final URI apiEndpoint, final String auth, final String packageName) throws MojoFailureException, MojoExecutionException
+    {
+        log.debug("Looking up package '" + packageName + "'...");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            response = retryPolicy.send(apiEndpoint.toString(), "look up package", new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("GET", uri(apiEndpoint, "/vco/api/packages/" + packageName + "/", null), JSON, auth, timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            switch (statusCode)
+            {
+            case 200:
+                return true;
+            case 404:
+                log.debug("HTTP 404. Package '" + packageName + "' not found on the server.");
+                return false;
+            case 401:
+                log.warn("HTTP 401. Authentication is required to look up a package.");
+                return null;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to look up a package.");
+                return null;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator while looking up a package. I really got no clue.");
+                return null;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while looking up a package:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while looking up a package:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Uploads the given plug-in file. Returns true if the upload was successfull and false otherwise.
+    boolean uploadPlugin(PluginType type, boolean overwrite, File file) throws MojoFailureException, MojoExecutionException
+    {
+        return uploadPlugin(newUploadEntity(type, overwrite, file));
+    }
+
+    // Uploads a plug-in request body prepared by newUploadEntity. Returns true if the upload was successfull and false otherwise.
+    boolean uploadPlugin(MultipartFileEntity multipart) throws MojoFailureException, MojoExecutionException
+    {
+        return uploadPlugin(pluginServiceBaseUri, pluginServiceAuth, multipart);
+    }
+
+    // Returns the request body of a plug-in upload. Building it requires no network I/O so it can be prepared up front.
+    static MultipartFileEntity newUploadEntity(PluginType type, boolean overwrite, File file)
+    {
+        return new MultipartFileEntity("file", file, MultipartFileEntity.fields("format", type.toString().toLowerCase(), "overwrite", String.valueOf(overwrite)));
+    }
+
+    private boolean uploadPlugin(final URI apiEndpoint, final String auth, MultipartFileEntity entity) throws MojoFailureException, MojoExecutionException
+    {
+        // Each attempt logs its progress and is throttled to the configured rate
+        final MultipartFileEntity multipart = entity.withMeter(uploadMeter);
+        log.info("Starting Plug-in '" + multipart.getFile().getAbsolutePath() + "' upload...");
+        log.debug("Configured plug-in service URL: '" + apiEndpoint.toString() + "'.");
+
+        // An upload is only retried if the installed plug-ins did not change, i.e. the failed attempt did not land. The plug-in list
+        // read last is compared with, it is only read after the first failed attempt if unknown. An overwriting upload replaces
+        // the plug-in with the same file, so retrying it once then is safe even if the failed attempt landed.
+        final AtomicReference<String> pluginList = new AtomicReference<String>(lastPluginList.getAndSet(null));
+        final boolean overwrite = Boolean.parseBoolean(multipart.getField("overwrite"));
+        RetryPolicy.Guard uploadGuard = new RetryPolicy.Guard()
+        {
+            @Override
+            public boolean isSafeToRetry()
+            {
+                try
+                {
+                    String current = getPluginListFingerprint();
+                    if (pluginList.compareAndSet(null, current))
+                    {
+                        return current != null && overwrite;
+                    }
+                    return current != null && current.equals(pluginList.get());
+                } catch (MojoFailureException e)
+                {
+                    return false;
+                } catch (MojoExecutionException e)
+                {
+                    return false;
+                }
+            }
+        };
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            // The plug-in file is streamed from disk using chunked transfer encoding while the request is sent,
+            // so the heap usage does not depend on the bundle size.
+            log.debug("Uploading " + multipart.getContentLength() + " bytes.");
+
+            response = retryPolicy.send(apiEndpoint.toString(), "upload plug-in", uploadGuard, new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("POST", uri(apiEndpoint, "/vco/api/plugins", null), ANY, auth, multipart, timeoutMillis));
+                }
+            });
+
+            log.debug("Returned Response code: '" + response.getStatus() + "'.");
+            log.debug("Returned Response: '" + response.toString() + "'.");
+
+            int statusCode = response.getStatus();
+            switch (statusCode)
+            {
+            case 201:
+                log.debug("HTTP 201. Successfully updated plug-in in VMware Orchestrator.");
+                return true;
+            case 204:
+                log.debug("HTTP 204. Successfully updated plug-in in VMware Orchestrator.");
+                return true;
+            case 401:
+                log.warn("HTTP 401. Authentication is required to upload a plug-in.");
+                return false;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to upload a plug-in.");
+                return false;
+            case 404:
+                log.warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
+                return false;
+            case 409:
+                log.warn("HTTP 409. The provided plug-in already exists and the overwrite flag was not set. The plug-in will not be changed in VMware Orchestrator.");
+                return false;
+            default:
+                log.warn("Unknown status code HTTP '" + statusCode + "' returned from VMware Orchestrator. Please verify if the plug-in has been updated successfully. I really got no clue.");
+                return false;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while uploading plug-in data:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            // THIS IS THROWN in case the server is currently not available e.g. because the service is currently
+            // beeing restarted
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while uploading plug-in data:\n" + sw.getBuffer().toString());
+        } finally
+        {
+            // The upload may have changed the installed plug-ins
+            lastPluginList.set(null);
+        }
+    }
+
+    // Opens a pooled connection to the plug-in service ahead of its first use, e.g. while another request is in flight.
+    // The TLS handshake is done by then and the connection is kept alive for the next request. Failures are only logged.
+    void warmUp() throws MojoExecutionException
+    {
+        log.debug("Opening connection to the plug-in service '" + pluginServiceBaseUri.toString() + "'...");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            // Any response will do, HEAD keeps it free of an entity which would have to be consumed
+            response = execute(transport, HttpTransport.Request.of("HEAD", uri(pluginServiceBaseUri, "/vco/api/", null), ANY, pluginServiceAuth, WARM_UP_TIMEOUT));
+            log.debug("Plug-in service connection ready, HTTP " + response.getStatus() + ".");
+        } catch (IOException ex)
+        {
+            log.debug("Unable to open connection to the plug-in service: " + ex.getMessage());
+        }
+    }
+
+    // Returns true if the plug-in service answers an authenticated request to the given path, e.g. /vco/api/about, with a success
+    // or a redirect. The plug-in service is unreachable or answers HTTP 503 while it is starting and may briefly answer a client
+    // error such as HTTP 401 or 404 as well. A client error only fails the probe once the given deadline has been reached.
+    boolean isPluginServiceReady(String path, long deadline) throws MojoFailureException, MojoExecutionException
+    {
+        log.debug("Probing plug-in service readiness at '" + path + "'...");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            response = execute(transport, HttpTransport.Request.of("GET", uri(pluginServiceBaseUri, path, null), JSON, pluginServiceAuth, WARM_UP_TIMEOUT));
+            int statusCode = response.getStatus();
+            log.debug("Plug-in service readiness probe returned HTTP " + statusCode + ".");
+            if (statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429 && System.currentTimeMillis() >= deadline)
+            {
+                // The service still answers, but not to this request: a wrong path or credentials would never turn ready
+                throw new MojoFailureException("HTTP " + statusCode + " returned by the plug-in service readiness probe '" + path
+                        + "'. Please verify 'o11nReadinessPath' and the plug-in service credentials.");
+            }
+            return statusCode >= 200 && statusCode < 400;
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read, e.g. because the service is still starting.
+            log.debug("Plug-in service is not reachable: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    // Returns a fingerprint of the plug-ins currently installed on the server or null if the plug-in list could not be read.
+    String getPluginListFingerprint() throws MojoFailureException, MojoExecutionException
+    {
+        String fingerprint = getPluginListFingerprint(pluginServiceBaseUri, pluginServiceAuth);
+        lastPluginList.set(fingerprint);
+        return fingerprint;
+    }
+
+    private String getPluginListFingerprint(final URI apiEndpoint, final String auth) throws MojoFailureException, MojoExecutionException
+    {
+        log.debug("Getting installed Orchestrator plug-ins...");
+        log.debug("Configured plug-in service URL: '" + apiEndpoint.toString() + "'.");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            response = retryPolicy.send(apiEndpoint.toString(), "list installed plug-ins", new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("GET", uri(apiEndpoint, "/vco/api/plugins", null), JSON, auth, timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            switch (statusCode)
+            {
+            case 200:
+                String fingerprint = Digests.sha256(response.getEntity());
+                log.debug("Orchestrator plug-in list fingerprint: '" + fingerprint + "'.");
+                return fingerprint;
+            case 401:
+                log.warn("HTTP 401. Authentication is required to list the installed plug-ins.");
+                return null;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to list the installed plug-ins.");
+                return null;
+            case 404:
+                log.warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
+                return null;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator while listing the installed plug-ins. I really got no clue.");
+                return null;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while listing the installed plug-ins:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while listing the installed plug-ins:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Triggers a Orchestrator service restart. Returns true if execution was successfull and false otherwise.
+    boolean restartService() throws MojoFailureException, MojoExecutionException
+    {
+        return restartService(configServiceBaseUri, configServiceAuth);
+    }
+
+    private boolean restartService(final URI apiEndpoint, final String auth) throws MojoFailureException, MojoExecutionException
+    {
+        log.info("Restarting Orchestrator service...");
+        log.debug("Configured config service URL: '" + apiEndpoint.toString() + "'.");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            response = retryPolicy.send(apiEndpoint.toString(), "restart Orchestrator service", NEVER, new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("POST", uri(apiEndpoint, "/vco-controlcenter/api/server/status/restart", null), JSON, auth, JSON, new byte[0], timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            switch (statusCode)
+            {
+            case 200:
+            case 201:
+                JsonObject statusResponse = readJson(response);
+                // Don't use JsonObject.getString since the returned currentStatus might be null
+                // Rather use JsonObject.get which will return the value or JsonValue.NULL if it's null
+                // In addition JsonObject.isNull(String key) can be used for testing the retun value
+                log.debug("Orchestrator service status: '" + statusResponse.get("currentStatus") + "'.");
+                log.debug("Triggered Orchestrator service restart.");
+                return true;
+            case 401:
+                log.warn("HTTP 401. Authentication is required to restart the Orchestrator service.");
+                return false;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to restart the Orchestrator service.");
+                return false;
+            case 404:
+                log.warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
+                return false;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the Orchestrator service has been restarted. I really got no clue.");
+                return false;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while restarting Orchestrator service:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while restarting Orchestrator service:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Returns the current Orchestrator service status.
+    ServiceStatus getServiceStatus() throws MojoFailureException, MojoExecutionException
+    {
+        return getServiceStatus(configServiceBaseUri, configServiceAuth, false);
+    }
+
+    // Returns the current Orchestrator service status for a poll waiting on a restart. The request is sent once, without retries and
+    // circuit breaker, since the service is expected to be unreachable for a while. RESTARTING is returned if it could not be reached.
+    ServiceStatus pollServiceStatus() throws MojoFailureException, MojoExecutionException
+    {
+        return getServiceStatus(configServiceBaseUri, configServiceAuth, true);
+    }
+
+    private ServiceStatus getServiceStatus(final URI apiEndpoint, final String auth, boolean poll) throws MojoFailureException, MojoExecutionException
+    {
+        log.debug("Getting Orchestrator service status...");
+        log.debug("Configured config service URL: '" + apiEndpoint.toString() + "'.");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            response = send(apiEndpoint, "get Orchestrator service status", poll, new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("GET", uri(apiEndpoint, "/vco-controlcenter/api/server/status", null), JSON, auth, timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            if (poll && isUnavailable(statusCode))
+            {
+                log.debug("Orchestrator service status returned HTTP " + statusCode + ".");
+                return ServiceStatus.RESTARTING;
+            }
+            switch (statusCode)
+            {
+            case 200:
+                JsonObject statusResponse = readJson(response);
+                // Don't use JsonObject.getString since the returned currentStatus might be null
+                // Rather use JsonObject.get which will return the value or JsonValue.NULL if it's null
+                // In addition JsonObject.isNull(String key) can be used for testing the retun value
+                log.debug("Orchestrator service status: '" + statusResponse.get("currentStatus") + "'.");
+
+                // Status should be "RUNNING", "STOPPED", "UNDEFINED" or NULL
+                if (statusResponse.isNull("currentStatus"))
+                {
+                    return ServiceStatus.RESTARTING;
+                } else if (statusResponse.getString("currentStatus").equalsIgnoreCase("RUNNING"))
+                {
+                    return ServiceStatus.RUNNING;
+                } else if (statusResponse.getString("currentStatus").equalsIgnoreCase("STOPPED"))
+                {
+                    return ServiceStatus.STOPPED;
+                } else
+                {
+                    return ServiceStatus.UNDEFINED;
+                }
+            case 401:
+                log.warn("HTTP 401. Authentication is required to get service status.");
+                return ServiceStatus.UNDEFINED;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to get the service status.");
+                return ServiceStatus.UNDEFINED;
+            case 404:
+                log.warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
+                return ServiceStatus.UNDEFINED;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the service has been restarted. I really got no clue.");
+                return ServiceStatus.UNDEFINED;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while requesting Orchestrator service status:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            if (poll)
+            {
+                log.debug("Orchestrator service is not reachable: " + ex.getMessage());
+                return ServiceStatus.RESTARTING;
+            }
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while requesting Orchestrator service status:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Returns the current Orchestrator configuration fingerprint
+    Map<ConfigSlot, String> getConfigFingerprint() throws MojoFailureException, MojoExecutionException
+    {
+        return getConfigFingerprint(configServiceBaseUri, configServiceAuth, false);
+    }
+
+    // Returns the current Orchestrator configuration fingerprint for a poll waiting on a restart, sent once like pollServiceStatus.
+    // An empty map is returned if the service could not be reached.
+    Map<ConfigSlot, String> pollConfigFingerprint() throws MojoFailureException, MojoExecutionException
+    {
+        return getConfigFingerprint(configServiceBaseUri, configServiceAuth, true);
+    }
+
+    private Map<ConfigSlot, String> getConfigFingerprint(final URI apiEndpoint, final String auth, boolean poll) throws MojoFailureException, MojoExecutionException
+    {
+        log.debug("Getting Orchestrator configuration fingerprint...");
+        log.debug("Configured config service URL: '" + apiEndpoint.toString() + "'.");
+
+        final HttpTransport transport = getTransport();
+        HttpTransport.Response response = null;
+
+        try
+        {
+            response = send(apiEndpoint, "get Orchestrator configuration fingerprint", poll, new RetryPolicy.Call()
+            {
+                @Override
+                public HttpTransport.Response send(int timeoutMillis) throws IOException
+                {
+                    return execute(transport, HttpTransport.Request.of("GET", uri(apiEndpoint, "/vco-controlcenter/api/server/config-version", null), JSON, auth, timeoutMillis));
+                }
+            });
+
+            int statusCode = response.getStatus();
+            if (poll && isUnavailable(statusCode))
+            {
+                log.debug("Orchestrator configuration fingerprint returned HTTP " + statusCode + ".");
+                return Collections.<ConfigSlot, String>emptyMap();
+            }
+            switch (statusCode)
+            {
+            case 200:
+                JsonObject statusResponse = readJson(response);
+                // Don't use JsonObject.getString since the returned currentStatus might be null
+                // Rather use JsonObject.get which will return the value or JsonValue.NULL if it's null
+                // In addition JsonObject.isNull(String key) can be used for testing the retun value
+                if (!statusResponse.isNull("activeConfigurationFingerprint") && !statusResponse.isNull("pendingConfigurationFingerprint"))
+                {
+                    String activeFingerprint = statusResponse.getString("activeConfigurationFingerprint");
+                    String pendingFingerprint = statusResponse.getString("pendingConfigurationFingerprint");
+
+                    log.debug("Orchestrator active configuration fingerprint: '" + activeFingerprint + "'.");
+                    log.debug("Orchestrator pending configuration fingerprint: '" + pendingFingerprint + "'.");
+
+                    Map<ConfigSlot, String> map = new HashMap<ConfigSlot, String>();
+                    map.put(ConfigSlot.ACTIVE, activeFingerprint);
+                    map.put(ConfigSlot.PENDING, pendingFingerprint);
+                    return map;
+                }
+                else
+                {
+                    log.warn("Error while reading configuration fingerprints. Unable to parse JSON data or fingerprints returned null.");
+                    return null;
+                }
+            case 401:
+                log.warn("HTTP 401. Authentication is required to get the configuration fingerprint.");
+                return null;
+            case 403:
+                log.warn("HTTP 403. The provided user is not authorized to get the configuration fingerprint.");
+                return null;
+            case 404:
+                log.warn("HTTP 404. The requested resource was not found. Make sure you entered the correct VMware Orchestrator URL and that VMware Orchestrator is reachable under that URL from the machine running this Maven Mojo.");
+                return null;
+            default:
+                log.warn("Unknown status code HTTP " + statusCode + " returned from VMware Orchestrator. Please verify if the configuration changes have been applied. I really got no clue.");
+                return null;
+            }
+        } catch (JsonException ex)
+        {
+            // Thrown in case the received response is no valid JSON
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("A JsonException occured while requesting Orchestrator configuration fingerprint:\n" + sw.getBuffer().toString());
+        } catch (IOException ex)
+        {
+            // Thrown in case the request could not be sent or the response could not be read.
+            if (poll)
+            {
+                log.debug("Orchestrator service is not reachable: " + ex.getMessage());
+                return Collections.<ConfigSlot, String>emptyMap();
+            }
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            ex.printStackTrace(pw);
+            throw new MojoFailureException("An IOException occured while requesting Orchestrator configuration fingerprint:\n" + sw.getBuffer().toString());
+        }
+    }
+
+    // Sends the given call through the retry policy or, for a poll, once and bypassing the circuit breaker. A poll runs until its
+    // own deadline anyway and must not open the breaker, or fail on an open one, while the service restarts.
+    private HttpTransport.Response send(URI apiEndpoint, String action, boolean poll, RetryPolicy.Call call) throws IOException, MojoExecutionException
+    {
+        if (poll)
+        {
+            return call.send(WARM_UP_TIMEOUT);
+        }
+        return retryPolicy.send(apiEndpoint.toString(), action, call);
+    }
+
+    // Returns true if the given HTTP status is answered by a gateway or a service which is not up yet
+    private static boolean isUnavailable(int statusCode)
+    {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    // Returns the number of HTTP requests sent so far.
+    int getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    // Returns the number of request retries so far.
+    int getRetryCount()
+    {
+        return retryPolicy.getRetryCount();
+    }
+
+    // Returns the number of request entity bytes sent so far.
+    long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    // Returns the transport actually used, null until the first request.
+    Transport getTransportType()
+    {
+        return activeTransportType;
+    }
+
+    // Returns the time in milliseconds from the creation of the transport until its first response was read or -1 if there was none yet.
+    long getStartupMillis()
+    {
+        return startupMillis;
+    }
+
+    // Returns the number of classes loaded from the creation of the transport until its first response was read or -1 if there was none yet.
+    long getStartupClassCount()
+    {
+        return startupClassCount;
+    }
+
+    // Releases the HTTP transport and all of its connections.
+    void close()
+    {
+        if (transport != null)
+        {
+            log.debug("Closing HTTP transport for '" + server + "': " + requestCount.get() + " request(s) sent, " + transport.getStatistics() + ".");
+            transport.close();
+            transport = null;
+        }
+    }
+
+    // Returns the preemptive HTTP Basic authorization header value for the given credentials.
+    // The header is sent with each request instead of registering a HttpAuthenticationFeature per request
+    // since every WebTarget configuration change creates a new client runtime which would not share the connection pool.
+    private static String basicAuth(String user, String password)
+    {
+        String credentials = (user == null ? "" : user) + ":" + (password == null ? "" : password);
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // Returns the HTTP transport of this server, creating it on first use
+    private synchronized HttpTransport getTransport() throws MojoExecutionException
+    {
+        if (transport == null)
+        {
+            try
+            {
+                // Read the class count first, the management classes loaded by the first read are not part of the startup cost
+                classCountBeforeTransport = getLoadedClassCount();
+                transportCreatedNanos = System.nanoTime();
+                transport = createTransport();
+            } catch (Exception e)
+            {
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw, true);
+                e.printStackTrace(pw);
+                throw new MojoExecutionException("Unable to create HTTP transport. Exception:\n" + sw.getBuffer().toString());
+            }
+        }
+        return transport;
+    }
+
+    // Returns the configured HTTP transport
+    private HttpTransport createTransport() throws GeneralSecurityException, IOException
+    {
+        // The SSL context is shared JVM-wide per server so TLS sessions can be resumed.
+        // Unless a trust store or certificate fingerprint was configured self-signed Orchestrator certificates are accepted.
+        SSLContext sslContext = SslContextCache.get(server, trustStore, trustStorePassword, certFingerprint);
+
+        // Only the selected transport is loaded, the Jersey client in particular is never touched unless selected
+        activeTransportType = transportType;
+        switch (activeTransportType)
+        {
+        case JERSEY:
+            return new JerseyTransport(log, sslContext, poolSize);
+        case HTTP_CLIENT:
+            return newHttpClientTransport(sslContext);
+        default:
+            return new UrlConnectionTransport(log, sslContext);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the running JVM provides the <tt>java.net.http</tt> client the <code>HTTP_CLIENT</code> transport is built on.
+     */
+    static boolean isHttpClientSupported()
+    {
+        // "1.8" up to Java 8, the major version since Java 9
+        String version = System.getProperty("java.specification.version", "1.8");
+        try
+        {
+            return !version.startsWith("1.") && Integer.parseInt(version) >= 11;
+        } catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    // Loads the java.net.http based transport, which exists on Java 11 or newer only
+    private HttpTransport newHttpClientTransport(SSLContext sslContext) throws IOException
+    {
+        if (!isHttpClientSupported())
+        {
+            throw new IOException("The HTTP_CLIENT transport requires Java 11 or newer, this is Java " + System.getProperty("java.version") + ".");
+        }
+        try
+        {
+            Constructor<?> constructor = Class.forName(HTTP_CLIENT_TRANSPORT).getDeclaredConstructor(Log.class, SSLContext.class, int.class);
+            return (HttpTransport) constructor.newInstance(log, sslContext, poolSize);
+        } catch (ReflectiveOperationException e)
+        {
+            throw new IOException("Unable to load the HTTP_CLIENT transport: " + e, e);
+        }
+    }
+
+    // Sends the given request, counting it and its request entity bytes
+    private HttpTransport.Response execute(HttpTransport transport, HttpTransport.Request request) throws IOException
+    {
+        requestCount.incrementAndGet();
+        HttpTransport.Response response = transport.send(request);
+        bytesSent.addAndGet(request.getContentLength());
+        if (startupMillis < 0)
+        {
+            recordStartup();
+        }
+        return response;
+    }
+
+    // Records and logs the startup cost of the transport once its first response was read
+    private synchronized void recordStartup()
+    {
+        if (startupMillis < 0)
+        {
+            startupClassCount = getLoadedClassCount() - classCountBeforeTransport;
+            startupMillis = (System.nanoTime() - transportCreatedNanos) / 1000000L;
+            log.info("HTTP transport " + activeTransportType + " answered its first request after " + startupMillis + " ms, " + startupClassCount + " classes loaded.");
+        }
+    }
+
+    // Returns the number of classes loaded since the JVM started
+    private static long getLoadedClassCount()
+    {
+        return ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+    }
+
+    // Returns the JSON object of the given response entity
+    private static JsonObject readJson(HttpTransport.Response response)
+    {
+        JsonReader reader = Json.createReader(new ByteArrayInputStream(response.getEntity()));
+        try
+        {
+            return reader.readObject();
+        } finally
+        {
+            reader.close();
+        }
+    }
+
+    // Returns the URI of the given path and query relative to the given service base URI
+    private static URI uri(URI base, String path, String query)
+    {
+        try
+        {
+            return new URI(base.getScheme(), null, base.getHost(), base.getPort(), path, query, null);
+        } catch (URISyntaxException e)
+        {
+            throw new IllegalArgumentException("Invalid request path '" + path + "'.", e);
+        }
+    }
+}
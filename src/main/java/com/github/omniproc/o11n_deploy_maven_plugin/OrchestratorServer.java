@@ -0,0 +1,120 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+/**
+ * An Orchestrator server deployed to as part of a fan-out deployment, configured as a <code>server</code> entry of the
+ * <code>o11nServers</code> list of the <code>deployplugin</code> goal. Every setting not provided by the entry is taken
+ * from the corresponding <code>o11n*</code> parameter of the goal.
+ *
+ * @author Robert Ruf
+ */
+public class OrchestratorServer
+{
+    /**
+     * VMware Orchestrator Server Hostname or IP-address.
+     */
+    private String host;
+    /**
+     * VMware Orchestrator Plugin Service REST API Port.
+     */
+    private Integer servicePort;
+    /**
+     * VMware Orchestrator Config Service REST API Port.
+     */
+    private Integer configPort;
+    /**
+     * Username of a user with sufficient permissions to import Orchestrator plug-ins.
+     */
+    private String pluginServiceUser;
+    /**
+     * Password of the provided <code>pluginServiceUser</code>.
+     */
+    private String pluginServicePassword;
+    /**
+     * Username of a user with sufficient permissions to restart the Orchestrator service.
+     */
+    private String configServiceUser;
+    /**
+     * Password of the provided <code>configServiceUser</code>.
+     */
+    private String configServicePassword;
+    /**
+     * Optional SHA-256 fingerprint of the server certificate.
+     */
+    private String certFingerprint;
+
+    public OrchestratorServer()
+    {
+    }
+
+    OrchestratorServer(String host, Integer servicePort, Integer configPort)
+    {
+        this.host = host;
+        this.servicePort = servicePort;
+        this.configPort = configPort;
+    }
+
+    String getHost()
+    {
+        return host == null || host.isEmpty() ? null : host;
+    }
+
+    Integer getServicePort()
+    {
+        return servicePort;
+    }
+
+    Integer getConfigPort()
+    {
+        return configPort;
+    }
+
+    String getPluginServiceUser()
+    {
+        return pluginServiceUser;
+    }
+
+    String getPluginServicePassword()
+    {
+        return pluginServicePassword;
+    }
+
+    String getConfigServiceUser()
+    {
+        return configServiceUser;
+    }
+
+    String getConfigServicePassword()
+    {
+        return configServicePassword;
+    }
+
+    String getCertFingerprint()
+    {
+        return certFingerprint;
+    }
+
+    @Override
+    public String toString()
+    {
+        return host == null ? "<no host>" : servicePort == null ? host : host + ":" + servicePort;
+    }
+}
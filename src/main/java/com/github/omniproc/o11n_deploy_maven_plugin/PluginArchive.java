@@ -0,0 +1,300 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.PluginType;
+
+/**
+ * Pre-flight view of a plug-in bundle, read from the ZIP central directory through a memory-mapped channel.
+ * Only the central directory and the small metadata entries are read, the bundle itself is never inflated,
+ * so a corrupt, truncated or mis-typed bundle is detected in milliseconds before any request is sent to the server.
+ *
+ * @author Robert Ruf
+ */
+final class PluginArchive
+{
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int DIR_SIGNATURE = 0x02014b50;
+    private static final int DIR_HEADER_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    // Metadata entries are a few KB, anything bigger isn't worth reading before the upload
+    private static final long MAX_METADATA_SIZE = 1024 * 1024;
+
+    private static final String DESCRIPTOR = "VSO-INF/vso.xml";
+    private static final String META_INF = "dunes-meta-inf.xml";
+    private static final String NESTED_EXTENSION = ".dar";
+    private static final Pattern PACKAGE_NAME = Pattern.compile("<entry\\s+key\\s*=\\s*\"pkg-name\"\\s*>\\s*([^<]*?)\\s*</entry>");
+    private static final Pattern PACKAGE_VERSION = Pattern.compile("<entry\\s+key\\s*=\\s*\"pkg-version\"\\s*>\\s*([^<]*?)\\s*</entry>");
+    private static final Pattern MODULE_VERSION = Pattern.compile("<module\\b[^>]*\\sversion\\s*=\\s*\"([^\"]*)\"");
+
+    private final int entryCount;
+    private final String packageName;
+    private final String version;
+
+    private PluginArchive(int entryCount, String packageName, String version)
+    {
+        this.entryCount = entryCount;
+        this.packageName = packageName;
+        this.version = version;
+    }
+
+    /**
+     * Verifies the given bundle is a complete ZIP archive holding the entries expected for the given bundle format
+     * and reads its metadata.
+     *
+     * @throws IOException if the bundle is not a valid bundle of the given format. The message describes the defect.
+     */
+    static PluginArchive inspect(File file, PluginType type) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            Map<String, Entry> entries = readCentralDirectory(channel);
+
+            boolean expected = false;
+            for (String name : entries.keySet())
+            {
+                if (type == PluginType.DAR ? name.equals(DESCRIPTOR) : name.toLowerCase().endsWith(NESTED_EXTENSION))
+                {
+                    expected = true;
+                    break;
+                }
+            }
+            if (!expected)
+            {
+                throw new IOException(type == PluginType.DAR ? "Entry '" + DESCRIPTOR + "' is missing, the file is no DAR bundle." : "No '*" + NESTED_EXTENSION + "' entry found, the file is no VMOAPP bundle.");
+            }
+
+            String packageName = null;
+            String version = null;
+            Entry metaInf = find(entries, META_INF);
+            if (metaInf != null)
+            {
+                String content = read(channel, metaInf);
+                packageName = group(PACKAGE_NAME, content);
+                version = group(PACKAGE_VERSION, content);
+            }
+            Entry descriptor = entries.get(DESCRIPTOR);
+            if (version == null && descriptor != null)
+            {
+                version = group(MODULE_VERSION, read(channel, descriptor));
+            }
+            return new PluginArchive(entries.size(), packageName, version);
+        } finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the number of entries of the bundle.
+     */
+    int getEntryCount()
+    {
+        return entryCount;
+    }
+
+    /**
+     * Returns the <code>pkg-name</code> of the bundle's <tt>dunes-meta-inf.xml</tt>, <code>null</code> if unknown.
+     */
+    String getPackageName()
+    {
+        return packageName;
+    }
+
+    /**
+     * Returns the version of the bundle, <code>null</code> if unknown.
+     */
+    String getVersion()
+    {
+        return version;
+    }
+
+    // Locates the end of central directory record, which is followed by a comment of at most 64 KB, and reads all entries of the directory
+    private static Map<String, Entry> readCentralDirectory(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        if (size < END_HEADER_SIZE)
+        {
+            throw new IOException("File is too short to be a ZIP archive.");
+        }
+        int tailSize = (int) Math.min(size, END_HEADER_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, size - tailSize, tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        int end = -1;
+        for (int i = tailSize - END_HEADER_SIZE; i >= 0; i--)
+        {
+            if (tail.getInt(i) == END_SIGNATURE)
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0)
+        {
+            throw new IOException("No ZIP central directory found, the file is truncated or no ZIP archive.");
+        }
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long dirSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long dirOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || dirSize == 0xFFFFFFFFL || dirOffset == 0xFFFFFFFFL)
+        {
+            throw new IOException("ZIP64 archives are not supported.");
+        }
+        if (dirOffset + dirSize > size - tailSize + end)
+        {
+            throw new IOException("Central directory exceeds the file, the file is truncated.");
+        }
+
+        ByteBuffer dir = channel.map(FileChannel.MapMode.READ_ONLY, dirOffset, dirSize).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        int pos = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (pos + DIR_HEADER_SIZE > dirSize || dir.getInt(pos) != DIR_SIGNATURE)
+            {
+                throw new IOException("Central directory is corrupt at entry " + (i + 1) + " of " + count + ".");
+            }
+            int nameLength = dir.getShort(pos + 28) & 0xFFFF;
+            int extraLength = dir.getShort(pos + 30) & 0xFFFF;
+            int commentLength = dir.getShort(pos + 32) & 0xFFFF;
+            if (pos + DIR_HEADER_SIZE + nameLength > dirSize)
+            {
+                throw new IOException("Central directory is corrupt at entry " + (i + 1) + " of " + count + ".");
+            }
+            byte[] name = new byte[nameLength];
+            dir.position(pos + DIR_HEADER_SIZE);
+            dir.get(name);
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), dir.getShort(pos + 10) & 0xFFFF, dir.getInt(pos + 20) & 0xFFFFFFFFL,
+                    dir.getInt(pos + 24) & 0xFFFFFFFFL, dir.getInt(pos + 42) & 0xFFFFFFFFL);
+            if (entry.offset + LOCAL_HEADER_SIZE + entry.compressedSize > dirOffset)
+            {
+                throw new IOException("Entry '" + entry.name + "' exceeds the archive data, the file is truncated.");
+            }
+            entries.put(entry.name, entry);
+            pos += DIR_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    // Returns the top-most entry of the given file name
+    private static Entry find(Map<String, Entry> entries, String fileName)
+    {
+        Entry found = null;
+        for (Entry entry : entries.values())
+        {
+            if ((entry.name.equals(fileName) || entry.name.endsWith("/" + fileName)) && (found == null || entry.name.length() < found.name.length()))
+            {
+                found = entry;
+            }
+        }
+        return found;
+    }
+
+    // Returns the content of the given metadata entry, null if it is too large to be metadata
+    private static String read(FileChannel channel, Entry entry) throws IOException
+    {
+        if (entry.size > MAX_METADATA_SIZE || entry.compressedSize > MAX_METADATA_SIZE)
+        {
+            return null;
+        }
+        ByteBuffer local = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (local.getInt(0) != LOCAL_SIGNATURE)
+        {
+            throw new IOException("Entry '" + entry.name + "' is corrupt.");
+        }
+        long dataOffset = entry.offset + LOCAL_HEADER_SIZE + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+        byte[] data = new byte[(int) entry.compressedSize];
+        channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, data.length).get(data);
+        if (entry.method == STORED)
+        {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        if (entry.method != DEFLATED)
+        {
+            throw new IOException("Entry '" + entry.name + "' uses unsupported compression method " + entry.method + ".");
+        }
+        Inflater inflater = new Inflater(true);
+        try
+        {
+            inflater.setInput(data);
+            byte[] content = new byte[(int) entry.size];
+            int length = inflater.inflate(content);
+            if (length != content.length)
+            {
+                throw new IOException("Entry '" + entry.name + "' is corrupt.");
+            }
+            return new String(content, StandardCharsets.UTF_8);
+        } catch (DataFormatException e)
+        {
+            throw new IOException("Entry '" + entry.name + "' is corrupt: " + e.getMessage());
+        } finally
+        {
+            inflater.end();
+        }
+    }
+
+    private static String group(Pattern pattern, String content)
+    {
+        if (content == null)
+        {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(content);
+        return matcher.find() && !matcher.group(1).isEmpty() ? matcher.group(1) : null;
+    }
+
+    private static final class Entry
+    {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+
+        private Entry(String name, int method, long compressedSize, long size, long offset)
+        {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.PluginType;
+
+/**
+ * A plug-in bundle deployed as part of a batch, configured as a <code>plugin</code> entry of the <code>o11nPlugins</code>
+ * list of the <code>deployplugin</code> goal.
+ *
+ * @author Robert Ruf
+ */
+public class PluginArtifact
+{
+    /**
+     * The plug-in file that should be installed, including its file extension.
+     */
+    private File file;
+    /**
+     * The Orchestrator plug-in bundle format. Might be <tt>DAR</tt> or <tt>VMOAPP</tt>.
+     * If omitted the format will be taken from the file extension.
+     */
+    private PluginType type;
+    /**
+     * The package name of the plug-in package to be deleted if <code>o11nDeletePackage</code> is set to <code>true</code>.
+     * If omitted the package name is read from the plug-in file, see <code>o11nValidatePlugin</code>.
+     */
+    private String packageName;
+
+    public PluginArtifact()
+    {
+    }
+
+    PluginArtifact(File file, PluginType type, String packageName)
+    {
+        this.file = file;
+        this.type = type;
+        this.packageName = packageName;
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the configured bundle format or the one matching the file extension, <code>null</code> if neither is known.
+     */
+    PluginType getType()
+    {
+        if (type == null && file != null)
+        {
+            return typeOf(file);
+        }
+        return type;
+    }
+
+    /**
+     * Returns the bundle format matching the extension of the given file, <code>null</code> if it is unknown.
+     */
+    static PluginType typeOf(File file)
+    {
+        String name = file.getName();
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        for (PluginType candidate : PluginType.values())
+        {
+            if (candidate.toString().equalsIgnoreCase(extension))
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    String getPackageName()
+    {
+        return packageName == null || packageName.isEmpty() ? null : packageName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return file == null ? "<no file>" : file.getName();
+    }
+}
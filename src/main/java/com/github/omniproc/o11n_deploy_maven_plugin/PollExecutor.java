@@ -0,0 +1,96 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the polls of {@link Poller#schedule(PollExecutor, long, Poller.Condition)}. A single timer thread only waits for the
+ * next probe of each poll, the probes themselves are sent from a pool of I/O threads growing with the number of probes in
+ * flight. A probe blocking on a slow server or on the backoff of its retries never delays the probes of other servers.
+ *
+ * @author Robert Ruf
+ */
+final class PollExecutor
+{
+    private final ScheduledExecutorService timer;
+    private final ExecutorService probes;
+
+    /**
+     * @param threads the factory of the timer and I/O threads.
+     */
+    PollExecutor(ThreadFactory threads)
+    {
+        this.timer = Executors.newSingleThreadScheduledExecutor(threads);
+        this.probes = Executors.newCachedThreadPool(threads);
+    }
+
+    /**
+     * Sends the given probe of the given poll on an I/O thread. The poll fails if the executor was shut down.
+     */
+    void execute(Runnable probe, CompletableFuture<?> poll)
+    {
+        try
+        {
+            probes.execute(probe);
+        } catch (RejectedExecutionException e)
+        {
+            // Shut down, e.g. because the deployment failed
+            poll.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Sends the given probe of the given poll on an I/O thread once the given delay has passed. The poll fails if the executor
+     * was shut down.
+     */
+    void schedule(final Runnable probe, long delayMillis, final CompletableFuture<?> poll)
+    {
+        try
+        {
+            timer.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    execute(probe, poll);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e)
+        {
+            poll.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Stops all polls, interrupting the probes in flight.
+     */
+    void shutdownNow()
+    {
+        timer.shutdownNow();
+        probes.shutdownNow();
+    }
+}
@@ -0,0 +1,208 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Polls a condition until it is satisfied or a deadline is reached.
+ * The first probe is sent immediately, the interval between subsequent probes starts small and grows exponentially
+ * up to a maximum. A random jitter is applied to each interval so parallel builds don't poll in lockstep.
+ * A wait either blocks the calling thread or is driven by a {@link PollExecutor}, which lets a single timer thread serve the waits
+ * of many servers.
+ *
+ * @author Robert Ruf
+ */
+final class Poller
+{
+    private static final double BACKOFF_MULTIPLIER = 1.5;
+    private static final double JITTER = 0.2;
+
+    /**
+     * A condition to poll for.
+     */
+    interface Condition
+    {
+        /**
+         * Returns <code>true</code> if the awaited state has been reached.
+         */
+        boolean isSatisfied() throws MojoFailureException, MojoExecutionException;
+    }
+
+    /**
+     * The outcome of a wait.
+     */
+    static final class Result
+    {
+        private final boolean satisfied;
+        private final long elapsedMillis;
+        private final int probes;
+
+        Result(boolean satisfied, long elapsedMillis, int probes)
+        {
+            this.satisfied = satisfied;
+            this.elapsedMillis = elapsedMillis;
+            this.probes = probes;
+        }
+
+        /**
+         * Returns <code>true</code> if the condition was satisfied before the deadline, <code>false</code> on timeout.
+         */
+        boolean isSatisfied()
+        {
+            return satisfied;
+        }
+
+        long getElapsedMillis()
+        {
+            return elapsedMillis;
+        }
+
+        int getProbes()
+        {
+            return probes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.1f s, %d probe(s)", elapsedMillis / 1000.0, probes);
+        }
+    }
+
+    private final long initialIntervalMillis;
+    private final long maxIntervalMillis;
+
+    /**
+     * @param initialIntervalMillis the delay between the first and the second probe.
+     * @param maxIntervalMillis the upper bound of the delay between two probes.
+     */
+    Poller(long initialIntervalMillis, long maxIntervalMillis)
+    {
+        this.initialIntervalMillis = Math.max(1, initialIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.initialIntervalMillis, maxIntervalMillis);
+    }
+
+    /**
+     * Polls the given condition until it is satisfied or <code>timeoutMillis</code> have passed.
+     * Returns as soon as the condition is satisfied.
+     */
+    Result await(long timeoutMillis, Condition condition) throws MojoFailureException, MojoExecutionException
+    {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMillis;
+        double interval = initialIntervalMillis;
+        int probes = 0;
+
+        while (true)
+        {
+            probes++;
+            if (condition.isSatisfied())
+            {
+                return new Result(true, System.currentTimeMillis() - start, probes);
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                return new Result(false, System.currentTimeMillis() - start, probes);
+            }
+
+            long delay = Math.min(remaining, jitter((long) interval));
+            interval = Math.min(maxIntervalMillis, interval * BACKOFF_MULTIPLIER);
+            try
+            {
+                Thread.sleep(delay);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw, true);
+                e.printStackTrace(pw);
+                throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
+            }
+        }
+    }
+
+    /**
+     * Polls the given condition on the given executor until it is satisfied or <code>timeoutMillis</code> have passed.
+     * No thread is blocked between two probes. The returned future fails with the exception thrown by the condition, if any,
+     * and cancelling it stops the polling.
+     */
+    CompletableFuture<Result> schedule(final PollExecutor executor, final long timeoutMillis, final Condition condition)
+    {
+        final CompletableFuture<Result> result = new CompletableFuture<Result>();
+        final long start = System.currentTimeMillis();
+        Runnable probe = new Runnable()
+        {
+            private double interval = initialIntervalMillis;
+            private int probes = 0;
+
+            @Override
+            public void run()
+            {
+                if (result.isDone())
+                {
+                    // Cancelled
+                    return;
+                }
+                probes++;
+                try
+                {
+                    if (condition.isSatisfied())
+                    {
+                        result.complete(new Result(true, System.currentTimeMillis() - start, probes));
+                        return;
+                    }
+                } catch (Exception e)
+                {
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                long remaining = start + timeoutMillis - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    result.complete(new Result(false, System.currentTimeMillis() - start, probes));
+                    return;
+                }
+
+                long delay = Math.min(remaining, jitter((long) interval));
+                interval = Math.min(maxIntervalMillis, interval * BACKOFF_MULTIPLIER);
+                executor.schedule(this, delay, result);
+            }
+        };
+        executor.execute(probe, result);
+        return result;
+    }
+
+    // Returns the given interval randomly shifted by up to +/- JITTER percent
+    private static long jitter(long interval)
+    {
+        double factor = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, (long) (interval * factor));
+    }
+}
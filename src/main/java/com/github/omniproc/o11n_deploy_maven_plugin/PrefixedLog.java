@@ -0,0 +1,119 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A {@link Log} prefixing every message, so the interleaved output of deployments running in parallel can be told apart.
+ *
+ * @author Robert Ruf
+ */
+final class PrefixedLog implements Log
+{
+    private final Log log;
+    private final String prefix;
+
+    PrefixedLog(Log log, String prefix)
+    {
+        this.log = log;
+        this.prefix = prefix;
+    }
+
+    public boolean isDebugEnabled()
+    {
+        return log.isDebugEnabled();
+    }
+
+    public void debug(CharSequence content)
+    {
+        log.debug(prefix + content);
+    }
+
+    public void debug(CharSequence content, Throwable error)
+    {
+        log.debug(prefix + content, error);
+    }
+
+    public void debug(Throwable error)
+    {
+        log.debug(prefix + error, error);
+    }
+
+    public boolean isInfoEnabled()
+    {
+        return log.isInfoEnabled();
+    }
+
+    public void info(CharSequence content)
+    {
+        log.info(prefix + content);
+    }
+
+    public void info(CharSequence content, Throwable error)
+    {
+        log.info(prefix + content, error);
+    }
+
+    public void info(Throwable error)
+    {
+        log.info(prefix + error, error);
+    }
+
+    public boolean isWarnEnabled()
+    {
+        return log.isWarnEnabled();
+    }
+
+    public void warn(CharSequence content)
+    {
+        log.warn(prefix + content);
+    }
+
+    public void warn(CharSequence content, Throwable error)
+    {
+        log.warn(prefix + content, error);
+    }
+
+    public void warn(Throwable error)
+    {
+        log.warn(prefix + error, error);
+    }
+
+    public boolean isErrorEnabled()
+    {
+        return log.isErrorEnabled();
+    }
+
+    public void error(CharSequence content)
+    {
+        log.error(prefix + content);
+    }
+
+    public void error(CharSequence content, Throwable error)
+    {
+        log.error(prefix + content, error);
+    }
+
+    public void error(Throwable error)
+    {
+        log.error(prefix + error, error);
+    }
+}
@@ -0,0 +1,304 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Coalesces the Orchestrator service restarts requested by the <code>deployplugin</code> executions of a reactor build,
+ * so each server is restarted only once after the last of them has finished.
+ * One instance is shared by all executions of a build, including the per-project sessions of a parallel build.
+ * The execution finishing last is the one to restart the servers, whatever order the modules are built in.
+ * Restarts still pending when the build ends, because an expected execution did not run, are done by the
+ * {@link RestartParticipant} if the plug-in is declared as build extension.
+ *
+ * @author Robert Ruf
+ */
+final class RestartCoordinator
+{
+    private static final String GOAL = "deployplugin";
+
+    // Keyed by the execution request, which unlike the session is not cloned per project in parallel builds
+    private static final Map<Object, RestartCoordinator> COORDINATORS = new WeakHashMap<Object, RestartCoordinator>();
+    // The execution requests of the builds the RestartParticipant restarts the pending servers at the end of
+    private static final Set<Object> SESSION_END = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+    // The phases of the default lifecycle in their order
+    private static final List<String> PHASES = Arrays.asList("validate", "initialize", "generate-sources", "process-sources",
+        "generate-resources", "process-resources", "compile", "process-classes", "generate-test-sources", "process-test-sources",
+        "generate-test-resources", "process-test-resources", "test-compile", "process-test-classes", "test", "prepare-package",
+        "package", "pre-integration-test", "integration-test", "post-integration-test", "verify", "install", "deploy");
+    // The phases of the clean and site lifecycles, which don't run any phase of the default lifecycle
+    private static final List<String> OTHER_PHASES = Arrays.asList("pre-clean", "clean", "post-clean", "pre-site", "site", "post-site",
+        "site-deploy");
+
+    /**
+     * A deferred restart requested by a single <code>deployplugin</code> execution.
+     */
+    static final class Request
+    {
+        private final DeployPlugin mojo;
+        private final DeployTarget target;
+        private final File plugin;
+        private final String stateKey;
+        private final String artifactFingerprint;
+        private final BundlePackages packages;
+
+        /**
+         * @param mojo the requesting execution, providing the configuration of the restart.
+         * @param target the server to restart.
+         * @param plugin the uploaded plug-in file.
+         * @param stateKey the key to record the deployment under once the restart succeeded.
+         * @param artifactFingerprint the fingerprint to record or <code>null</code> if fingerprinting was not requested.
+         * @param packages the packages of the plug-in to record or <code>null</code> if package imports were not requested.
+         */
+        Request(DeployPlugin mojo, DeployTarget target, File plugin, String stateKey, String artifactFingerprint, BundlePackages packages)
+        {
+            this.mojo = mojo;
+            this.target = target;
+            this.plugin = plugin;
+            this.stateKey = stateKey;
+            this.artifactFingerprint = artifactFingerprint;
+            this.packages = packages;
+        }
+
+        DeployPlugin getMojo()
+        {
+            return mojo;
+        }
+
+        DeployTarget getTarget()
+        {
+            return target;
+        }
+
+        File getPlugin()
+        {
+            return plugin;
+        }
+
+        String getStateKey()
+        {
+            return stateKey;
+        }
+
+        String getArtifactFingerprint()
+        {
+            return artifactFingerprint;
+        }
+
+        BundlePackages getPackages()
+        {
+            return packages;
+        }
+    }
+
+    private final int expectedExecutions;
+    private final boolean restartedAtSessionEnd;
+    private int finishedExecutions = 0;
+    private final Map<String, List<Request>> pending = new LinkedHashMap<String, List<Request>>();
+
+    private RestartCoordinator(int expectedExecutions, boolean restartedAtSessionEnd)
+    {
+        this.expectedExecutions = expectedExecutions;
+        this.restartedAtSessionEnd = restartedAtSessionEnd;
+    }
+
+    /**
+     * Returns the coordinator of the build the given execution belongs to.
+     */
+    static RestartCoordinator get(MavenSession session, MojoExecution execution)
+    {
+        synchronized (COORDINATORS)
+        {
+            RestartCoordinator coordinator = COORDINATORS.get(session.getRequest());
+            if (coordinator == null)
+            {
+                coordinator = new RestartCoordinator(countExecutions(session, execution), SESSION_END.contains(session.getRequest()));
+                COORDINATORS.put(session.getRequest(), coordinator);
+            }
+            return coordinator;
+        }
+    }
+
+    /**
+     * Marks the given build as one the {@link RestartParticipant} restarts the pending servers at the end of.
+     */
+    static void restartAtSessionEnd(MavenSession session)
+    {
+        synchronized (COORDINATORS)
+        {
+            SESSION_END.add(session.getRequest());
+        }
+    }
+
+    /**
+     * Removes the coordinator of the given build and returns the restarts still pending, grouped by server.
+     */
+    static List<List<Request>> end(MavenSession session)
+    {
+        RestartCoordinator coordinator;
+        synchronized (COORDINATORS)
+        {
+            SESSION_END.remove(session.getRequest());
+            coordinator = COORDINATORS.remove(session.getRequest());
+        }
+        if (coordinator == null)
+        {
+            return Collections.emptyList();
+        }
+        synchronized (coordinator)
+        {
+            List<List<Request>> requests = new ArrayList<List<Request>>(coordinator.pending.values());
+            coordinator.pending.clear();
+            return requests;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the {@link RestartParticipant} restarts the servers still pending when the build ends.
+     */
+    boolean isRestartedAtSessionEnd()
+    {
+        return restartedAtSessionEnd;
+    }
+
+    /**
+     * Returns the keys of the servers with a deferred restart.
+     */
+    synchronized List<String> getPendingServers()
+    {
+        return new ArrayList<String>(pending.keySet());
+    }
+
+    /**
+     * Returns <code>true</code> if all other executions of the build have finished, so the calling execution is the last one.
+     */
+    synchronized boolean isLast()
+    {
+        return finishedExecutions + 1 >= expectedExecutions;
+    }
+
+    /**
+     * Defers a restart of the given server until the last execution of the build finishes.
+     */
+    synchronized void register(String serverKey, Request request)
+    {
+        List<Request> requests = pending.get(serverKey);
+        if (requests == null)
+        {
+            requests = new ArrayList<Request>();
+            pending.put(serverKey, requests);
+        }
+        requests.add(request);
+    }
+
+    /**
+     * Removes and returns the restarts deferred for the given server, e.g. because the caller restarts it anyway.
+     */
+    synchronized List<Request> take(String serverKey)
+    {
+        List<Request> requests = pending.remove(serverKey);
+        return requests == null ? Collections.<Request> emptyList() : requests;
+    }
+
+    /**
+     * Marks the calling execution as finished. If it was the last one of the build, all deferred restarts are removed and
+     * returned grouped by server, otherwise nothing is returned.
+     */
+    synchronized List<List<Request>> finish()
+    {
+        finishedExecutions++;
+        if (finishedExecutions < expectedExecutions)
+        {
+            return Collections.emptyList();
+        }
+        List<List<Request>> requests = new ArrayList<List<Request>>(pending.values());
+        pending.clear();
+        return requests;
+    }
+
+    // Returns the number of deployplugin executions in the build: every execution bound in a project POM to a phase the build
+    // reaches, or one per project if the goal was invoked from the command line.
+    private static int countExecutions(MavenSession session, MojoExecution execution)
+    {
+        List<MavenProject> projects = session.getProjects();
+        if (execution.getSource() == MojoExecution.Source.CLI)
+        {
+            return projects.size();
+        }
+        String pluginKey = execution.getMojoDescriptor().getPluginDescriptor().getPluginLookupKey();
+        String defaultPhase = execution.getMojoDescriptor().getPhase();
+        int lastPhase = getLastPhase(session.getGoals());
+        int executions = 0;
+        for (MavenProject project : projects)
+        {
+            for (Plugin plugin : project.getBuildPlugins())
+            {
+                if (pluginKey.equals(plugin.getKey()))
+                {
+                    for (PluginExecution pluginExecution : plugin.getExecutions())
+                    {
+                        String phase = pluginExecution.getPhase() != null ? pluginExecution.getPhase() : defaultPhase;
+                        if (pluginExecution.getGoals().contains(GOAL) && PHASES.indexOf(phase) <= lastPhase)
+                        {
+                            executions++;
+                        }
+                    }
+                }
+            }
+        }
+        // Never less than the running execution itself
+        return Math.max(1, executions);
+    }
+
+    // Returns the index of the last default lifecycle phase the given goals run, or the last phase of all if it is unknown,
+    // e.g. because a phase of a custom lifecycle was requested.
+    private static int getLastPhase(List<String> goals)
+    {
+        int lastPhase = -1;
+        for (String goal : goals)
+        {
+            if (goal.indexOf(':') < 0 && !OTHER_PHASES.contains(goal))
+            {
+                int phase = PHASES.indexOf(goal);
+                if (phase < 0)
+                {
+                    return PHASES.size();
+                }
+                lastPhase = Math.max(lastPhase, phase);
+            }
+        }
+        return lastPhase < 0 ? PHASES.size() : lastPhase;
+    }
+}
@@ -0,0 +1,77 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Restarts the Orchestrator services whose restart was deferred by <code>o11nCoalesceRestarts</code> but is still pending when
+ * the build ends, because the execution expected to finish last did not run: its phase was not reached, its module was skipped
+ * or the build failed before. Only active if the plug-in is declared with <code>&lt;extensions&gt;true&lt;/extensions&gt;</code>.
+ *
+ * @author Robert Ruf
+ */
+@Named("o11n-deploy-restart")
+@Singleton
+public class RestartParticipant extends AbstractMavenLifecycleParticipant
+{
+    @Override
+    public void afterProjectsRead(MavenSession session) throws MavenExecutionException
+    {
+        RestartCoordinator.restartAtSessionEnd(session);
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException
+    {
+        MavenExecutionException failure = null;
+        for (List<RestartCoordinator.Request> requests : RestartCoordinator.end(session))
+        {
+            Log log = requests.get(requests.size() - 1).getTarget().getLog();
+            log.warn("Not all deployplugin executions of the build ran, restarting the Orchestrator service deferred for them now.");
+            try
+            {
+                DeployPlugin.restartDeferred(requests);
+            } catch (MojoFailureException e)
+            {
+                log.error(e.getMessage());
+                failure = new MavenExecutionException(e.getMessage(), e);
+            } catch (MojoExecutionException e)
+            {
+                log.error(e.getMessage());
+                failure = new MavenExecutionException(e.getMessage(), e);
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Retries failed Orchestrator calls with exponential backoff and guards each endpoint by a circuit breaker.
+ * A call is retried if the request failed with an I/O error, e.g. a connection reset while the service is coming back,
+ * or if the server answered HTTP 502, 503 or 504. Each call, including its retries, has to finish within a deadline.
+ * After a number of consecutive failed attempts the circuit breaker of an endpoint opens and calls to it fail fast
+ * until the breaker is half-open again and lets a single trial call pass.
+ *
+ * @author Robert Ruf
+ */
+final class RetryPolicy
+{
+    private static final double BACKOFF_MULTIPLIER = 2;
+    private static final double JITTER = 0.2;
+
+    /**
+     * A request which can be sent repeatedly.
+     */
+    interface Call
+    {
+        /**
+         * Sends the request. A <code>timeoutMillis</code> of <code>0</code> means no timeout.
+         */
+        HttpTransport.Response send(int timeoutMillis) throws IOException;
+    }
+
+    /**
+     * Decides if a failed call may be sent again, e.g. because it was not applied by the server.
+     */
+    interface Guard
+    {
+        boolean isSafeToRetry();
+    }
+
+    private final Log log;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long deadlineMillis;
+    private final int breakerThreshold;
+    private final long breakerOpenMillis;
+    private final Map<String, CircuitBreaker> breakers = new HashMap<String, CircuitBreaker>();
+    private final AtomicInteger retryCount = new AtomicInteger();
+
+    /**
+     * @param maxRetries the number of times a failed call is sent again, <code>0</code> disables retries.
+     * @param initialBackoffMillis the delay before the first retry, doubled with each further retry.
+     * @param maxBackoffMillis the upper bound of the delay between two attempts.
+     * @param deadlineMillis the time a call including its retries may take, <code>0</code> means no deadline.
+     * @param breakerThreshold the number of consecutive failed attempts which open the circuit breaker of an endpoint, <code>0</code> disables it.
+     * @param breakerOpenMillis the time an open circuit breaker fails calls fast before it lets a trial call pass.
+     */
+    RetryPolicy(Log log, int maxRetries, long initialBackoffMillis, long maxBackoffMillis, long deadlineMillis, int breakerThreshold, long breakerOpenMillis)
+    {
+        this.log = log;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.deadlineMillis = Math.max(0, deadlineMillis);
+        this.breakerThreshold = Math.max(0, breakerThreshold);
+        this.breakerOpenMillis = Math.max(0, breakerOpenMillis);
+    }
+
+    /**
+     * Returns a policy which sends every call exactly once and never fails fast.
+     */
+    static RetryPolicy none(Log log)
+    {
+        return new RetryPolicy(log, 0, 1, 1, 0, 0, 0);
+    }
+
+    /**
+     * Returns <code>true</code> if failed calls are retried at all.
+     */
+    boolean isEnabled()
+    {
+        return maxRetries > 0;
+    }
+
+    /**
+     * Returns the number of retries so far.
+     */
+    int getRetryCount()
+    {
+        return retryCount.get();
+    }
+
+    /**
+     * Sends an idempotent call to the given endpoint, retrying it on transient failures.
+     *
+     * @throws IOException if the last attempt failed, the deadline was reached or the circuit breaker of the endpoint is open.
+     */
+    HttpTransport.Response send(String endpoint, String description, Call call) throws IOException, MojoExecutionException
+    {
+        return send(endpoint, description, null, call);
+    }
+
+    /**
+     * Sends a call to the given endpoint, retrying it on transient failures as long as the given guard confirms it is safe.
+     *
+     * @throws IOException if the last attempt failed, the deadline was reached or the circuit breaker of the endpoint is open.
+     */
+    HttpTransport.Response send(String endpoint, String description, Guard guard, Call call) throws IOException, MojoExecutionException
+    {
+        CircuitBreaker breaker = getBreaker(endpoint);
+        long deadline = deadlineMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + deadlineMillis;
+        double backoff = initialBackoffMillis;
+        int attempt = 0;
+
+        while (true)
+        {
+            breaker.acquire(endpoint);
+            attempt++;
+            HttpTransport.Response response;
+            try
+            {
+                response = call.send(deadlineMillis == 0 ? 0 : (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline - System.currentTimeMillis())));
+            } catch (IOException ex)
+            {
+                breaker.failed(endpoint);
+                if (!mayRetry(attempt, deadline, (long) backoff, guard))
+                {
+                    throw ex;
+                }
+                log.warn("Attempt " + attempt + " to " + description + " failed: " + ex.getMessage() + ". Retrying...");
+                backoff = sleep(backoff);
+                continue;
+            }
+
+            int statusCode = response.getStatus();
+            if (statusCode != 502 && statusCode != 503 && statusCode != 504)
+            {
+                breaker.succeeded();
+                return response;
+            }
+            breaker.failed(endpoint);
+            if (!mayRetry(attempt, deadline, (long) backoff, guard))
+            {
+                return response;
+            }
+            log.warn("Attempt " + attempt + " to " + description + " returned HTTP " + statusCode + ". Retrying...");
+            backoff = sleep(backoff);
+        }
+    }
+
+    private boolean mayRetry(int attempt, long deadline, long backoff, Guard guard)
+    {
+        if (attempt > maxRetries || System.currentTimeMillis() + backoff >= deadline)
+        {
+            return false;
+        }
+        if (guard != null && !guard.isSafeToRetry())
+        {
+            log.warn("The failed request might have been applied by the server. Not retrying.");
+            return false;
+        }
+        return true;
+    }
+
+    // Waits for the given backoff and returns the next one
+    private double sleep(double backoff) throws MojoExecutionException
+    {
+        retryCount.incrementAndGet();
+        double factor = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        try
+        {
+            Thread.sleep(Math.max(1, (long) (backoff * factor)));
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.printStackTrace(pw);
+            throw new MojoExecutionException("Error while executing 'O11N-DEPLOY-MAVEN-PLUGIN':\n" + sw.getBuffer().toString());
+        }
+        return Math.min(maxBackoffMillis, backoff * BACKOFF_MULTIPLIER);
+    }
+
+    private synchronized CircuitBreaker getBreaker(String endpoint)
+    {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null)
+        {
+            breaker = new CircuitBreaker();
+            breakers.put(endpoint, breaker);
+        }
+        return breaker;
+    }
+
+    // Counts the consecutive failed attempts of an endpoint
+    private final class CircuitBreaker
+    {
+        private int failures;
+        private long openUntil;
+        private boolean trial;
+
+        synchronized void acquire(String endpoint) throws IOException
+        {
+            if (breakerThreshold == 0 || (failures < breakerThreshold && !trial))
+            {
+                return;
+            }
+            long remaining = openUntil - System.currentTimeMillis();
+            if (remaining > 0 || trial)
+            {
+                throw new IOException("Circuit breaker of '" + endpoint + "' is open after " + failures + " consecutive failed requests. Failing fast for another " + Math.max(0, remaining) + " ms.");
+            }
+            // Half-open: let a single trial call pass, the breaker opens again right away if it fails
+            failures = breakerThreshold - 1;
+            trial = true;
+        }
+
+        synchronized void succeeded()
+        {
+            failures = 0;
+            trial = false;
+        }
+
+        synchronized void failed(String endpoint)
+        {
+            failures++;
+            trial = false;
+            if (breakerThreshold > 0 && failures == breakerThreshold)
+            {
+                openUntil = System.currentTimeMillis() + breakerOpenMillis;
+                log.warn("Circuit breaker of '" + endpoint + "' opened after " + failures + " consecutive failed requests.");
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Mojo which deploys the previous version of the configured VMware Orchestrator plug-in again, taken from the artifact cache
+ * the <code>deployplugin</code> goal fills. Nothing is rebuilt, the cached bundle goes through the same package deletion,
+ * upload and service restart as a regular deployment. All parameters of the <code>deployplugin</code> goal apply.
+ * The rolled back version is removed from the cache, so running the goal again steps back one more version.
+ *
+ * @author Robert Ruf
+ */
+@Mojo(name = "rollback", threadSafe = true)
+public class RollbackPlugin extends DeployPlugin
+{
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        configure();
+        if (isMultiDeployment())
+        {
+            throw new MojoFailureException("Error: the rollback goal deploys a single plug-in to a single server, 'o11nPlugins' and 'o11nServers' are not supported.");
+        }
+
+        File pluginFile = getPluginFiles().get(0);
+        ArtifactCache cache = getArtifactCache();
+        String key = getCacheKey(pluginFile);
+        List<ArtifactCache.Entry> entries;
+        try
+        {
+            entries = cache.getEntries(key);
+        } catch (IOException e)
+        {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.printStackTrace(pw);
+            throw new MojoExecutionException("Unable to read the artifact cache:\n" + sw.getBuffer().toString());
+        }
+        if (entries.size() < 2)
+        {
+            throw new MojoFailureException("No previous version of '" + key + "' is cached, " + entries.size() + " version(s) found. Nothing to roll back to.");
+        }
+
+        getLog().info("Cached versions of '" + key + "', from the oldest to the latest:");
+        for (ArtifactCache.Entry entry : entries)
+        {
+            getLog().info("  " + entry);
+        }
+        ArtifactCache.Entry latest = entries.get(entries.size() - 1);
+        ArtifactCache.Entry previous = entries.get(entries.size() - 2);
+        getLog().info("Rolling back from " + latest + " to " + previous + ".");
+
+        cache.touch(previous);
+        usePluginFile(previous.getFile());
+        super.execute();
+
+        try
+        {
+            cache.discard(key, latest.getFingerprint());
+        } catch (IOException e)
+        {
+            getLog().warn("Unable to remove the rolled back version " + latest + " from the artifact cache: " + e.getMessage());
+        }
+        getLog().info("Rolled back to " + previous + ".");
+    }
+}
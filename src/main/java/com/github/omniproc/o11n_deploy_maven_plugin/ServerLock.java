@@ -0,0 +1,99 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Serializes the deployments to a single Orchestrator server within the JVM, so modules of a parallel build deploying to the
+ * same server queue up instead of racing each other's uploads and service restarts, while deployments to different servers
+ * run fully in parallel. A semaphore rather than a lock is used as the service restart of a fan-out deployment completes on
+ * another thread than the one that started the upload.
+ *
+ * @author Robert Ruf
+ */
+final class ServerLock
+{
+    // One per server, shared by all builds running in this JVM, e.g. with the Maven daemon
+    private static final Map<String, ServerLock> LOCKS = new HashMap<String, ServerLock>();
+
+    private final String serverKey;
+    private final Semaphore permit = new Semaphore(1, true);
+
+    private ServerLock(String serverKey)
+    {
+        this.serverKey = serverKey;
+    }
+
+    /**
+     * Returns the lock of the given server.
+     *
+     * @param serverKey the server as <code>host:configPort</code>.
+     */
+    static ServerLock get(String serverKey)
+    {
+        synchronized (LOCKS)
+        {
+            ServerLock lock = LOCKS.get(serverKey);
+            if (lock == null)
+            {
+                lock = new ServerLock(serverKey);
+                LOCKS.put(serverKey, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * Waits until no other deployment to the server is running and takes it over. Must be followed by exactly one
+     * {@link #release()}, which may be called from any thread.
+     */
+    void acquire(Log log) throws MojoExecutionException
+    {
+        if (permit.tryAcquire())
+        {
+            return;
+        }
+        log.info("Waiting for another deployment to '" + serverKey + "' to finish.");
+        long start = System.currentTimeMillis();
+        try
+        {
+            permit.acquire();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for another deployment to '" + serverKey + "' to finish.");
+        }
+        log.info(String.format("Waited %.1f s for another deployment to '%s'.", (System.currentTimeMillis() - start) / 1000.0, serverKey));
+    }
+
+    /**
+     * Hands the server over to the next queued deployment.
+     */
+    void release()
+    {
+        permit.release();
+    }
+}
@@ -0,0 +1,197 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * JVM-wide cache of the {@link SSLContext}s used to talk to VMware Orchestrator servers.
+ * Reusing the same context for a server keeps its client session cache alive, so subsequent connections -
+ * even those of later goal executions within the same Maven JVM - can resume the TLS session with an abbreviated handshake.
+ *
+ * @author Robert Ruf
+ */
+final class SslContextCache
+{
+    private static final ConcurrentMap<String, SSLContext> CONTEXTS = new ConcurrentHashMap<String, SSLContext>();
+
+    private SslContextCache()
+    {
+    }
+
+    /**
+     * Returns the cached context for the given server and trust configuration, creating it on first use.
+     *
+     * @param server the Orchestrator server hostname or IP-address.
+     * @param trustStore optional trust store holding the trusted Orchestrator certificates. May be <code>null</code>.
+     * @param trustStorePassword optional password of the provided <code>trustStore</code>. May be <code>null</code>.
+     * @param certFingerprint optional SHA-256 fingerprint of the pinned Orchestrator certificate. May be <code>null</code>.
+     * If neither a trust store nor a fingerprint are provided any server certificate will be accepted.
+     */
+    static SSLContext get(String server, File trustStore, String trustStorePassword, String certFingerprint) throws GeneralSecurityException, IOException
+    {
+        String key = server + "|" + (trustStore == null ? "" : trustStore.getAbsolutePath()) + "|" + (certFingerprint == null ? "" : normalizeFingerprint(certFingerprint));
+        SSLContext context = CONTEXTS.get(key);
+        if (context == null)
+        {
+            context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { createTrustManager(trustStore, trustStorePassword, certFingerprint) }, null);
+            SSLContext existing = CONTEXTS.putIfAbsent(key, context);
+            if (existing != null)
+            {
+                context = existing;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Returns the given fingerprint in lower case hex format without any separators, e.g. <code>AB:CD:..</code> becomes <code>abcd..</code>.
+     */
+    static String normalizeFingerprint(String fingerprint)
+    {
+        return fingerprint.replaceAll("[\\s:]", "").toLowerCase();
+    }
+
+    /**
+     * Returns <code>true</code> if the given fingerprint is a valid SHA-256 fingerprint in hex format.
+     */
+    static boolean isValidFingerprint(String fingerprint)
+    {
+        return normalizeFingerprint(fingerprint).matches("[0-9a-f]{64}");
+    }
+
+    private static X509TrustManager createTrustManager(File trustStore, String trustStorePassword, String certFingerprint) throws GeneralSecurityException, IOException
+    {
+        X509TrustManager trustManager;
+        if (trustStore != null)
+        {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            InputStream in = new FileInputStream(trustStore);
+            try
+            {
+                keyStore.load(in, trustStorePassword == null ? null : trustStorePassword.toCharArray());
+            } finally
+            {
+                in.close();
+            }
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init(keyStore);
+            trustManager = (X509TrustManager) factory.getTrustManagers()[0];
+        }
+        else
+        {
+            trustManager = null;
+        }
+
+        if (certFingerprint != null)
+        {
+            return new PinnedTrustManager(trustManager, normalizeFingerprint(certFingerprint));
+        }
+        else
+        {
+            // Without a trust store: allow Self-Signed Orchestrator Certificates
+            return new PinnedTrustManager(trustManager, null);
+        }
+    }
+
+    // Trusts the server certificate if it matches the pinned SHA-256 fingerprint and the optional delegate trust manager accepts it.
+    // If neither a fingerprint nor a delegate are provided every certificate is trusted.
+    // The host name is never verified, as an extended trust manager this also holds for HTTP clients which verify it during the handshake.
+    private static class PinnedTrustManager extends X509ExtendedTrustManager
+    {
+        private final X509TrustManager delegate;
+        private final String fingerprint;
+
+        PinnedTrustManager(X509TrustManager delegate, String fingerprint)
+        {
+            this.delegate = delegate;
+            this.fingerprint = fingerprint;
+        }
+
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException
+        {
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException
+        {
+            if (delegate != null)
+            {
+                delegate.checkServerTrusted(chain, authType);
+            }
+            if (fingerprint != null)
+            {
+                if (chain == null || chain.length == 0)
+                {
+                    throw new CertificateException("The Orchestrator server did not present a certificate.");
+                }
+                String actual = Digests.sha256(chain[0].getEncoded());
+                if (!fingerprint.equals(actual))
+                {
+                    throw new CertificateException("The Orchestrator server certificate fingerprint '" + actual + "' does not match the pinned fingerprint '" + fingerprint + "'.");
+                }
+            }
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException
+        {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException
+        {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException
+        {
+            checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException
+        {
+            checkServerTrusted(chain, authType);
+        }
+
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return delegate == null ? new X509Certificate[0] : delegate.getAcceptedIssuers();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo which evaluates the deployment history recorded by the <code>deployplugin</code> goal. For each server and plug-in
+ * the median (p50) and 95th percentile (p95) of the duration of each phase, of the bundle size and of the upload throughput
+ * are logged, and runs which regressed past <code>o11nRegressionThreshold</code> compared to the runs before them are flagged.
+ * Does not require a Maven project.
+ *
+ * @author Robert Ruf
+ */
+@Mojo(name = "stats", requiresProject = false, threadSafe = true)
+public class StatsPlugin extends AbstractMojo
+{
+    // A run is only compared to the runs before it once there are at least this many of them
+    private static final int MIN_BASELINE_RUNS = 3;
+    // Phases faster than this are never flagged, the noise of the network and the JVM outweighs the change
+    private static final long MIN_REGRESSION_MILLIS = 100;
+
+    @Parameter(defaultValue = "${user.home}/.o11n-deploy/history.jsonl", property = "deployplugin.historyfile", required = false)
+    /**
+     * The deployment history file written by the <code>deployplugin</code> goal.
+     */
+    private File o11nHistoryFile;
+    @Parameter(property = "deployplugin.server", required = false)
+    /**
+     * Optional VMware Orchestrator server hostname or IP-address. If provided only the deployments to this server are evaluated.
+     */
+    private String o11nServer;
+    @Parameter(property = "deployplugin.plugin", required = false)
+    /**
+     * Optional part of the plug-in file name. If provided only the deployments of matching plug-ins are evaluated.
+     */
+    private String o11nPlugin;
+    @Parameter(defaultValue = "20", property = "deployplugin.statswindow", required = false)
+    /**
+     * Number of the latest successful runs per server and plug-in the percentiles are computed from. Each of these runs is
+     * compared to the median of up to this many runs before it.
+     */
+    private Integer o11nStatsWindow;
+    @Parameter(defaultValue = "50", property = "deployplugin.regressionthreshold", required = false)
+    /**
+     * Percentage by which a phase has to be slower, the bundle larger or the upload throughput lower than the median of the runs
+     * before for a run to be flagged as regressed.
+     */
+    private Integer o11nRegressionThreshold;
+    @Parameter(defaultValue = "false", property = "deployplugin.failonregression", required = false)
+    /**
+     * If set to <code>true</code> the goal fails if the latest run of any server and plug-in regressed, e.g. to stop a CI pipeline.
+     */
+    private boolean o11nFailOnRegression;
+
+    // A measure of a run compared over the history
+    private static final class Metric
+    {
+        private enum Type
+        {
+            DURATION, SIZE, THROUGHPUT;
+        }
+
+        private final String name;
+        private final String phase;
+        private final Type type;
+
+        private Metric(String name, String phase, Type type)
+        {
+            this.name = name;
+            this.phase = phase;
+            this.type = type;
+        }
+
+        // Returns the value of this metric for the given run or null if the run did not measure it
+        private Long valueOf(DeployHistory.Run run)
+        {
+            switch (type)
+            {
+            case SIZE:
+                return run.getPluginSize();
+            case THROUGHPUT:
+                Long bytes = run.getPhaseBytes().get(phase);
+                Long millis = run.getPhaseMillis().get(phase);
+                return bytes == null || bytes == 0 || millis == null || millis == 0 ? null : bytes * 1000 / millis;
+            default:
+                return phase == null ? run.getDurationMillis() : run.getPhaseMillis().get(phase);
+            }
+        }
+
+        // Returns true if the given value is worse than the given baseline by more than the given percentage
+        private boolean isRegression(long value, long baseline, int threshold)
+        {
+            switch (type)
+            {
+            case THROUGHPUT:
+                return value * (100 + threshold) < baseline * 100;
+            case DURATION:
+                return value - baseline >= MIN_REGRESSION_MILLIS && value * 100 > baseline * (100 + threshold);
+            default:
+                return value * 100 > baseline * (100 + threshold);
+            }
+        }
+
+        private String format(long value)
+        {
+            switch (type)
+            {
+            case SIZE:
+                return String.format("%.1f MB", value / (1024.0 * 1024.0));
+            case THROUGHPUT:
+                return String.format("%.1f MB/s", value / (1024.0 * 1024.0));
+            default:
+                return String.format("%.1f s", value / 1000.0);
+            }
+        }
+    }
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (o11nHistoryFile == null)
+        {
+            o11nHistoryFile = new File(System.getProperty("user.home"), ".o11n-deploy" + File.separator + "history.jsonl");
+        }
+        if (o11nStatsWindow == null || o11nStatsWindow < 1)
+        {
+            o11nStatsWindow = 20;
+        }
+        if (o11nRegressionThreshold == null || o11nRegressionThreshold < 0)
+        {
+            o11nRegressionThreshold = 50;
+        }
+
+        List<DeployHistory.Run> history;
+        try
+        {
+            history = DeployHistory.read(o11nHistoryFile);
+        } catch (IOException e)
+        {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.printStackTrace(pw);
+            throw new MojoExecutionException("Unable to read deployment history '" + o11nHistoryFile + "':\n" + sw.getBuffer().toString());
+        }
+
+        // Index the successful runs by server and plug-in, in the order they were recorded
+        Map<String, List<DeployHistory.Run>> runsByKey = new LinkedHashMap<String, List<DeployHistory.Run>>();
+        for (DeployHistory.Run run : history)
+        {
+            if (run.getResult() != DeployReport.Result.SUCCESS)
+            {
+                continue;
+            }
+            if (o11nServer != null && !o11nServer.isEmpty() && !o11nServer.equalsIgnoreCase(run.getServer()))
+            {
+                continue;
+            }
+            if (o11nPlugin != null && !o11nPlugin.isEmpty() && !run.getPlugin().contains(o11nPlugin))
+            {
+                continue;
+            }
+            List<DeployHistory.Run> runs = runsByKey.get(run.getKey());
+            if (runs == null)
+            {
+                runs = new ArrayList<DeployHistory.Run>();
+                runsByKey.put(run.getKey(), runs);
+            }
+            runs.add(run);
+        }
+        if (runsByKey.isEmpty())
+        {
+            getLog().info("No successful deployments recorded in '" + o11nHistoryFile + "'.");
+            return;
+        }
+
+        int regressions = 0;
+        List<String> latestRegressed = new ArrayList<String>();
+        for (List<DeployHistory.Run> runs : runsByKey.values())
+        {
+            int regressed = logStats(runs);
+            regressions += regressed;
+            if (regressed > 0 && isRegressed(runs, runs.size() - 1, metricsOf(runs)))
+            {
+                latestRegressed.add(runs.get(runs.size() - 1).getKey());
+            }
+        }
+        getLog().info(regressions + " regressed run(s) found, " + latestRegressed.size() + " of " + runsByKey.size() + " latest run(s) regressed.");
+        if (o11nFailOnRegression && !latestRegressed.isEmpty())
+        {
+            throw new MojoFailureException("The latest deployment regressed by more than " + o11nRegressionThreshold + "% for " + latestRegressed + ".");
+        }
+    }
+
+    // Logs the percentiles of each metric of the given runs of one server and plug-in and the regressed runs of the window.
+    // Returns the number of regressed runs.
+    private int logStats(List<DeployHistory.Run> runs)
+    {
+        DeployHistory.Run latest = runs.get(runs.size() - 1);
+        int first = Math.max(0, runs.size() - o11nStatsWindow);
+        List<Metric> metrics = metricsOf(runs);
+
+        getLog().info("Deployment history of '" + latest.getPlugin() + "' on '" + latest.getServer() + "' (last " + (runs.size() - first) + " of " + runs.size() + " successful run(s)):");
+        getLog().info(String.format("  %-28s %12s %12s %12s %12s", "Metric", "p50", "p95", "Latest", "Baseline"));
+        for (Metric metric : metrics)
+        {
+            List<Long> values = valuesOf(metric, runs, first, runs.size());
+            if (values.isEmpty())
+            {
+                continue;
+            }
+            Long value = metric.valueOf(latest);
+            Long baseline = baselineOf(metric, runs, runs.size() - 1);
+            boolean regressed = value != null && baseline != null && metric.isRegression(value, baseline, o11nRegressionThreshold);
+            getLog().info(String.format("  %-28s %12s %12s %12s %12s%s", metric.name, metric.format(percentile(values, 50)), metric.format(percentile(values, 95)),
+                    value == null ? "-" : metric.format(value), baseline == null ? "-" : metric.format(baseline), regressed ? "  REGRESSED" : ""));
+        }
+
+        int regressed = 0;
+        for (int i = first; i < runs.size(); i++)
+        {
+            if (isRegressed(runs, i, metrics))
+            {
+                regressed++;
+            }
+        }
+        if (regressed > 0)
+        {
+            getLog().warn(regressed + " of the last " + (runs.size() - first) + " run(s) regressed by more than " + o11nRegressionThreshold + "%:");
+            for (int i = first; i < runs.size(); i++)
+            {
+                StringBuilder changes = new StringBuilder();
+                for (Metric metric : metrics)
+                {
+                    Long value = metric.valueOf(runs.get(i));
+                    Long baseline = baselineOf(metric, runs, i);
+                    if (value != null && baseline != null && metric.isRegression(value, baseline, o11nRegressionThreshold))
+                    {
+                        changes.append(changes.length() > 0 ? ", " : "").append(metric.name).append(' ').append(metric.format(value)).append(" (p50 ").append(metric.format(baseline)).append(')');
+                    }
+                }
+                if (changes.length() > 0)
+                {
+                    getLog().warn("  " + runs.get(i).getStartTime() + "  " + runs.get(i).getPlugin() + ": " + changes);
+                }
+            }
+        }
+        return regressed;
+    }
+
+    // Returns true if any metric of the run at the given index regressed compared to the runs before it.
+    private boolean isRegressed(List<DeployHistory.Run> runs, int index, List<Metric> metrics)
+    {
+        for (Metric metric : metrics)
+        {
+            Long value = metric.valueOf(runs.get(index));
+            Long baseline = baselineOf(metric, runs, index);
+            if (value != null && baseline != null && metric.isRegression(value, baseline, o11nRegressionThreshold))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the median of the given metric over up to o11nStatsWindow runs before the given index,
+    // or null if there are not enough of them.
+    private Long baselineOf(Metric metric, List<DeployHistory.Run> runs, int index)
+    {
+        List<Long> values = valuesOf(metric, runs, Math.max(0, index - o11nStatsWindow), index);
+        return values.size() < MIN_BASELINE_RUNS ? null : percentile(values, 50);
+    }
+
+    // Returns the metrics measured by the given runs: the duration of each phase in the order they ran, the total duration,
+    // the bundle size and the throughput of each phase which sent data.
+    private static List<Metric> metricsOf(List<DeployHistory.Run> runs)
+    {
+        Map<String, Boolean> phases = new LinkedHashMap<String, Boolean>();
+        for (DeployHistory.Run run : runs)
+        {
+            for (Map.Entry<String, Long> phase : run.getPhaseBytes().entrySet())
+            {
+                Boolean sent = phases.get(phase.getKey());
+                phases.put(phase.getKey(), Boolean.TRUE.equals(sent) || phase.getValue() > 0);
+            }
+        }
+        List<Metric> metrics = new ArrayList<Metric>();
+        for (String phase : phases.keySet())
+        {
+            metrics.add(new Metric(phase, phase, Metric.Type.DURATION));
+        }
+        metrics.add(new Metric("total", null, Metric.Type.DURATION));
+        metrics.add(new Metric("bundle size", null, Metric.Type.SIZE));
+        for (Map.Entry<String, Boolean> phase : phases.entrySet())
+        {
+            if (phase.getValue())
+            {
+                metrics.add(new Metric(phase.getKey() + " throughput", phase.getKey(), Metric.Type.THROUGHPUT));
+            }
+        }
+        return metrics;
+    }
+
+    // Returns the values of the given metric of the runs from the given index (inclusive) to the given index (exclusive)
+    private static List<Long> valuesOf(Metric metric, List<DeployHistory.Run> runs, int from, int to)
+    {
+        List<Long> values = new ArrayList<Long>();
+        for (int i = from; i < to; i++)
+        {
+            Long value = metric.valueOf(runs.get(i));
+            if (value != null)
+            {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    // Returns the given percentile of the given values using the nearest-rank method
+    private static long percentile(List<Long> values, int percentile)
+    {
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+}
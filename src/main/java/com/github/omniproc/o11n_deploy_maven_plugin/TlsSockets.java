@@ -0,0 +1,106 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * TLS socket handling shared by the transports opening their own sockets: the disabled hostname verification and the counting
+ * of the connections opened and of their full and resumed handshakes, so the debug output can tell opened from reused
+ * connections.
+ *
+ * @author Robert Ruf
+ */
+final class TlsSockets
+{
+    // BEGIN -- Allow Hostname CN missmatch
+    static final HostnameVerifier DISABLED_HOSTNAME_VERIFICATION = new HostnameVerifier()
+    {
+        @Override
+        public boolean verify(String hostname, SSLSession session)
+        {
+            return true;
+        }
+    };
+    // END -- Allow Hostname CN missmatch
+
+    private final Log log;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger fullHandshakeCount = new AtomicInteger();
+    private final AtomicInteger resumedHandshakeCount = new AtomicInteger();
+
+    TlsSockets(Log log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * Counts a connection opened.
+     */
+    void connected()
+    {
+        connectionCount.incrementAndGet();
+    }
+
+    /**
+     * Counts and logs the handshake of the given socket once it has completed. To be called before the handshake starts.
+     */
+    void watchHandshake(SSLSocket socket)
+    {
+        // A resumed session was created before this handshake started, a full handshake creates a new one
+        final long handshakeStart = System.currentTimeMillis();
+        socket.addHandshakeCompletedListener(new HandshakeCompletedListener()
+        {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event)
+            {
+                SSLSession session = event.getSession();
+                boolean resumed = session.getCreationTime() < handshakeStart;
+                if (resumed)
+                {
+                    resumedHandshakeCount.incrementAndGet();
+                }
+                else
+                {
+                    fullHandshakeCount.incrementAndGet();
+                }
+                log.debug((resumed ? "Resumed" : "Full") + " TLS handshake with '" + session.getPeerHost() + ":" + session.getPeerPort() + "' using " + session.getProtocol() + " " + session.getCipherSuite() + ".");
+            }
+        });
+    }
+
+    /**
+     * Returns the number of connections opened and of full and resumed handshakes, as reported by
+     * {@link HttpTransport#getStatistics()}.
+     */
+    @Override
+    public String toString()
+    {
+        return connectionCount.get() + " connection(s) opened, " + fullHandshakeCount.get() + " full and " + resumedHandshakeCount.get() + " resumed TLS handshake(s)";
+    }
+}
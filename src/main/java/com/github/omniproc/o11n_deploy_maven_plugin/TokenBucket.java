@@ -0,0 +1,117 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Limits the rate of the plug-in uploads of a build to a fixed number of bytes per second.
+ * Callers reserve the bytes they are about to send and are delayed until the bucket has refilled enough, so concurrent
+ * uploads share the rate in the order they asked for it. A short burst of at most a tenth of a second's worth of bytes is
+ * let through after an idle period. One instance per rate is shared by all executions of a build, including the per-project
+ * sessions of a parallel build.
+ *
+ * @author Robert Ruf
+ */
+final class TokenBucket
+{
+    private static final long MIN_BURST_BYTES = 8192;
+
+    // Keyed by the execution request, which unlike the session is not cloned per project in parallel builds
+    private static final Map<Object, Map<Long, TokenBucket>> BUCKETS = new WeakHashMap<Object, Map<Long, TokenBucket>>();
+
+    private final long bytesPerSecond;
+    private final long capacity;
+    // Negative while callers wait for the bytes they reserved in advance
+    private double tokens;
+    private long refilledNanos;
+
+    /**
+     * @param bytesPerSecond the maximum rate, must be greater than 0.
+     */
+    TokenBucket(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = Math.max(bytesPerSecond / 10, MIN_BURST_BYTES);
+        this.tokens = capacity;
+        this.refilledNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the bucket of the given rate shared by all executions of the build the given session belongs to.
+     */
+    static TokenBucket get(MavenSession session, long bytesPerSecond)
+    {
+        synchronized (BUCKETS)
+        {
+            Map<Long, TokenBucket> buckets = BUCKETS.get(session.getRequest());
+            if (buckets == null)
+            {
+                buckets = new HashMap<Long, TokenBucket>();
+                BUCKETS.put(session.getRequest(), buckets);
+            }
+            TokenBucket bucket = buckets.get(bytesPerSecond);
+            if (bucket == null)
+            {
+                bucket = new TokenBucket(bytesPerSecond);
+                buckets.put(bytesPerSecond, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Reserves the given number of bytes and blocks until they may be sent.
+     */
+    void acquire(long bytes) throws InterruptedIOException
+    {
+        long waitNanos;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledNanos) * bytesPerSecond / 1e9);
+            refilledNanos = now;
+            tokens -= bytes;
+            waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / bytesPerSecond) : 0;
+        }
+        if (waitNanos > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling the upload.");
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Meters the request body of a plug-in upload while it is sent. The progress and the current throughput are logged in
+ * a fixed interval and the average throughput once the whole body was sent, so a slow link shows up in the log during the
+ * upload already. If a {@link TokenBucket} is given the body is throttled to its rate.
+ *
+ * @author Robert Ruf
+ */
+final class UploadMeter
+{
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final Log log;
+    private final long progressIntervalMillis;
+    private final TokenBucket limiter;
+
+    /**
+     * @param progressIntervalMillis the interval the progress is logged in, <code>0</code> to only log the average throughput at the end.
+     * @param limiter the bucket to throttle the upload with, <code>null</code> for an unlimited upload.
+     */
+    UploadMeter(Log log, long progressIntervalMillis, TokenBucket limiter)
+    {
+        this.log = log;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns a stream metering all bytes written to the given stream, the request body of the given length uploading the named file.
+     */
+    OutputStream wrap(OutputStream out, String name, long length)
+    {
+        final Transfer transfer = new Transfer(name, length);
+        return new FilterOutputStream(out)
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                transfer.reserve(1);
+                out.write(b);
+                transfer.sent(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                transfer.reserve(len);
+                out.write(b, off, len);
+                transfer.sent(len);
+            }
+        };
+    }
+
+    /**
+     * Returns a stream metering all bytes read from the given stream, the request body of the given length uploading the named file.
+     */
+    InputStream wrap(InputStream in, String name, long length)
+    {
+        final Transfer transfer = new Transfer(name, length);
+        return new FilterInputStream(in)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                transfer.reserve(1);
+                int b = in.read();
+                if (b >= 0)
+                {
+                    transfer.sent(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                int read = in.read(b, off, len);
+                if (read > 0)
+                {
+                    // The bytes are handed out as soon as they are paid for
+                    transfer.reserve(read);
+                    transfer.sent(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    // The progress of sending a single request body. A retried upload sends a new one.
+    private final class Transfer
+    {
+        private final String name;
+        private final long length;
+        private final long startMillis = System.currentTimeMillis();
+        private long sent = 0;
+        private long loggedMillis = startMillis;
+        private long loggedBytes = 0;
+
+        private Transfer(String name, long length)
+        {
+            this.name = name;
+            this.length = length;
+        }
+
+        private void reserve(long bytes) throws IOException
+        {
+            if (limiter != null)
+            {
+                limiter.acquire(bytes);
+            }
+        }
+
+        private void sent(long bytes)
+        {
+            sent += bytes;
+            long now = System.currentTimeMillis();
+            if (sent >= length)
+            {
+                long millis = Math.max(1, now - startMillis);
+                log.info(String.format("Uploaded '%s': %.1f MB in %.1f s, %.2f MB/s%s.", name, sent / MEGABYTE, millis / 1000.0, sent / MEGABYTE * 1000 / millis,
+                        limiter != null ? " (limited to " + String.format("%.2f", limiter.getBytesPerSecond() / MEGABYTE) + " MB/s)" : ""));
+            }
+            else if (progressIntervalMillis > 0 && now - loggedMillis >= progressIntervalMillis)
+            {
+                log.info(String.format("Uploading '%s': %.1f of %.1f MB (%d%%), %.2f MB/s.", name, sent / MEGABYTE, length / MEGABYTE, sent * 100 / length, (sent - loggedBytes) / MEGABYTE * 1000 / (now - loggedMillis)));
+                loggedMillis = now;
+                loggedBytes = sent;
+            }
+        }
+    }
+}
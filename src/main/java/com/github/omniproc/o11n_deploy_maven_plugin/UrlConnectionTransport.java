@@ -0,0 +1,220 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpRetryException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * {@link HttpTransport} on the <tt>HttpsURLConnection</tt> of the JDK. It needs no classes but the ones of the JDK,
+ * so it is considerably cheaper to bootstrap than the Jersey client.
+ * The JDK keeps idle connections alive in a JVM-wide cache, its size is set by the <tt>http.maxConnections</tt> system property.
+ *
+ * @author Robert Ruf
+ */
+final class UrlConnectionTransport implements HttpTransport
+{
+    private final Log log;
+    private final SSLSocketFactory socketFactory;
+    private final TlsSockets tls;
+
+    /**
+     * @param sslContext the SSL context to connect with, shared JVM-wide per server so TLS sessions can be resumed.
+     */
+    UrlConnectionTransport(Log log, SSLContext sslContext)
+    {
+        this.log = log;
+        this.tls = new TlsSockets(log);
+        this.socketFactory = new CountingSocketFactory(sslContext.getSocketFactory());
+    }
+
+    @Override
+    public Response send(Request request) throws IOException
+    {
+        HttpsURLConnection connection = (HttpsURLConnection) request.getUri().toURL().openConnection();
+        connection.setSSLSocketFactory(socketFactory);
+        connection.setHostnameVerifier(TlsSockets.DISABLED_HOSTNAME_VERIFICATION);
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(request.getTimeoutMillis());
+        connection.setReadTimeout(request.getTimeoutMillis());
+        connection.setRequestMethod(request.getMethod());
+        connection.setRequestProperty("Accept", request.getAccept());
+        connection.setRequestProperty("Authorization", request.getAuthorization());
+
+        try
+        {
+            if (request.getContentType() != null)
+            {
+                // The streaming mode sends the body as it is written, the plug-in file is streamed from disk so the heap usage
+                // does not depend on the bundle size. Streamed requests are never silently resent by the JDK, retries are up to the RetryPolicy.
+                connection.setRequestProperty("Content-Type", request.getContentType());
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(request.getContentLength());
+                OutputStream out = connection.getOutputStream();
+                try
+                {
+                    if (request.getMultipart() != null)
+                    {
+                        request.getMultipart().write(out);
+                    }
+                    else
+                    {
+                        out.write(request.getContent());
+                    }
+                } finally
+                {
+                    out.close();
+                }
+            }
+
+            int status;
+            try
+            {
+                status = connection.getResponseCode();
+            } catch (HttpRetryException ex)
+            {
+                // A streamed request answered with HTTP 401 can not be resent with credentials, the status is all we need
+                return new Response(ex.responseCode(), null);
+            }
+            // Read the entity to its end so the connection is kept alive for the next request
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(status, in != null ? readFully(in) : null);
+        } catch (IOException ex)
+        {
+            // The connection might be broken, don't hand it to the next request
+            connection.disconnect();
+            throw ex;
+        }
+    }
+
+    @Override
+    public String getStatistics()
+    {
+        return tls.toString();
+    }
+
+    @Override
+    public void close()
+    {
+        // Idle connections are kept in the JVM-wide keep-alive cache of the JDK which closes them after their timeout
+        log.debug("Releasing HttpsURLConnection transport.");
+    }
+
+    // Reads and closes the given stream
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } finally
+        {
+            in.close();
+        }
+    }
+
+    // Counts every socket opened and the kind of its TLS handshake so the debug output can tell opened from reused connections
+    private class CountingSocketFactory extends SSLSocketFactory
+    {
+        private final SSLSocketFactory delegate;
+
+        CountingSocketFactory(SSLSocketFactory delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites()
+        {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites()
+        {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException
+        {
+            return count(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException
+        {
+            return count(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException
+        {
+            return count(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+        {
+            return count(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException
+        {
+            return count(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+        {
+            return count(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private Socket count(Socket socket)
+        {
+            if (socket instanceof SSLSocket)
+            {
+                tls.connected();
+                tls.watchHandshake((SSLSocket) socket);
+            }
+            return socket;
+        }
+    }
+}
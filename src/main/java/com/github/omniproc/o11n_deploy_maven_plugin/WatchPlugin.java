@@ -0,0 +1,251 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.github.omniproc.o11n_deploy_maven_plugin.DeployPlugin.PluginType;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo which keeps running and deploys the configured VMware Orchestrator plug-in(s) each time the plug-in file changes,
+ * e.g. when it was rebuilt by another Maven build. All parameters of the <code>deployplugin</code> goal apply.
+ * A single client is kept open for all deployments, so Maven and the REST client are only started once and the pooled
+ * authenticated connections to the server are reused. Stop the goal with Ctrl+C.
+ *
+ * @author Robert Ruf
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchPlugin extends DeployPlugin
+{
+    @Parameter(defaultValue = "1000", property = "deployplugin.watchdebounce", required = false)
+    /**
+     * Time in milliseconds the plug-in file has to stay unchanged after it was written before it is deployed.
+     * The file is only deployed once it is a complete plug-in archive.
+     */
+    private Long o11nWatchDebounce;
+    @Parameter(defaultValue = "30000", property = "deployplugin.keepaliveinterval", required = false)
+    /**
+     * Interval in milliseconds in which an idle connection to the plug-in service is used, so it isn't closed by the server
+     * between two deployments.
+     */
+    private Long o11nKeepAliveInterval;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (o11nWatchDebounce == null || o11nWatchDebounce < 0)
+        {
+            o11nWatchDebounce = 1000L;
+        }
+        if (o11nKeepAliveInterval == null || o11nKeepAliveInterval < 1)
+        {
+            o11nKeepAliveInterval = 30000L;
+        }
+        configure();
+
+        Set<Path> files = new LinkedHashSet<Path>();
+        for (File file : getPluginFiles())
+        {
+            files.add(file.toPath().toAbsolutePath().normalize());
+        }
+        WatchService watcher = null;
+        try
+        {
+            watcher = FileSystems.getDefault().newWatchService();
+            openWarmClient();
+            watch(watcher, files);
+        } catch (IOException e)
+        {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw, true);
+            e.printStackTrace(pw);
+            throw new MojoExecutionException("Unable to watch the plug-in file(s). Exception:\n" + sw.getBuffer().toString());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            getLog().info("Stopped watching the plug-in file(s).");
+        } finally
+        {
+            closeWarmClient();
+            if (watcher != null)
+            {
+                try
+                {
+                    watcher.close();
+                } catch (IOException e)
+                {
+                    getLog().debug("Unable to close file watcher: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Deploys whenever one of the given files changed and settled, until interrupted
+    private void watch(WatchService watcher, Set<Path> files) throws IOException, InterruptedException, MojoExecutionException
+    {
+        // Directories of the watched files and their watch keys, null while a directory doesn't exist, e.g. after 'mvn clean'
+        Map<Path, WatchKey> directories = new LinkedHashMap<Path, WatchKey>();
+        for (Path file : files)
+        {
+            directories.put(file.getParent(), null);
+        }
+        // Changed files by the time of their last change
+        Map<Path, Long> changed = new HashMap<Path, Long>();
+        register(watcher, directories, files, changed);
+        changed.clear();
+        getLog().info("Watching " + files.size() + " plug-in file(s) for changes. Press Ctrl+C to stop.");
+
+        long lastActivity = System.currentTimeMillis();
+        while (true)
+        {
+            boolean waiting = !changed.isEmpty() || directories.containsValue(null);
+            WatchKey key = watcher.poll(waiting ? Math.max(1, o11nWatchDebounce) : o11nKeepAliveInterval, TimeUnit.MILLISECONDS);
+            while (key != null)
+            {
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    for (Path file : files)
+                    {
+                        // An overflow means events were lost, any file of the directory might have changed
+                        if (file.getParent().equals(directory) && (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())))
+                        {
+                            changed.put(file, System.currentTimeMillis());
+                        }
+                    }
+                }
+                if (!key.reset())
+                {
+                    getLog().info("Directory '" + directory + "' was removed. Waiting for it to be created again.");
+                    directories.put(directory, null);
+                }
+                key = watcher.poll();
+            }
+            register(watcher, directories, files, changed);
+
+            if (isSettled(changed))
+            {
+                long start = System.currentTimeMillis();
+                getLog().info("Plug-in file(s) changed. Deploying...");
+                try
+                {
+                    deploy();
+                    getLog().info(String.format("Deployment finished after %.1f s. Watching for further changes.", (System.currentTimeMillis() - start) / 1000.0));
+                } catch (MojoFailureException e)
+                {
+                    getLog().error("Deployment failed: " + e.getMessage());
+                    getLog().info("Watching for further changes.");
+                } catch (MojoExecutionException e)
+                {
+                    getLog().error("Deployment failed: " + e.getMessage());
+                    getLog().info("Watching for further changes.");
+                }
+                lastActivity = System.currentTimeMillis();
+            }
+            else if (changed.isEmpty() && System.currentTimeMillis() - lastActivity >= o11nKeepAliveInterval)
+            {
+                keepWarm();
+                lastActivity = System.currentTimeMillis();
+            }
+        }
+    }
+
+    // Watches all directories which exist (again). The files found in a directory watched again count as changed.
+    private void register(WatchService watcher, Map<Path, WatchKey> directories, Set<Path> files, Map<Path, Long> changed) throws IOException
+    {
+        for (Map.Entry<Path, WatchKey> entry : directories.entrySet())
+        {
+            if (entry.getValue() != null || !Files.isDirectory(entry.getKey()))
+            {
+                continue;
+            }
+            entry.setValue(entry.getKey().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+            getLog().debug("Watching directory '" + entry.getKey() + "'.");
+            for (Path file : files)
+            {
+                if (file.getParent().equals(entry.getKey()) && Files.isRegularFile(file))
+                {
+                    changed.put(file, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    // Returns true if all changed files were left unchanged for the debounce time and are complete plug-in archives.
+    // Files which are still incomplete after the debounce time are dropped until they change again.
+    private boolean isSettled(Map<Path, Long> changed)
+    {
+        if (changed.isEmpty())
+        {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        for (long lastChange : changed.values())
+        {
+            if (now - lastChange < o11nWatchDebounce)
+            {
+                return false;
+            }
+        }
+        for (Iterator<Path> it = changed.keySet().iterator(); it.hasNext();)
+        {
+            File file = it.next().toFile();
+            PluginType type = PluginArtifact.typeOf(file);
+            if (!file.isFile() || type == null)
+            {
+                getLog().debug("Plug-in file '" + file + "' does not exist (yet).");
+                it.remove();
+                continue;
+            }
+            try
+            {
+                PluginArchive.inspect(file, type);
+            } catch (IOException e)
+            {
+                getLog().warn("Plug-in file '" + file.getName() + "' is incomplete: " + e.getMessage() + " Waiting for the next change.");
+                it.remove();
+            }
+        }
+        boolean settled = !changed.isEmpty();
+        changed.clear();
+        return settled;
+    }
+}
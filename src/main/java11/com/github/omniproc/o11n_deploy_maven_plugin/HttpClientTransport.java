@@ -0,0 +1,157 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * {@link HttpTransport} on the <tt>java.net.http</tt> HTTP client of Java 11 and later.
+ * HTTP/2 is negotiated through ALPN if the server supports it, so concurrent requests, e.g. status polls and readiness
+ * probes or parallel uploads, are multiplexed over a single connection. Otherwise HTTP/1.1 keep-alive connections are used.
+ * Like the other transports it sends each request blocking on the calling thread, it does not use <code>sendAsync</code>.
+ * It is the only transport speaking HTTP/2 and needs no library beside the JDK. Only compiled for Java 11 and later, it is
+ * loaded reflectively by {@link OrchestratorClient}.
+ *
+ * @author Robert Ruf
+ */
+final class HttpClientTransport implements HttpTransport
+{
+    // The client applies a single connect timeout to all requests, the per request timeout only starts once connected
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Log log;
+    private final HttpClient client;
+    // Limits the requests outstanding at a time, the JDK client itself opens as many streams as the server allows
+    private final Semaphore permits;
+    private final AtomicInteger http2Count = new AtomicInteger();
+    private final AtomicInteger http11Count = new AtomicInteger();
+
+    /**
+     * @param sslContext the SSL context to connect with, shared JVM-wide per server so TLS sessions can be resumed.
+     * @param poolSize the maximum number of requests outstanding at a time.
+     */
+    HttpClientTransport(Log log, SSLContext sslContext, int poolSize)
+    {
+        this.log = log;
+        this.permits = new Semaphore(Math.max(1, poolSize), true);
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).sslContext(sslContext).followRedirects(HttpClient.Redirect.NEVER).connectTimeout(CONNECT_TIMEOUT).build();
+    }
+
+    @Override
+    public Response send(Request request) throws IOException
+    {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri()).header("Accept", request.getAccept()).header("Authorization", request.getAuthorization());
+        // The timeout of the JDK client caps the whole exchange, unlike the read timeout of the other transports which only
+        // applies while waiting for data. An upload takes as long as its size and the link require, so it is sent without one.
+        if (request.getTimeoutMillis() > 0 && request.getMultipart() == null)
+        {
+            builder.timeout(Duration.ofMillis(request.getTimeoutMillis()));
+        }
+        HttpRequest.BodyPublisher body;
+        if (request.getMultipart() != null)
+        {
+            // The multipart envelope and the plug-in file are streamed from disk with the exact content length
+            final MultipartFileEntity multipart = request.getMultipart();
+            body = HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>()
+            {
+                @Override
+                public InputStream get()
+                {
+                    try
+                    {
+                        return multipart.openStream();
+                    } catch (IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }), multipart.getContentLength());
+        }
+        else if (request.getContent() != null)
+        {
+            body = HttpRequest.BodyPublishers.ofByteArray(request.getContent());
+        }
+        else
+        {
+            body = HttpRequest.BodyPublishers.noBody();
+        }
+        if (request.getContentType() != null)
+        {
+            builder.header("Content-Type", request.getContentType());
+        }
+        builder.method(request.getMethod(), body);
+
+        try
+        {
+            permits.acquire();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send " + request + ".");
+        }
+        try
+        {
+            HttpResponse<byte[]> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.version() == HttpClient.Version.HTTP_2)
+            {
+                http2Count.incrementAndGet();
+            }
+            else
+            {
+                http11Count.incrementAndGet();
+            }
+            return new Response(response.statusCode(), response.body());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response to " + request + ".");
+        } finally
+        {
+            permits.release();
+        }
+    }
+
+    @Override
+    public String getStatistics()
+    {
+        return http2Count.get() + " HTTP/2 and " + http11Count.get() + " HTTP/1.1 response(s)";
+    }
+
+    @Override
+    public void close()
+    {
+        // The JDK client releases its connections once it is no longer referenced, it has no close before Java 21
+        log.debug("Releasing JDK HTTP client.");
+    }
+}
@@ -0,0 +1,277 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Repacks bundles with the {@link BundleOptimizer}: the content and order of the entries, nested archives included, has to be
+ * kept, and a bundle with entries far larger than the heap growth allowed has to be repacked through temporary files.
+ *
+ * @author Robert Ruf
+ */
+public class BundleOptimizerTest
+{
+    // Far below the size of the large entry, so holding it in memory would exceed it
+    private static final long MAX_HEAP_GROWTH = 48L << 20;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsContentAndOrder() throws IOException
+    {
+        Random random = new Random(42);
+        File bundle = folder.newFile("o11nplugin-test.dar");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle));
+        try
+        {
+            put(zip, "VSO-INF/vso.xml", "<module name=\"test\"/>".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 20; i++)
+            {
+                put(zip, "lib/lib" + i + ".jar", jar(random, 10));
+            }
+            put(zip, "resources/random.bin", bytes(random, 5 << 20));
+            put(zip, "resources/text.txt", text(random, 1 << 20));
+            put(zip, "build/notes.txt", "dropped".getBytes(StandardCharsets.UTF_8));
+        } finally
+        {
+            zip.close();
+        }
+
+        File target = new File(folder.getRoot(), "optimized.dar");
+        BundleOptimizer optimizer = new BundleOptimizer(Collections.singletonList("build/"), 9, 3);
+        optimizer.optimize(bundle, target);
+
+        List<String> expected = new ArrayList<String>(names(bundle));
+        expected.remove("build/notes.txt");
+        assertEquals(expected, names(target));
+        ZipFile original = new ZipFile(bundle);
+        ZipFile optimized = new ZipFile(target);
+        try
+        {
+            for (String name : expected)
+            {
+                byte[] content = readFully(optimized.getInputStream(optimized.getEntry(name)));
+                byte[] before = readFully(original.getInputStream(original.getEntry(name)));
+                if (name.endsWith(".jar"))
+                {
+                    assertEquals(name, contents(before), contents(content));
+                }
+                else
+                {
+                    assertArrayEquals(name, before, content);
+                }
+            }
+        } finally
+        {
+            original.close();
+            optimized.close();
+        }
+
+        // Repacking is deterministic, whatever the number of threads, and leaves no temporary files behind. A single thread
+        // has to repack the entries of nested archives itself while it waits for them.
+        byte[] first = Files.readAllBytes(target.toPath());
+        new BundleOptimizer(Collections.<String> emptyList(), 9, 1).optimize(target, target);
+        assertArrayEquals(first, Files.readAllBytes(target.toPath()));
+        assertEquals(Arrays.asList("o11nplugin-test.dar", "optimized.dar"), sorted(folder.getRoot().list()));
+    }
+
+    @Test
+    public void repacksLargeEntriesInBoundedMemory() throws Exception
+    {
+        Random random = new Random(42);
+        File bundle = folder.newFile("o11nplugin-large.dar");
+        byte[] block = new byte[1 << 20];
+        CRC32 zerosCrc = new CRC32();
+        CRC32 randomCrc = new CRC32();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle));
+        try
+        {
+            zip.putNextEntry(new ZipEntry("resources/zeros.bin"));
+            for (int i = 0; i < 160; i++)
+            {
+                zip.write(block);
+                zerosCrc.update(block);
+            }
+            zip.putNextEntry(new ZipEntry("resources/random.bin"));
+            for (int i = 0; i < 16; i++)
+            {
+                random.nextBytes(block);
+                zip.write(block);
+                randomCrc.update(block);
+            }
+        } finally
+        {
+            zip.close();
+        }
+
+        File target = new File(folder.getRoot(), "optimized.dar");
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+        try
+        {
+            new BundleOptimizer(Collections.<String> emptyList(), 6, 2).optimize(bundle, target);
+        } finally
+        {
+            heap.stop();
+        }
+
+        ZipFile optimized = new ZipFile(target);
+        try
+        {
+            assertEquals(160L << 20, optimized.getEntry("resources/zeros.bin").getSize());
+            assertEquals(zerosCrc.getValue(), crc(optimized.getInputStream(optimized.getEntry("resources/zeros.bin"))));
+            assertEquals(randomCrc.getValue(), crc(optimized.getInputStream(optimized.getEntry("resources/random.bin"))));
+        } finally
+        {
+            optimized.close();
+        }
+        assertTrue("Heap grew by " + heap.getGrowth() + " bytes", heap.getGrowth() < MAX_HEAP_GROWTH);
+        assertEquals(Arrays.asList("o11nplugin-large.dar", "optimized.dar"), sorted(folder.getRoot().list()));
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] content) throws IOException
+    {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+    }
+
+    // Returns a JAR of the given number of text classes
+    private static byte[] jar(Random random, int classes) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream jar = new ZipOutputStream(out);
+        for (int i = 0; i < classes; i++)
+        {
+            put(jar, "com/example/Class" + i + ".class", text(random, 4096));
+        }
+        jar.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(Random random, int length)
+    {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] text(Random random, int length)
+    {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length)
+        {
+            text.append("word").append(random.nextInt(100)).append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> names(File archive) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile(archive);
+        try
+        {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();)
+            {
+                names.add(e.nextElement().getName());
+            }
+        } finally
+        {
+            zip.close();
+        }
+        return names;
+    }
+
+    // Returns the names and CRCs of the entries of the given archive in their order
+    private static List<String> contents(byte[] archive) throws IOException
+    {
+        List<String> contents = new ArrayList<String>();
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive));
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+        {
+            contents.add(entry.getName() + ":" + crc(in));
+        }
+        return contents;
+    }
+
+    // Returns the CRC of the given stream, without closing it
+    private static long crc(InputStream in) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+        {
+            crc.update(buffer, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally
+        {
+            in.close();
+        }
+    }
+
+    private static List<String> sorted(String[] names)
+    {
+        List<String> sorted = new ArrayList<String>(Arrays.asList(names));
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,257 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the complete <code>deployplugin</code> goal against the {@link OrchestratorStub}: upload, restart, waiting for the
+ * service to come back and for the pending configuration to be applied, also with failing requests.
+ *
+ * @author Robert Ruf
+ */
+public class DeployPluginTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private OrchestratorStub stub;
+    private File directory;
+
+    @Before
+    public void createPlugin() throws IOException
+    {
+        directory = folder.newFolder("target");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(directory, "o11nplugin-test.dar")));
+        try
+        {
+            out.putNextEntry(new ZipEntry("VSO-INF/vso.xml"));
+            out.write("<module name=\"test\" version=\"1.0.0\"/>".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        } finally
+        {
+            out.close();
+        }
+    }
+
+    @After
+    public void stopStub()
+    {
+        if (stub != null)
+        {
+            stub.stop();
+        }
+    }
+
+    @Test
+    public void deploysAndRestartsOnce() throws Exception
+    {
+        startStub(200, 0, 0);
+        newMojo().execute();
+
+        assertEquals(1, stub.getUploadCount());
+        assertEquals(1, stub.getRestartCount());
+        assertTrue(stub.isServing());
+        assertTrue(readReport().contains("\"result\":\"SUCCESS\""));
+    }
+
+    @Test
+    public void waitsWhileTheStatusIsNull() throws Exception
+    {
+        startStub(1500, 0, 0);
+        stub.setStopDelayMillis(300);
+        long start = System.currentTimeMillis();
+        newMojo().execute();
+
+        assertTrue("Restarting status answered " + stub.getRestartingStatusCount() + " time(s)", stub.getRestartingStatusCount() > 0);
+        assertTrue(System.currentTimeMillis() - start >= 1800);
+        assertTrue(stub.isServing());
+    }
+
+    @Test
+    public void waitsForTheFingerprintsToConverge() throws Exception
+    {
+        startStub(200, 0, 1500);
+        newMojo().execute();
+
+        OrchestratorClient client = stub.newClient(1);
+        try
+        {
+            Map<OrchestratorClient.ConfigSlot, String> configs = client.getConfigFingerprint();
+            assertEquals(configs.get(OrchestratorClient.ConfigSlot.PENDING), configs.get(OrchestratorClient.ConfigSlot.ACTIVE));
+        } finally
+        {
+            client.close();
+        }
+    }
+
+    @Test
+    public void retriesRequestsAnsweredWith503() throws Exception
+    {
+        startStub(200, 0, 0);
+        stub.failNext(2);
+        newMojo().execute();
+
+        assertEquals(2, stub.getFailureCount());
+        assertEquals(1, stub.getUploadCount());
+        assertEquals(1, stub.getRestartCount());
+        assertTrue(readReport().contains("\"result\":\"SUCCESS\""));
+    }
+
+    @Test
+    public void retriesDroppedConnections() throws Exception
+    {
+        startStub(200, 0, 0);
+        stub.dropNext(2);
+        newMojo().execute();
+
+        assertEquals(2, stub.getFailureCount());
+        assertEquals(1, stub.getUploadCount());
+        assertEquals(1, stub.getRestartCount());
+        assertTrue(readReport().contains("\"result\":\"SUCCESS\""));
+    }
+
+    @Test
+    public void keepsPollingWhileTheServiceIsUnreachable() throws Exception
+    {
+        startStub(1500, 0, 0);
+        stub.setUnreachableWhileRestarting(true);
+        DeployPlugin mojo = newMojo();
+        // Retried requests failing throughout the restart would open the breaker and fail the wait long before its deadline
+        set(mojo, "o11nMaxRetries", 1);
+        set(mojo, "o11nCircuitBreakerThreshold", 2);
+        set(mojo, "o11nCircuitBreakerDelay", 60000L);
+        long start = System.currentTimeMillis();
+        mojo.execute();
+
+        assertTrue(System.currentTimeMillis() - start >= 1500);
+        assertEquals(1, stub.getRestartCount());
+        assertTrue(stub.isServing());
+        assertTrue(readReport().contains("\"result\":\"SUCCESS\""));
+    }
+
+    @Test
+    public void waitsWhileThePluginServiceAnswersAClientError() throws Exception
+    {
+        startStub(200, 800, 0);
+        stub.setStartupStatus(404);
+        newMojo().execute();
+
+        assertTrue(stub.isServing());
+        assertTrue(readReport().contains("\"result\":\"SUCCESS\""));
+    }
+
+    @Test
+    public void failsOnAClientErrorAnsweredUntilTheReadinessTimeout() throws Exception
+    {
+        startStub(200, 0, 0);
+        DeployPlugin mojo = newMojo();
+        set(mojo, "o11nReadinessPath", "/vco/unknown");
+        set(mojo, "o11nRestartTimeout", 1000L);
+        long start = System.currentTimeMillis();
+        try
+        {
+            mojo.execute();
+            fail("Deployment succeeded with a readiness path answered with HTTP 404");
+        } catch (MojoFailureException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("o11nReadinessPath"));
+        }
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    private void startStub(long restartMillis, long startupMillis, long applyMillis) throws Exception
+    {
+        stub = new OrchestratorStub(restartMillis);
+        stub.setStartupMillis(startupMillis);
+        stub.setApplyMillis(applyMillis);
+        stub.start();
+    }
+
+    // Returns a goal configured the way Maven injects the POM configuration, deploying the test plug-in to the stub
+    private DeployPlugin newMojo() throws Exception
+    {
+        Build build = new Build();
+        build.setDirectory(directory.getAbsolutePath());
+        build.setFinalName("o11nplugin-test");
+        Model model = new Model();
+        model.setBuild(build);
+
+        DeployPlugin mojo = new DeployPlugin();
+        mojo.setLog(new QuietLog());
+        set(mojo, "project", new MavenProject(model));
+        set(mojo, "o11nServer", "127.0.0.1");
+        set(mojo, "o11nServicePort", stub.getPort());
+        set(mojo, "o11nConfigPort", stub.getPort());
+        set(mojo, "o11nPluginServiceUser", "vcoadmin");
+        set(mojo, "o11nPluginServicePassword", "vcoadmin");
+        set(mojo, "o11nConfigServiceUser", "root");
+        set(mojo, "o11nConfigServicePassword", "vmware");
+        set(mojo, "o11nPluginType", DeployPlugin.PluginType.DAR);
+        set(mojo, "o11nOverwrite", true);
+        set(mojo, "o11nRestartService", true);
+        set(mojo, "o11nWaitForPendingChanges", true);
+        set(mojo, "o11nWaitForReadiness", true);
+        set(mojo, "o11nDeletePackage", true);
+        set(mojo, "o11nPackageName", "com.example.test");
+        set(mojo, "o11nPollInterval", 50L);
+        set(mojo, "o11nRetryBackoff", 10L);
+        set(mojo, "o11nReportFile", new File(directory, "o11n-deploy-report.json"));
+        set(mojo, "o11nStateFile", new File(directory, "state.properties"));
+        set(mojo, "o11nCacheDirectory", new File(directory, "cache"));
+        set(mojo, "o11nHistoryFile", new File(directory, "history.jsonl"));
+        return mojo;
+    }
+
+    private String readReport() throws IOException
+    {
+        return new String(Files.readAllBytes(new File(directory, "o11n-deploy-report.json").toPath()), StandardCharsets.UTF_8);
+    }
+
+    // Sets a Mojo parameter the way Maven does when injecting the POM configuration
+    private static void set(DeployPlugin mojo, String name, Object value) throws ReflectiveOperationException
+    {
+        Field field = DeployPlugin.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+}
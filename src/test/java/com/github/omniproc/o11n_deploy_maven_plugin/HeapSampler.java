@@ -0,0 +1,117 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+/**
+ * Records the largest growth of the used heap over the one at creation, either sampled about every 16 MB of streamed data or
+ * periodically by a thread of its own while an upload runs elsewhere.
+ *
+ * @author Robert Ruf
+ */
+final class HeapSampler
+{
+    private final long baseline;
+    private long nextSample = 0;
+    private long growth = 0;
+    private Thread sampler = null;
+
+    HeapSampler()
+    {
+        System.gc();
+        baseline = usedHeap();
+    }
+
+    /**
+     * Samples the used heap if about 16 MB were streamed since the last sample.
+     */
+    synchronized void sample(long streamed)
+    {
+        if (streamed >= nextSample)
+        {
+            sample();
+            nextSample = streamed + (16L << 20);
+        }
+    }
+
+    /**
+     * Samples the used heap.
+     */
+    synchronized void sample()
+    {
+        growth = Math.max(growth, usedHeap() - baseline);
+    }
+
+    /**
+     * Samples the used heap every 10 ms on a daemon thread until {@link #stop()} is called.
+     */
+    synchronized void start()
+    {
+        sampler = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    sample();
+                    try
+                    {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+        }, "heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops the sampling thread and takes a last sample.
+     */
+    void stop() throws InterruptedException
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            thread = sampler;
+            sampler = null;
+        }
+        if (thread != null)
+        {
+            thread.interrupt();
+            thread.join();
+        }
+        sample();
+    }
+
+    synchronized long getGrowth()
+    {
+        return growth;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
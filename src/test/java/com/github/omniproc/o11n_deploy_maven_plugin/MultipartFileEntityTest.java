@@ -0,0 +1,130 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Streams a sparse plug-in file of 1 GB through {@link MultipartFileEntity} to check that the file is never loaded into memory.
+ *
+ * @author Robert Ruf
+ */
+public class MultipartFileEntityTest
+{
+    private static final long FILE_SIZE = 1L << 30;
+    // Far below the file size, so buffering the file would exceed it
+    private static final long MAX_HEAP_GROWTH = 64L << 20;
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static File file;
+
+    @BeforeClass
+    public static void createFile() throws IOException
+    {
+        file = FOLDER.newFile("large.dar");
+        // Sparse on most file systems, so no disk space is allocated
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.setLength(FILE_SIZE);
+        } finally
+        {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void writeStreamsLargeFileInBoundedMemory() throws IOException
+    {
+        MultipartFileEntity entity = OrchestratorClient.newUploadEntity(DeployPlugin.PluginType.DAR, true, file);
+        HeapSampler heap = new HeapSampler();
+        CountingOutputStream out = new CountingOutputStream(heap);
+        entity.write(out);
+
+        assertEquals(entity.getContentLength(), out.count);
+        assertTrue(entity.getContentLength() > FILE_SIZE);
+        assertTrue("Heap grew by " + heap.getGrowth() + " bytes", heap.getGrowth() < MAX_HEAP_GROWTH);
+    }
+
+    @Test
+    public void openStreamStreamsLargeFileInBoundedMemory() throws IOException
+    {
+        MultipartFileEntity entity = OrchestratorClient.newUploadEntity(DeployPlugin.PluginType.DAR, true, file);
+        HeapSampler heap = new HeapSampler();
+        long count = 0;
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = entity.openStream();
+        try
+        {
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+            {
+                count += read;
+                heap.sample(count);
+            }
+        } finally
+        {
+            in.close();
+        }
+
+        assertEquals(entity.getContentLength(), count);
+        assertTrue("Heap grew by " + heap.getGrowth() + " bytes", heap.getGrowth() < MAX_HEAP_GROWTH);
+    }
+
+    // Discards the written bytes, only counting them
+    private static final class CountingOutputStream extends OutputStream
+    {
+        private final HeapSampler heap;
+        private long count = 0;
+
+        CountingOutputStream(HeapSampler heap)
+        {
+            this.heap = heap;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            count++;
+            heap.sample(count);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            count += len;
+            heap.sample(count);
+        }
+    }
+}
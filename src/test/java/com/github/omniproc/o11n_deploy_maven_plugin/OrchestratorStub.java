@@ -0,0 +1,588 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * An in-process stand-in for the REST APIs of a VMware Orchestrator appliance, served over TLS on the loopback interface.
+ * Both the plug-in service and the Control Center API are served on the same port. Uploading a plug-in creates a new
+ * pending configuration. Restarting the service makes the Control Center report a <code>null</code> status, after an
+ * optional <code>stopDelayMillis</code>, for <code>restartMillis</code>, after which the status is <code>RUNNING</code>
+ * again. The plug-in service answers with HTTP 503 until another <code>startupMillis</code> have passed. The pending configuration becomes active
+ * <code>applyMillis</code> after the restart, so the active and pending fingerprints converge just like they do on a
+ * real appliance.
+ * <p>
+ * Network conditions can be simulated by adding a fixed latency to each request, capping the bandwidth request bodies
+ * are read with and failing a share of the requests, or a given number of the next ones, either with a HTTP 503 or by
+ * dropping the connection.
+ *
+ * @author Robert Ruf
+ */
+final class OrchestratorStub
+{
+    private static final String KEYSTORE = "/orchestrator-stub.p12";
+    private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+    private final long restartMillis;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private final AtomicInteger restartCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final AtomicInteger restartingStatusCount = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    private final AtomicInteger injectedResets = new AtomicInteger();
+
+    private volatile long applyMillis = 0;
+    private volatile long startupMillis = 0;
+    private volatile int startupStatus = 503;
+    private volatile long stopDelayMillis = 0;
+    private volatile long latencyMillis = 0;
+    private volatile long bytesPerSecond = 0;
+    private volatile double errorRate = 0;
+    private volatile double resetRate = 0;
+    private volatile boolean unreachableWhileRestarting = false;
+
+    private HttpsServer server = null;
+    private ExecutorService executor = null;
+
+    private String activeFingerprint = newFingerprint();
+    private String pendingFingerprint = activeFingerprint;
+    private long restartStart = 0;
+    private long restartCompletion = 0;
+    private long startupCompletion = 0;
+    private long applyCompletion = 0;
+
+    /**
+     * @param restartMillis the time a service restart takes.
+     */
+    OrchestratorStub(long restartMillis)
+    {
+        this.restartMillis = restartMillis;
+    }
+
+    /**
+     * Sets the time it takes to apply the pending configuration once a restart has completed. Defaults to <code>0</code>.
+     */
+    void setApplyMillis(long applyMillis)
+    {
+        this.applyMillis = applyMillis;
+    }
+
+    /**
+     * Sets the time the plug-in service stays unavailable once the Control Center reports the restart as completed.
+     * Defaults to <code>0</code>.
+     */
+    void setStartupMillis(long startupMillis)
+    {
+        this.startupMillis = startupMillis;
+    }
+
+    /**
+     * Sets the HTTP status the plug-in service answers with while it starts, e.g. <code>404</code> or <code>401</code> as
+     * answered by a real appliance before its REST API and authentication are deployed. Defaults to <code>503</code>.
+     */
+    void setStartupStatus(int startupStatus)
+    {
+        this.startupStatus = startupStatus;
+    }
+
+    /**
+     * Sets the time the service keeps running after a restart was requested before it goes down, as a real appliance takes
+     * a moment to stop its services. Defaults to <code>0</code>.
+     */
+    void setStopDelayMillis(long stopDelayMillis)
+    {
+        this.stopDelayMillis = stopDelayMillis;
+    }
+
+    /**
+     * Sets the delay added before each response, simulating the round trip time of a WAN link. Defaults to <code>0</code>.
+     */
+    void setLatencyMillis(long latencyMillis)
+    {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Caps the rate request bodies are read with. A value of <code>0</code>, the default, disables the cap.
+     */
+    void setBytesPerSecond(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Sets the share of requests, between <code>0</code> and <code>1</code>, answered with HTTP 503. Defaults to <code>0</code>.
+     */
+    void setErrorRate(double errorRate)
+    {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets the share of requests, between <code>0</code> and <code>1</code>, answered by dropping the connection without
+     * a response. Defaults to <code>0</code>.
+     */
+    void setResetRate(double resetRate)
+    {
+        this.resetRate = resetRate;
+    }
+
+    /**
+     * Drops the connection of every request while a restart has not completed, as an appliance rebooting as a whole does
+     * instead of only answering a <code>null</code> status. Defaults to <code>false</code>.
+     */
+    void setUnreachableWhileRestarting(boolean unreachableWhileRestarting)
+    {
+        this.unreachableWhileRestarting = unreachableWhileRestarting;
+    }
+
+    /**
+     * Answers the next <code>count</code> requests with HTTP 503, in addition to the ones failed by the error rate.
+     */
+    void failNext(int count)
+    {
+        injectedErrors.addAndGet(count);
+    }
+
+    /**
+     * Drops the connection of the next <code>count</code> requests without a response, in addition to the ones dropped by the
+     * reset rate.
+     */
+    void dropNext(int count)
+    {
+        injectedResets.addAndGet(count);
+    }
+
+    /**
+     * Starts serving on an ephemeral loopback port.
+     */
+    void start() throws IOException, GeneralSecurityException
+    {
+        // Send small responses immediately instead of waiting for the delayed ACK of the previous segment
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(createSslContext()));
+        server.createContext("/vco/api/plugins", new StubHandler(true)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                if ("POST".equals(exchange.getRequestMethod()))
+                {
+                    drain(exchange);
+                    uploadCount.incrementAndGet();
+                    synchronized (OrchestratorStub.this)
+                    {
+                        pendingFingerprint = newFingerprint();
+                    }
+                    respond(exchange, 201, null);
+                }
+                else
+                {
+                    drain(exchange);
+                    respond(exchange, 200, "{\"link\":[{\"attributes\":[{\"name\":\"name\",\"value\":\"o11nplugin-stub\"},{\"name\":\"version\",\"value\":\"" + getActiveFingerprint() + "\"}]}],\"total\":1}");
+                }
+            }
+        });
+        // The API root answers the connection warm-up, and any other plug-in service request, without an entity
+        server.createContext("/vco/api/", new StubHandler(true)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                drain(exchange);
+                respond(exchange, 200, null);
+            }
+        });
+        server.createContext("/vco/api/about", new StubHandler(true)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                drain(exchange);
+                respond(exchange, 200, "{\"version\":\"7.3.0\",\"build-number\":\"5481809\",\"api-version\":\"2.0\"}");
+            }
+        });
+        server.createContext("/vco/api/packages/", new StubHandler(true)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                drain(exchange);
+                respond(exchange, 200, null);
+            }
+        });
+        server.createContext("/vco-controlcenter/api/server/status/restart", new StubHandler(false)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                drain(exchange);
+                restartCount.incrementAndGet();
+                synchronized (OrchestratorStub.this)
+                {
+                    // Restarting applies the pending configuration, a restart without pending changes completes immediately
+                    getActiveFingerprint();
+                    restartStart = System.currentTimeMillis() + stopDelayMillis;
+                    restartCompletion = restartStart + restartMillis;
+                    startupCompletion = restartCompletion + startupMillis;
+                    applyCompletion = restartCompletion + applyMillis;
+                }
+                respond(exchange, 200, "{\"currentStatus\":null}");
+            }
+        });
+        server.createContext("/vco-controlcenter/api/server/status", new StubHandler(false)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                drain(exchange);
+                if (isRestarting())
+                {
+                    restartingStatusCount.incrementAndGet();
+                    respond(exchange, 200, "{\"currentStatus\":null}");
+                }
+                else
+                {
+                    respond(exchange, 200, "{\"currentStatus\":\"RUNNING\"}");
+                }
+            }
+        });
+        server.createContext("/vco-controlcenter/api/server/config-version", new StubHandler(false)
+        {
+            @Override
+            void serve(HttpExchange exchange) throws IOException
+            {
+                drain(exchange);
+                String active;
+                String pending;
+                synchronized (OrchestratorStub.this)
+                {
+                    active = getActiveFingerprint();
+                    pending = pendingFingerprint;
+                }
+                respond(exchange, 200, "{\"activeConfigurationFingerprint\":\"" + active + "\",\"pendingConfigurationFingerprint\":\"" + pending + "\"}");
+            }
+        });
+
+        executor = Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "orchestrator-stub");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stops serving and closes all connections.
+     */
+    void stop()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Returns the port the stub listens on.
+     */
+    int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns a new client talking to this stub using a connection pool of the given size.
+     */
+    OrchestratorClient newClient(int poolSize)
+    {
+        return newClient(poolSize, DeployPlugin.Transport.URL_CONNECTION);
+    }
+
+    /**
+     * Returns a new client talking to this stub through the given transport using a connection pool of the given size.
+     */
+    OrchestratorClient newClient(int poolSize, DeployPlugin.Transport transport)
+    {
+        QuietLog log = new QuietLog();
+        return new OrchestratorClient(log, "127.0.0.1", getPort(), getPort(), "vcoadmin", "vcoadmin", "root", "vmware", poolSize, null, null, null, transport, RetryPolicy.none(log), new UploadMeter(log, 0, null));
+    }
+
+    /**
+     * Returns the number of request body bytes received so far.
+     */
+    long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Returns the number of requests received so far, including failed ones.
+     */
+    int getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of successful plug-in uploads so far.
+     */
+    int getUploadCount()
+    {
+        return uploadCount.get();
+    }
+
+    /**
+     * Returns the number of service restarts triggered so far.
+     */
+    int getRestartCount()
+    {
+        return restartCount.get();
+    }
+
+    /**
+     * Returns the number of status requests answered with a <code>null</code> status while restarting so far.
+     */
+    int getRestartingStatusCount()
+    {
+        return restartingStatusCount.get();
+    }
+
+    /**
+     * Returns the number of requests failed by the error or reset injection so far.
+     */
+    int getFailureCount()
+    {
+        return failureCount.get();
+    }
+
+    /**
+     * Returns true if the service serves requests, i.e. it is neither restarting nor waiting for its plug-in service to start.
+     */
+    boolean isServing()
+    {
+        return !isRestarting() && !isStarting();
+    }
+
+    // Returns true while a triggered restart has not completed yet
+    private synchronized boolean isRestarting()
+    {
+        long now = System.currentTimeMillis();
+        return now >= restartStart && now < restartCompletion;
+    }
+
+    // Returns true while the plug-in service is not available yet after a restart
+    private synchronized boolean isStarting()
+    {
+        long now = System.currentTimeMillis();
+        return now >= restartStart && now < startupCompletion;
+    }
+
+    // The pending configuration becomes active once a triggered restart has completed and the configuration was applied
+    private synchronized String getActiveFingerprint()
+    {
+        if (applyCompletion != 0 && System.currentTimeMillis() >= applyCompletion)
+        {
+            activeFingerprint = pendingFingerprint;
+            restartCompletion = 0;
+            applyCompletion = 0;
+        }
+        return activeFingerprint;
+    }
+
+    // Reads the request body to its end so the connection can be kept alive, at most at the configured bandwidth
+    private void drain(HttpExchange exchange) throws IOException
+    {
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[64 * 1024];
+        long start = System.nanoTime();
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            bytesReceived.addAndGet(read);
+            total += read;
+            long cap = bytesPerSecond;
+            if (cap > 0)
+            {
+                long due = total * 1000 / cap - (System.nanoTime() - start) / 1000000;
+                if (due > 0)
+                {
+                    sleep(due);
+                }
+            }
+        }
+        in.close();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException
+    {
+        if (json == null)
+        {
+            exchange.sendResponseHeaders(status, -1);
+        }
+        else
+        {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        exchange.close();
+    }
+
+    private static void sleep(long millis) throws IOException
+    {
+        try
+        {
+            Thread.sleep(millis);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while simulating network conditions.", e);
+        }
+    }
+
+    // Consumes one of the given injected faults, returns false if none is left
+    private static boolean take(AtomicInteger faults)
+    {
+        while (true)
+        {
+            int left = faults.get();
+            if (left <= 0)
+            {
+                return false;
+            }
+            if (faults.compareAndSet(left, left - 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    private static String newFingerprint()
+    {
+        return UUID.randomUUID().toString();
+    }
+
+    private static SSLContext createSslContext() throws IOException, GeneralSecurityException
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = OrchestratorStub.class.getResourceAsStream(KEYSTORE);
+        try
+        {
+            keyStore.load(in, KEYSTORE_PASSWORD);
+        } finally
+        {
+            in.close();
+        }
+        KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        factory.init(keyStore, KEYSTORE_PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(factory.getKeyManagers(), null, null);
+        return context;
+    }
+
+    // Applies the simulated latency and faults before serving a request
+    private abstract class StubHandler implements HttpHandler
+    {
+        private final boolean pluginService;
+
+        /**
+         * @param pluginService <code>true</code> if the handler belongs to the plug-in service, which is unavailable while
+         * the service restarts and starts up, <code>false</code> if it belongs to the Control Center.
+         */
+        StubHandler(boolean pluginService)
+        {
+            this.pluginService = pluginService;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            requestCount.incrementAndGet();
+            if (latencyMillis > 0)
+            {
+                sleep(latencyMillis);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (take(injectedResets) || (resetRate > 0 && random.nextDouble() < resetRate))
+            {
+                failureCount.incrementAndGet();
+                // Closing the exchange before sending the response headers drops the connection
+                exchange.close();
+                return;
+            }
+            if (unreachableWhileRestarting && isRestarting())
+            {
+                exchange.close();
+                return;
+            }
+            boolean injected = take(injectedErrors) || (errorRate > 0 && random.nextDouble() < errorRate);
+            if (injected || (pluginService && isStarting()))
+            {
+                if (injected)
+                {
+                    failureCount.incrementAndGet();
+                }
+                drain(exchange);
+                respond(exchange, injected ? 503 : startupStatus, null);
+                return;
+            }
+            serve(exchange);
+        }
+
+        abstract void serve(HttpExchange exchange) throws IOException;
+    }
+}
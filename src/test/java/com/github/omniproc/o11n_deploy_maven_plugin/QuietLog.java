@@ -0,0 +1,98 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A {@link Log} that discards everything so logging doesn't distort the measurements.
+ *
+ * @author Robert Ruf
+ */
+final class QuietLog implements Log
+{
+    public boolean isDebugEnabled()
+    {
+        return false;
+    }
+
+    public void debug(CharSequence content)
+    {
+    }
+
+    public void debug(CharSequence content, Throwable error)
+    {
+    }
+
+    public void debug(Throwable error)
+    {
+    }
+
+    public boolean isInfoEnabled()
+    {
+        return false;
+    }
+
+    public void info(CharSequence content)
+    {
+    }
+
+    public void info(CharSequence content, Throwable error)
+    {
+    }
+
+    public void info(Throwable error)
+    {
+    }
+
+    public boolean isWarnEnabled()
+    {
+        return false;
+    }
+
+    public void warn(CharSequence content)
+    {
+    }
+
+    public void warn(CharSequence content, Throwable error)
+    {
+    }
+
+    public void warn(Throwable error)
+    {
+    }
+
+    public boolean isErrorEnabled()
+    {
+        return false;
+    }
+
+    public void error(CharSequence content)
+    {
+    }
+
+    public void error(CharSequence content, Throwable error)
+    {
+    }
+
+    public void error(Throwable error)
+    {
+    }
+}
@@ -0,0 +1,229 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs rolling <code>deployplugin</code> deployments to a cluster of {@link OrchestratorStub} nodes and checks the guarantees
+ * of <code>o11nRollingBatchSize</code>: each node is restarted once, no more than one batch of nodes is down at any time and
+ * all nodes serve once the goal returns, while a batch failing its health gate aborts the rollout.
+ *
+ * @author Robert Ruf
+ */
+public class RollingDeployTest
+{
+    private static final int NODES = 4;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<OrchestratorStub> stubs = new ArrayList<OrchestratorStub>();
+    private File directory;
+    private Thread monitor;
+    // The least number of serving nodes seen by the monitor
+    private volatile int minServing = NODES;
+
+    @Before
+    public void startCluster() throws Exception
+    {
+        directory = folder.newFolder("target");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(directory, "o11nplugin-test.dar")));
+        try
+        {
+            out.putNextEntry(new ZipEntry("VSO-INF/vso.xml"));
+            out.write("<module name=\"test\" version=\"1.0.0\"/>".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        } finally
+        {
+            out.close();
+        }
+
+        for (int i = 0; i < NODES; i++)
+        {
+            OrchestratorStub stub = new OrchestratorStub(300);
+            stub.setStartupMillis(200);
+            stub.setApplyMillis(200);
+            stub.start();
+            stubs.add(stub);
+        }
+
+        // Samples the number of serving nodes far more often than the goal polls them
+        monitor = new Thread("o11n-rolling-monitor")
+        {
+            @Override
+            public void run()
+            {
+                while (!isInterrupted())
+                {
+                    int serving = 0;
+                    for (OrchestratorStub stub : stubs)
+                    {
+                        if (stub.isServing())
+                        {
+                            serving++;
+                        }
+                    }
+                    if (serving < minServing)
+                    {
+                        minServing = serving;
+                    }
+                    try
+                    {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+        };
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+
+    @After
+    public void stopCluster()
+    {
+        monitor.interrupt();
+        for (OrchestratorStub stub : stubs)
+        {
+            stub.stop();
+        }
+    }
+
+    @Test
+    public void restartsOneNodeAtATime() throws Exception
+    {
+        newMojo(1).execute();
+        assertRolledOut(1);
+    }
+
+    @Test
+    public void restartsTwoNodesAtATime() throws Exception
+    {
+        newMojo(2).execute();
+        assertRolledOut(2);
+    }
+
+    @Test
+    public void abortsWhenABatchFailsItsHealthGate() throws Exception
+    {
+        // The second node never applies its configuration, so it can't pass its health gate
+        stubs.get(1).setApplyMillis(60000);
+        DeployPlugin mojo = newMojo(1);
+        set(mojo, "o11nPendingChangesTimeout", 500L);
+        set(mojo, "o11nHealthGateTimeout", 1000);
+        try
+        {
+            mojo.execute();
+            fail("The rollout was not aborted.");
+        } catch (MojoFailureException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Rolling deployment aborted, node 127.0.0.1:" + stubs.get(1).getPort() + " failed: Health gate"));
+        }
+
+        assertEquals(1, stubs.get(0).getRestartCount());
+        assertEquals(1, stubs.get(1).getRestartCount());
+        for (int i = 2; i < NODES; i++)
+        {
+            assertEquals("Node " + i + " was deployed to after the abort.", 0, stubs.get(i).getUploadCount());
+            assertEquals("Node " + i + " was restarted after the abort.", 0, stubs.get(i).getRestartCount());
+        }
+        assertTrue("Only " + minServing + " node(s) served during the rollout.", minServing >= NODES - 1);
+    }
+
+    private void assertRolledOut(int batchSize)
+    {
+        for (int i = 0; i < NODES; i++)
+        {
+            assertEquals("Restarts of node " + i, 1, stubs.get(i).getRestartCount());
+            assertTrue("Node " + i + " does not serve after the rollout.", stubs.get(i).isServing());
+        }
+        assertTrue("Only " + minServing + " node(s) served during the rollout with batches of " + batchSize + ".", minServing >= NODES - batchSize);
+    }
+
+    // Returns a goal upgrading all nodes in rolling batches of the given size
+    private DeployPlugin newMojo(int batchSize) throws Exception
+    {
+        Build build = new Build();
+        build.setDirectory(directory.getAbsolutePath());
+        build.setFinalName("o11nplugin-test");
+        Model model = new Model();
+        model.setBuild(build);
+
+        List<OrchestratorServer> servers = new ArrayList<OrchestratorServer>();
+        for (OrchestratorStub stub : stubs)
+        {
+            servers.add(new OrchestratorServer("127.0.0.1", stub.getPort(), stub.getPort()));
+        }
+
+        DeployPlugin mojo = new DeployPlugin();
+        mojo.setLog(new QuietLog());
+        set(mojo, "project", new MavenProject(model));
+        set(mojo, "o11nServers", servers);
+        set(mojo, "o11nRollingBatchSize", batchSize);
+        set(mojo, "o11nPluginServiceUser", "vcoadmin");
+        set(mojo, "o11nPluginServicePassword", "vcoadmin");
+        set(mojo, "o11nConfigServiceUser", "root");
+        set(mojo, "o11nConfigServicePassword", "vmware");
+        set(mojo, "o11nPluginType", DeployPlugin.PluginType.DAR);
+        set(mojo, "o11nOverwrite", true);
+        set(mojo, "o11nRestartService", true);
+        set(mojo, "o11nWaitForPendingChanges", true);
+        set(mojo, "o11nWaitForReadiness", true);
+        set(mojo, "o11nPollInterval", 50L);
+        set(mojo, "o11nReportFile", new File(directory, "o11n-deploy-report.json"));
+        set(mojo, "o11nStateFile", new File(directory, "state.properties"));
+        set(mojo, "o11nCacheDirectory", new File(directory, "cache"));
+        set(mojo, "o11nHistoryFile", new File(directory, "history.jsonl"));
+        return mojo;
+    }
+
+    // Sets a Mojo parameter the way Maven does when injecting the POM configuration
+    private static void set(DeployPlugin mojo, String name, Object value) throws ReflectiveOperationException
+    {
+        Field field = DeployPlugin.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+}
@@ -0,0 +1,128 @@
+/* This file is part of project "o11n-deploy-maven-plugin", a computer software     *
+ * plugin for deploying Java plugins to VMware vRealize Orchestrator using          *
+ * Maven build management.                                                          *
+ *                                                                                  *
+ *                                                                                  *
+ * Copyright (C) 2016-2017 Robert Ruf                                               *
+ *                                                                                  *
+ * This program is free software: you can redistribute it and/or modify             *
+ * it under the terms of the GNU Lesser General Public License as published         *
+ * by the Free Software Foundation, either version 3 of the License, or             *
+ * (at your option) any later version.                                              *
+ *                                                                                  *
+ * This program is distributed in the hope that it will be useful,                  *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                   *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.                             *
+ * See the GNU Lesser General Public License for more details.                      *
+ *                                                                                  *
+ * You should have received a copy of the GNU Lesser General Public License         *
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.             */
+package com.github.omniproc.o11n_deploy_maven_plugin;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Uploads a sparse plug-in file of 1 GB through each {@link HttpTransport} to the {@link OrchestratorStub}, which discards the
+ * request body, to check that no transport loads the file into memory: <code>URL_CONNECTION</code> in fixed-length streaming
+ * mode, <code>JERSEY</code> chunked and <code>HTTP_CLIENT</code> from an input stream.
+ *
+ * @author Robert Ruf
+ */
+public class TransportUploadTest
+{
+    private static final long FILE_SIZE = 1L << 30;
+    // Far below the file size, so buffering the file would exceed it
+    private static final long MAX_HEAP_GROWTH = 64L << 20;
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static File file;
+
+    private OrchestratorStub stub;
+
+    @BeforeClass
+    public static void createFile() throws IOException
+    {
+        file = FOLDER.newFile("large.dar");
+        // Sparse on most file systems, so no disk space is allocated
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.setLength(FILE_SIZE);
+        } finally
+        {
+            raf.close();
+        }
+    }
+
+    @Before
+    public void startStub() throws Exception
+    {
+        stub = new OrchestratorStub(0);
+        stub.start();
+    }
+
+    @After
+    public void stopStub()
+    {
+        stub.stop();
+    }
+
+    @Test
+    public void urlConnectionStreamsLargeFileInBoundedMemory() throws Exception
+    {
+        upload(DeployPlugin.Transport.URL_CONNECTION);
+    }
+
+    @Test
+    public void jerseyStreamsLargeFileInBoundedMemory() throws Exception
+    {
+        upload(DeployPlugin.Transport.JERSEY);
+    }
+
+    @Test
+    public void httpClientStreamsLargeFileInBoundedMemory() throws Exception
+    {
+        Assume.assumeTrue("HTTP_CLIENT requires Java 11", OrchestratorClient.isHttpClientSupported());
+        upload(DeployPlugin.Transport.HTTP_CLIENT);
+    }
+
+    // Uploads the file through the given transport while sampling the heap
+    private void upload(DeployPlugin.Transport transport) throws Exception
+    {
+        OrchestratorClient client = stub.newClient(1, transport);
+        try
+        {
+            HeapSampler heap = new HeapSampler();
+            heap.start();
+            boolean uploaded;
+            try
+            {
+                uploaded = client.uploadPlugin(DeployPlugin.PluginType.DAR, true, file);
+            } finally
+            {
+                heap.stop();
+            }
+
+            assertTrue(uploaded);
+            assertTrue("Received " + stub.getBytesReceived() + " bytes", stub.getBytesReceived() > FILE_SIZE);
+            assertTrue("Heap grew by " + heap.getGrowth() + " bytes", heap.getGrowth() < MAX_HEAP_GROWTH);
+        } finally
+        {
+            client.close();
+        }
+    }
+}